@@ -0,0 +1,56 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source;
+
+/**
+ * Consists snapshot of {@link SessionCache} counters: hits and misses of the sessions list,
+ * of details and of map positions.
+ */
+public final class CacheMetrics {
+
+    private final long mSessionsHits;
+    private final long mSessionsMisses;
+    private final long mDetailsHits;
+    private final long mDetailsMisses;
+    private final long mPositionsHits;
+    private final long mPositionsMisses;
+
+    CacheMetrics(long sessionsHits, long sessionsMisses, long detailsHits, long detailsMisses,
+                 long positionsHits, long positionsMisses) {
+        mSessionsHits = sessionsHits;
+        mSessionsMisses = sessionsMisses;
+        mDetailsHits = detailsHits;
+        mDetailsMisses = detailsMisses;
+        mPositionsHits = positionsHits;
+        mPositionsMisses = positionsMisses;
+    }
+
+    public long getSessionsHits() {
+        return mSessionsHits;
+    }
+
+    public long getSessionsMisses() {
+        return mSessionsMisses;
+    }
+
+    public long getDetailsHits() {
+        return mDetailsHits;
+    }
+
+    public long getDetailsMisses() {
+        return mDetailsMisses;
+    }
+
+    public long getPositionsHits() {
+        return mPositionsHits;
+    }
+
+    public long getPositionsMisses() {
+        return mPositionsMisses;
+    }
+
+    @Override
+    public String toString() {
+        return "sessions: " + mSessionsHits + " hits, " + mSessionsMisses + " misses; details: "
+                + mDetailsHits + " hits, " + mDetailsMisses + " misses; positions: "
+                + mPositionsHits + " hits, " + mPositionsMisses + " misses";
+    }
+}
@@ -0,0 +1,57 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Resolution of records loaded by
+ * {@link SessionDataSource#getRecordsInRange(String, long, long, RecordsSampling, SessionDataSource.LoadRecordsCallback)}:
+ * all records, every n-th record of the range, or the first record of every time bucket.
+ * Immutable.
+ */
+public final class RecordsSampling {
+
+    private static final RecordsSampling ALL = new RecordsSampling(1, 0);
+
+    private final int mStep;
+    private final long mBucketMillis;
+
+    private RecordsSampling(int step, long bucketMillis) {
+        mStep = step;
+        mBucketMillis = bucketMillis;
+    }
+
+    public static RecordsSampling all() {
+        return ALL;
+    }
+
+    /**
+     * Keeps first record of the range and every n-th record following it.
+     */
+    public static RecordsSampling everyNth(int step) {
+        checkArgument(step > 0, "step must be positive");
+        return step == 1 ? ALL : new RecordsSampling(step, 0);
+    }
+
+    /**
+     * Keeps the earliest record of every bucket; buckets are counted from start of the range.
+     */
+    public static RecordsSampling perBucket(long bucketMillis) {
+        checkArgument(bucketMillis > 0, "bucket must be positive");
+        return new RecordsSampling(1, bucketMillis);
+    }
+
+    public int getStep() {
+        return mStep;
+    }
+
+    /**
+     * @return length of the bucket in milliseconds, 0 if records are not bucketed
+     */
+    public long getBucketMillis() {
+        return mBucketMillis;
+    }
+
+    public boolean isBucketed() {
+        return mBucketMillis > 0;
+    }
+}
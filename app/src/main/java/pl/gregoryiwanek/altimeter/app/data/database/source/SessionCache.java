@@ -0,0 +1,164 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackPositions;
+
+/**
+ * In-memory cache of {@link SessionRepository}: list of sessions, and size-bounded LRU caches
+ * of details and of map positions, keyed by session ID.
+ * <p>
+ * Every invalidation increments the generation of the cache. Loaded data is put into cache only
+ * if generation didn't change since its load started, so result of the query racing with a write
+ * is never cached. All methods are thread-safe.
+ */
+class SessionCache {
+
+    private static final int MAX_DETAILS = 16;
+    // sum of points of all cached position sets
+    private static final int MAX_POSITIONS_POINTS = 100000;
+
+    private final Map<String, Session> mSessions = new LinkedHashMap<>();
+    private boolean mIsSessionsComplete = false;
+    private long mGeneration = 0;
+    private long mSessionsHits = 0;
+    private long mSessionsMisses = 0;
+
+    private final LruCache<String, Bundle> mDetails = new LruCache<>(MAX_DETAILS);
+    private final LruCache<String, TrackPositions> mPositions =
+            new LruCache<String, TrackPositions>(MAX_POSITIONS_POINTS) {
+                @Override
+                protected int sizeOf(String key, TrackPositions value) {
+                    return Math.max(1, value.size());
+                }
+            };
+
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return copy of cached list of all sessions; null if list is not loaded or invalidated
+     */
+    @Nullable
+    synchronized List<Session> getSessions() {
+        if (!mIsSessionsComplete) {
+            mSessionsMisses++;
+            return null;
+        }
+        mSessionsHits++;
+        return new ArrayList<>(mSessions.values());
+    }
+
+    synchronized void putSessions(@NonNull List<Session> sessions, long generation) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mSessions.clear();
+        for (Session session : sessions) {
+            mSessions.put(session.getId(), session);
+        }
+        mIsSessionsComplete = true;
+    }
+
+    /**
+     * Adds new session or replaces cached one; its details and positions are invalidated.
+     */
+    synchronized void putSession(@NonNull Session session) {
+        mSessions.put(session.getId(), session);
+        invalidate(session.getId());
+    }
+
+    synchronized void updateSessionTitle(@NonNull String sessionId, String title, String description) {
+        Session session = mSessions.get(sessionId);
+        if (session != null) {
+            session.setTitle(title);
+            session.setDescription(description);
+        }
+        invalidate(sessionId);
+    }
+
+    synchronized void setSessionCompleted(@NonNull String sessionId, boolean isCompleted) {
+        Session session = mSessions.get(sessionId);
+        if (session != null) {
+            session.setCompleted(isCompleted);
+        }
+    }
+
+    /**
+     * Invalidates details and positions of the session.
+     */
+    synchronized void invalidate(@NonNull String sessionId) {
+        mGeneration++;
+        mDetails.remove(sessionId);
+        mPositions.remove(sessionId);
+    }
+
+    synchronized void remove(@NonNull Collection<String> sessionsId) {
+        for (String sessionId : sessionsId) {
+            mSessions.remove(sessionId);
+            invalidate(sessionId);
+        }
+    }
+
+    /**
+     * Invalidates all cached data.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mIsSessionsComplete = false;
+        mDetails.evictAll();
+        mPositions.evictAll();
+    }
+
+    /**
+     * Removes all cached data; used when all sessions are deleted.
+     */
+    synchronized void clear() {
+        invalidateAll();
+        mSessions.clear();
+        mIsSessionsComplete = true;
+    }
+
+    /**
+     * @return copy of cached details of the session, null if not cached
+     */
+    @Nullable
+    Bundle getDetails(@NonNull String sessionId) {
+        Bundle details = mDetails.get(sessionId);
+        return details != null ? new Bundle(details) : null;
+    }
+
+    synchronized void putDetails(@NonNull String sessionId, @NonNull Bundle details, long generation) {
+        if (generation == mGeneration) {
+            mDetails.put(sessionId, new Bundle(details));
+        }
+    }
+
+    @Nullable
+    TrackPositions getPositions(@NonNull String sessionId) {
+        return mPositions.get(sessionId);
+    }
+
+    synchronized void putPositions(@NonNull String sessionId, @NonNull TrackPositions positions,
+                                   long generation) {
+        if (generation == mGeneration) {
+            mPositions.put(sessionId, positions);
+        }
+    }
+
+    synchronized CacheMetrics getMetrics() {
+        return new CacheMetrics(mSessionsHits, mSessionsMisses, mDetails.hitCount(),
+                mDetails.missCount(), mPositions.hitCount(), mPositions.missCount());
+    }
+}
@@ -5,13 +5,12 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import com.google.android.gms.maps.model.LatLng;
-
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import pl.gregoryiwanek.altimeter.app.data.Session;
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
+import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
 
 /**
  * Entry point for accessing data.
@@ -26,7 +25,18 @@ public interface SessionDataSource {
 
     interface LoadMapDataCallback {
 
-        void onMapDataLoaded(List<LatLng> positions);
+        /**
+         * @param records lazy, read-only list of session's records; returned rows are reused
+         */
+        void onMapDataLoaded(List<RecordRow> records);
+    }
+
+    interface LoadRecordsCallback {
+
+        /**
+         * @param records lazy, read-only list of session's records; returned rows are reused
+         */
+        void onRecordsLoaded(List<RecordRow> records);
     }
 
     interface SaveSessionCallback {
@@ -46,14 +56,55 @@ public interface SessionDataSource {
         void onChangesSaved();
     }
 
-    void createRecordsTable(@NonNull Session session);
+    interface MigrationCallback {
+
+        void onMigrationProgress(int migratedUnits, int allUnits);
+
+        void onMigrationCompleted();
+    }
 
     void createNewSession(@NonNull Session session, @NonNull SaveSessionCallback callback);
 
     void updateSessionData(@NonNull Session session);
 
+    /**
+     * Requests write of all session data buffered by {@link #updateSessionData(Session)}.
+     */
+    void flushSessionData();
+
     void getSessions(@NonNull LoadSessionsCallback callback);
 
+    /**
+     * Loads page of sessions whose title, description or address contains words of the query.
+     * @param query words typed by user; empty query matches all sessions
+     * @param offset number of matching sessions to skip
+     * @param limit maximum number of sessions to load
+     */
+    void searchSessions(@NonNull String query, int offset, int limit, @NonNull LoadSessionsCallback callback);
+
+    /**
+     * Loads sessions whose bounding box intersects the area, using spatial index of the boxes.
+     * Area must not cross 180th meridian.
+     */
+    void findSessionsInArea(double minLatitude, double maxLatitude, double minLongitude,
+                            double maxLongitude, @NonNull LoadSessionsCallback callback);
+
+    /**
+     * Loads sessions whose bounding box intersects bounding box of the circle. Sessions are only
+     * candidates: their points within radius are found by
+     * {@link #findNearestRecords(String, double, double, double, int, LoadRecordsCallback)}.
+     */
+    void findSessionsNear(double latitude, double longitude, double radiusMeters,
+                          @NonNull LoadSessionsCallback callback);
+
+    /**
+     * Loads records of the session within radius from the position, nearest first.
+     * @param limit maximum number of records to load
+     * @param callback receives list of copied rows, empty if no record is within radius
+     */
+    void findNearestRecords(@NonNull String sessionId, double latitude, double longitude,
+                            double radiusMeters, int limit, @NonNull LoadRecordsCallback callback);
+
     void clearSessionData(@NonNull String sessionId);
 
     void refreshSessions();
@@ -62,10 +113,30 @@ public interface SessionDataSource {
 
     void getDetails(@NonNull String sessionId, DetailsSessionCallback callback, Context context);
 
+    /**
+     * Loads all records of the session, ordered by date, eg. to export them.
+     */
+    void getRecords(@NonNull String sessionId, @NonNull LoadRecordsCallback callback);
+
+    /**
+     * Loads records of the session with date between given dates, inclusive, ordered by date.
+     * @param sampling resolution of loaded records, eg. one record per bucket for zoomed out graph
+     * @param callback receives list of copied rows
+     */
+    void getRecordsInRange(@NonNull String sessionId, long fromDate, long toDate,
+                           @NonNull RecordsSampling sampling, @NonNull LoadRecordsCallback callback);
+
     void deleteSessions(ArrayList<String> sessionsId, boolean isDeleteAll, @Nullable DeleteSessionCallback callback);
 
     void setSessionChecked(String sessionId, boolean isCompleted);
 
     void updateDetailsChanges(@NonNull DetailsSessionCallback callback, Map<String, String> changes);
+
+    /**
+     * Runs pending migrations of stored data in background. Data of not migrated sessions is
+     * migrated on demand, when read.
+     * @param callback receives progress on the main thread
+     */
+    void runPendingMigrations(@Nullable MigrationCallback callback);
 }
 
@@ -1,39 +1,46 @@
 package pl.gregoryiwanek.altimeter.app.data.database.source;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import pl.gregoryiwanek.altimeter.app.data.Session;
+import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackPositions;
+import rx.Observable;
+import rx.android.schedulers.AndroidSchedulers;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Created by Grzegorz Iwanek on 27.01.2017.
+ * <p>
+ * Queries run in background, through {@link SessionRxDataSource}; callbacks are called
+ * on the main thread.
  */
 public class SessionRepository implements SessionDataSource {
 
+    private static final String LOG_TAG = SessionRepository.class.getSimpleName();
     private static SessionRepository INSTANCE = null;
     private final SessionDataSource mSessionLocalDataSource;
+    private final SessionRxDataSource mSessionRxDataSource;
 
     /**
      * This variable has package local visibility so it can be accessed from tests.
      */
-    Map<String, Session> mCachedSessions;
-    /**
-     * Marks the cache as invalid, to force an update the next time data is requested. This variable
-     * has package local visibility so it can be accessed from tests.
-     */
-    private boolean mCacheIsDirty = false;
+    final SessionCache mSessionCache = new SessionCache();
 
     //Private to prevent direct instantiation.
     private SessionRepository(@NonNull SessionDataSource sessionLocalDataSource) {
         mSessionLocalDataSource = checkNotNull(sessionLocalDataSource);
+        mSessionRxDataSource = new SessionRxDataSource(sessionLocalDataSource);
     }
 
     /**
@@ -56,9 +63,16 @@ public class SessionRepository implements SessionDataSource {
         INSTANCE = null;
     }
 
-    @Override
-    public void createRecordsTable(@NonNull Session session) {
+    /**
+     * @return asynchronous data source, used when results have to be processed in background,
+     * eg. lazy lists of records
+     */
+    public SessionRxDataSource getRxDataSource() {
+        return mSessionRxDataSource;
+    }
 
+    public CacheMetrics getCacheMetrics() {
+        return mSessionCache.getMetrics();
     }
 
     /**
@@ -72,33 +86,70 @@ public class SessionRepository implements SessionDataSource {
     public void getSessions(@NonNull final LoadSessionsCallback callback) {
         checkNotNull(callback);
 
-        // Respond immediately with cache if available and not dirty (corrupted)
-        //TODO -> move clear from here
-//        if (mCachedSessions != null && !mCacheIsDirty) {
-//            callback.onSessionLoaded(new ArrayList<>(mCachedSessions.values()));
-//            return;
-//        }
-
-        //TODO-> remove mCacheIsDirty from here
-        mCacheIsDirty = false;
-        if (mCacheIsDirty) {
-            // If the cache is dirty (corrupted) we need to fetch new data from the network.
-            getSessionsFromRemoteDataSource(callback);
-        } else {
-            // Query the local storage if available. If not, query the network
-            mSessionLocalDataSource.getSessions(new LoadSessionsCallback() {
-                @Override
-                public void onSessionLoaded(List<Session> sessions) {
-                    refreshCache(sessions);
-                    callback.onSessionLoaded(new ArrayList<>(mCachedSessions.values()));
-                }
-
-                @Override
-                public void onDataNotAvailable() {
-                    getSessionsFromRemoteDataSource(callback);
-                }
-            });
+        // Respond immediately with cache if available and not invalidated
+        List<Session> cachedSessions = mSessionCache.getSessions();
+        if (cachedSessions != null) {
+            callback.onSessionLoaded(cachedSessions);
+            return;
         }
+
+        // Query the local storage
+        long generation = mSessionCache.getGeneration();
+        mSessionRxDataSource.getSessions()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(sessions -> {
+                    mSessionCache.putSessions(sessions, generation);
+                    callback.onSessionLoaded(new ArrayList<>(sessions));
+                }, e -> {
+                    Log.e(LOG_TAG, "Loading of sessions failed", e);
+                    callback.onDataNotAvailable();
+                });
+    }
+
+    /**
+     * Searches sessions in the local storage, by its full-text index. Results are not cached.
+     */
+    @Override
+    public void searchSessions(@NonNull String query, int offset, int limit,
+                               @NonNull final LoadSessionsCallback callback) {
+        checkNotNull(callback);
+        subscribeSessions(mSessionRxDataSource.searchSessions(query, offset, limit), callback);
+    }
+
+    /**
+     * Finds sessions by their bounding boxes, in the local storage. Results are not cached.
+     */
+    @Override
+    public void findSessionsInArea(double minLatitude, double maxLatitude, double minLongitude,
+                                   double maxLongitude, @NonNull final LoadSessionsCallback callback) {
+        checkNotNull(callback);
+        subscribeSessions(mSessionRxDataSource.findSessionsInArea(minLatitude, maxLatitude,
+                minLongitude, maxLongitude), callback);
+    }
+
+    @Override
+    public void findSessionsNear(double latitude, double longitude, double radiusMeters,
+                                 @NonNull final LoadSessionsCallback callback) {
+        checkNotNull(callback);
+        subscribeSessions(mSessionRxDataSource.findSessionsNear(latitude, longitude, radiusMeters), callback);
+    }
+
+    @Override
+    public void findNearestRecords(@NonNull String sessionId, double latitude, double longitude,
+                                   double radiusMeters, int limit, @NonNull LoadRecordsCallback callback) {
+        checkNotNull(callback);
+        mSessionRxDataSource.findNearestRecords(sessionId, latitude, longitude, radiusMeters, limit)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(callback::onRecordsLoaded,
+                        e -> Log.e(LOG_TAG, "Search of nearest records failed", e));
+    }
+
+    private void subscribeSessions(Observable<List<Session>> sessions, LoadSessionsCallback callback) {
+        sessions.observeOn(AndroidSchedulers.mainThread())
+                .subscribe(callback::onSessionLoaded, e -> {
+                    Log.e(LOG_TAG, "Search of sessions failed", e);
+                    callback.onDataNotAvailable();
+                });
     }
 
     @Override
@@ -106,118 +157,166 @@ public class SessionRepository implements SessionDataSource {
         //TODO-> consider adding remote data source
         //TODO-> change form of architecture here
         checkNotNull(session);
-        mSessionLocalDataSource.createNewSession(session, new SaveSessionCallback() {
-            @Override
-            public void onNewSessionSaved(String id) {
-                callback.onNewSessionSaved(id);
-                mSessionLocalDataSource.createRecordsTable(session);
-            }
-        });
+        mSessionRxDataSource.createNewSession(session)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(id -> {
+                    if (callback != null) {
+                        callback.onNewSessionSaved(id);
+                    }
+                }, e -> Log.e(LOG_TAG, "Saving of session failed", e));
 
         // Do in memory cache update to keep the app UI to date
-        // Add to cache
-        initiateCache();
-        mCachedSessions.put(session.getId(), session);
+        mSessionCache.putSession(session);
     }
 
     @Override
     public void updateSessionData(@NonNull Session session) {
         checkNotNull(session);
         mSessionLocalDataSource.updateSessionData(session);
+        mSessionCache.putSession(session);
+    }
+
+    @Override
+    public void flushSessionData() {
+        mSessionLocalDataSource.flushSessionData();
     }
 
     @Override
     public void refreshSessions() {
-        mCacheIsDirty = true;
+        mSessionCache.invalidateAll();
     }
 
+    /**
+     * Note: records are read from the database while the list is iterated; to iterate them
+     * in background use {@link SessionRxDataSource#getMapData(String)}, or read cached positions
+     * with {@link #getMapPositions(String)}.
+     */
     @Override
     public void getMapData(@NonNull String sessionId, @NonNull LoadMapDataCallback callback) {
-        mSessionLocalDataSource.getMapData(sessionId, callback);
+        mSessionRxDataSource.getMapData(sessionId)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(callback::onMapDataLoaded,
+                        e -> Log.e(LOG_TAG, "Loading of map data failed", e));
     }
 
-    @Override
-    public void getDetails(@NonNull String sessionId, DetailsSessionCallback callback, Context context) {
-        mSessionLocalDataSource.getDetails(sessionId, callback, context);
+    /**
+     * Returns positions of the session's records from cache, or reads them on the reader thread.
+     * Emits on the reader thread, or at once if positions are cached.
+     */
+    public Observable<TrackPositions> getMapPositions(@NonNull String sessionId) {
+        return Observable.defer(() -> {
+            TrackPositions positions = mSessionCache.getPositions(sessionId);
+            if (positions != null) {
+                return Observable.just(positions);
+            }
+            long generation = mSessionCache.getGeneration();
+            return mSessionRxDataSource.getMapData(sessionId)
+                    .map(TrackPositions::from)
+                    .doOnNext(loaded -> mSessionCache.putPositions(sessionId, loaded, generation));
+        });
     }
 
     @Override
-    public void clearSessionData(@NonNull String sessionId) {
-        mSessionLocalDataSource.clearSessionData(sessionId);
+    public void getDetails(@NonNull String sessionId, DetailsSessionCallback callback, Context context) {
+        saveCurrentIdDrawerMapGeneration(sessionId, context);
+        Bundle details = mSessionCache.getDetails(sessionId);
+        if (details != null) {
+            callback.onDetailsLoaded(details);
+            return;
+        }
+
+        long generation = mSessionCache.getGeneration();
+        mSessionRxDataSource.getDetails(sessionId, context)
+                .doOnNext(loaded -> mSessionCache.putDetails(sessionId, loaded, generation))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(callback::onDetailsLoaded,
+                        e -> Log.e(LOG_TAG, "Loading of details failed", e));
     }
 
+    /**
+     * Note: records are read from the database while the list is iterated; to iterate them
+     * in background use {@link SessionRxDataSource#getRecords(String)}.
+     */
     @Override
-    public void deleteSessions(ArrayList<String> sessionsId, boolean isDeleteAll,
-                               @NonNull DeleteSessionCallback callback) {
-        mSessionLocalDataSource.deleteSessions(sessionsId, isDeleteAll, callback);
-        deleteFromCache(sessionsId, isDeleteAll);
-        callback.onSessionsDeleted();
+    public void getRecords(@NonNull String sessionId, @NonNull LoadRecordsCallback callback) {
+        mSessionRxDataSource.getRecords(sessionId)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(callback::onRecordsLoaded,
+                        e -> Log.e(LOG_TAG, "Loading of records failed", e));
     }
 
     @Override
-    public void setSessionChecked(String sessionId, boolean isCompleted) {
-        setSessionCompleted(sessionId, isCompleted);
+    public void getRecordsInRange(@NonNull String sessionId, long fromDate, long toDate,
+                                  @NonNull RecordsSampling sampling, @NonNull LoadRecordsCallback callback) {
+        checkNotNull(callback);
+        mSessionRxDataSource.getRecordsInRange(sessionId, fromDate, toDate, sampling)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(callback::onRecordsLoaded,
+                        e -> Log.e(LOG_TAG, "Loading of records in range failed", e));
     }
 
     @Override
-    public void updateDetailsChanges(@NonNull DetailsSessionCallback callback, Map<String, String> changes) {
-        mSessionLocalDataSource.updateDetailsChanges(callback, changes);
+    public void clearSessionData(@NonNull String sessionId) {
+        mSessionCache.invalidate(sessionId);
+        mSessionRxDataSource.clearSessionData(sessionId)
+                .subscribe(ignored -> {}, e -> Log.e(LOG_TAG, "Clearing of session failed", e));
     }
 
-    private void deleteFromCache(ArrayList<String> sessionsId, boolean isDeleteAll) {
-        initiateCache();
+    @Override
+    public void deleteSessions(ArrayList<String> sessionsId, boolean isDeleteAll,
+                               @NonNull DeleteSessionCallback callback) {
         if (isDeleteAll) {
-            deleteAllCache();
+            mSessionCache.clear();
         } else {
-            deleteFewCache(sessionsId);
+            mSessionCache.remove(sessionsId);
         }
+        mSessionRxDataSource.deleteSessions(new ArrayList<>(sessionsId), isDeleteAll)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(ignored -> {}, e -> Log.e(LOG_TAG, "Deleting of sessions failed", e),
+                        callback::onSessionsDeleted);
     }
 
-    private void initiateCache() {
-        if (mCachedSessions == null) {
-            mCachedSessions = new LinkedHashMap<>();
-        }
+    @Override
+    public void setSessionChecked(String sessionId, boolean isCompleted) {
+        //TODO-> refactor this to change value of session in database
+        //TODO-> add column in Record table (isCompleted)
+        mSessionCache.setSessionCompleted(sessionId, isCompleted);
     }
 
-    private void deleteAllCache() {
-        mCachedSessions.clear();
+    @Override
+    public void updateDetailsChanges(@NonNull DetailsSessionCallback callback, Map<String, String> changes) {
+        mSessionCache.updateSessionTitle(changes.get("id"), changes.get("title"), changes.get("description"));
+        mSessionRxDataSource.updateDetailsChanges(changes)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(ignored -> {}, e -> Log.e(LOG_TAG, "Saving of details failed", e),
+                        callback::onChangesSaved);
     }
 
-    private void deleteFewCache(ArrayList<String> sessionsId) {
-        Iterator<Map.Entry<String, Session>> iterator = mCachedSessions.entrySet().iterator();
-        for (String sessionId : sessionsId) {
-            while (iterator.hasNext()) {
-                Map.Entry<String, Session> entry = iterator.next();
-                if(entry.getValue().getId().equals(sessionId)) {
-                    iterator.remove();
-                    break;
+    @Override
+    public void runPendingMigrations(@Nullable final MigrationCallback callback) {
+        mSessionLocalDataSource.runPendingMigrations(new MigrationCallback() {
+            @Override
+            public void onMigrationProgress(int migratedUnits, int allUnits) {
+                if (callback != null) {
+                    callback.onMigrationProgress(migratedUnits, allUnits);
                 }
             }
-        }
-    }
 
-    //TODO-> refactor this to change value of session in database
-    //TODO-> add column in Record table (isCompleted)
-    private void setSessionCompleted(String sessionId, boolean isCompleted) {
-        for (Map.Entry<String, Session> entry : mCachedSessions.entrySet()) {
-            if (entry.getValue().getId().equals(sessionId)) {
-                mCachedSessions.get(sessionId).setCompleted(isCompleted);
-                break;
+            @Override
+            public void onMigrationCompleted() {
+                refreshSessions();
+                if (callback != null) {
+                    callback.onMigrationCompleted();
+                }
             }
-        }
+        });
     }
 
-    //todo -> finish that one
-    private void refreshCache(List<Session> sessions) {
-        if (mCachedSessions == null) {
-            mCachedSessions = new LinkedHashMap<>();
-        }
-
-        mCachedSessions.clear();
-        for (Session session : sessions) {
-            mCachedSessions.put(session.getId(), session);
-        }
-        mCacheIsDirty = false;
+    private void saveCurrentIdDrawerMapGeneration(String sessionId, Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putString("sessionId", sessionId);
+        editor.apply();
     }
 
     //todo -> finish that one
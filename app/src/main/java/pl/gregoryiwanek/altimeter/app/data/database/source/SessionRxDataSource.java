@@ -0,0 +1,150 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import pl.gregoryiwanek.altimeter.app.data.database.source.local.DbSchedulers;
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
+import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
+import rx.Observable;
+import rx.Subscriber;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Asynchronous variant of {@link SessionDataSource}, wrapping its synchronous implementation.
+ * Reads are subscribed on the reader threads and writes on the single writer thread
+ * ({@link DbSchedulers}), so database is never accessed on the subscriber's thread.
+ * Results are emitted on that background thread: callers observe them on the main thread, after
+ * consuming lazy lists of records (which read the database while iterated) in background.
+ * Writes emit no items, they only complete.
+ */
+public class SessionRxDataSource {
+
+    private final SessionDataSource mDataSource;
+
+    public SessionRxDataSource(@NonNull SessionDataSource dataSource) {
+        mDataSource = checkNotNull(dataSource);
+    }
+
+    public Observable<List<Session>> getSessions() {
+        return read(subscriber -> mDataSource.getSessions(emitSessions(subscriber)));
+    }
+
+    public Observable<List<Session>> searchSessions(@NonNull String query, int offset, int limit) {
+        return read(subscriber -> mDataSource.searchSessions(query, offset, limit, emitSessions(subscriber)));
+    }
+
+    public Observable<List<Session>> findSessionsInArea(double minLatitude, double maxLatitude,
+                                                        double minLongitude, double maxLongitude) {
+        return read(subscriber -> mDataSource.findSessionsInArea(minLatitude, maxLatitude,
+                minLongitude, maxLongitude, emitSessions(subscriber)));
+    }
+
+    public Observable<List<Session>> findSessionsNear(double latitude, double longitude, double radiusMeters) {
+        return read(subscriber -> mDataSource.findSessionsNear(latitude, longitude, radiusMeters,
+                emitSessions(subscriber)));
+    }
+
+    public Observable<List<RecordRow>> findNearestRecords(@NonNull String sessionId, double latitude,
+                                                          double longitude, double radiusMeters, int limit) {
+        return read(subscriber -> mDataSource.findNearestRecords(sessionId, latitude, longitude,
+                radiusMeters, limit, records -> emit(subscriber, records)));
+    }
+
+    public Observable<List<RecordRow>> getMapData(@NonNull String sessionId) {
+        return read(subscriber -> mDataSource.getMapData(sessionId, records -> emit(subscriber, records)));
+    }
+
+    public Observable<List<RecordRow>> getRecords(@NonNull String sessionId) {
+        return read(subscriber -> mDataSource.getRecords(sessionId, records -> emit(subscriber, records)));
+    }
+
+    public Observable<List<RecordRow>> getRecordsInRange(@NonNull String sessionId, long fromDate, long toDate,
+                                                         @NonNull RecordsSampling sampling) {
+        return read(subscriber -> mDataSource.getRecordsInRange(sessionId, fromDate, toDate, sampling,
+                records -> emit(subscriber, records)));
+    }
+
+    public Observable<Bundle> getDetails(@NonNull String sessionId, @NonNull Context context) {
+        return read(subscriber -> mDataSource.getDetails(sessionId, new SessionDataSource.DetailsSessionCallback() {
+            @Override
+            public void onDetailsLoaded(Bundle args) {
+                emit(subscriber, args);
+            }
+
+            @Override
+            public void onChangesSaved() {
+            }
+        }, context));
+    }
+
+    /**
+     * Emits ID of the saved session.
+     */
+    public Observable<String> createNewSession(@NonNull Session session) {
+        return write(subscriber -> mDataSource.createNewSession(session, id -> emit(subscriber, id)));
+    }
+
+    public Observable<Void> clearSessionData(@NonNull String sessionId) {
+        return write(subscriber -> {
+            mDataSource.clearSessionData(sessionId);
+            subscriber.onCompleted();
+        });
+    }
+
+    public Observable<Void> deleteSessions(@NonNull ArrayList<String> sessionsId, boolean isDeleteAll) {
+        return write(subscriber -> {
+            mDataSource.deleteSessions(sessionsId, isDeleteAll, null);
+            subscriber.onCompleted();
+        });
+    }
+
+    public Observable<Void> updateDetailsChanges(@NonNull Map<String, String> changes) {
+        return write(subscriber -> mDataSource.updateDetailsChanges(new SessionDataSource.DetailsSessionCallback() {
+            @Override
+            public void onDetailsLoaded(Bundle args) {
+            }
+
+            @Override
+            public void onChangesSaved() {
+                subscriber.onCompleted();
+            }
+        }, changes));
+    }
+
+    private <T> Observable<T> read(Observable.OnSubscribe<T> onSubscribe) {
+        return Observable.create(onSubscribe).subscribeOn(DbSchedulers.reader());
+    }
+
+    private <T> Observable<T> write(Observable.OnSubscribe<T> onSubscribe) {
+        return Observable.create(onSubscribe).subscribeOn(DbSchedulers.writer());
+    }
+
+    private static SessionDataSource.LoadSessionsCallback emitSessions(
+            Subscriber<? super List<Session>> subscriber) {
+        return new SessionDataSource.LoadSessionsCallback() {
+            @Override
+            public void onSessionLoaded(List<Session> sessions) {
+                emit(subscriber, sessions);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                subscriber.onCompleted();
+            }
+        };
+    }
+
+    private static <T> void emit(Subscriber<? super T> subscriber, T value) {
+        if (!subscriber.isUnsubscribed()) {
+            subscriber.onNext(value);
+            subscriber.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Interns address strings into the addresses table, so records keep only ID of their address.
+ * IDs of recently used addresses are cached; cache has to be cleared when transaction which
+ * inserted new addresses is rolled back. Not thread safe, used under write lock of the records
+ * write buffer.
+ */
+class AddressDictionary {
+
+    private static final int CACHE_SIZE = 64;
+
+    private final Map<String, Long> mCachedIds = new HashMap<>();
+    private SQLiteDatabase mStatementDb;
+    private SQLiteStatement mInsertStatement;
+    private SQLiteStatement mSelectStatement;
+
+    /**
+     * Returns ID of the address, adds address to the dictionary if required. Has to be called
+     * inside transaction writing the records.
+     * @param db database to write into
+     * @param address address to intern
+     * @return ID of the address
+     */
+    long intern(SQLiteDatabase db, String address) {
+        Long id = mCachedIds.get(address);
+        if (id != null) {
+            return id;
+        }
+
+        compileStatements(db);
+        mInsertStatement.bindString(1, address);
+        id = mInsertStatement.executeInsert();
+        if (id == -1) {
+            mSelectStatement.bindString(1, address);
+            id = mSelectStatement.simpleQueryForLong();
+        }
+
+        if (mCachedIds.size() >= CACHE_SIZE) {
+            mCachedIds.clear();
+        }
+        mCachedIds.put(address, id);
+        return id;
+    }
+
+    /**
+     * Forgets cached IDs, as some of them might be rolled back.
+     */
+    void clearCache() {
+        mCachedIds.clear();
+    }
+
+    private void compileStatements(SQLiteDatabase db) {
+        if (mInsertStatement == null || mStatementDb != db) {
+            mStatementDb = db;
+            mCachedIds.clear();
+            mInsertStatement = db.compileStatement("INSERT OR IGNORE INTO " + AddressEntry.TABLE_NAME +
+                    " (" + AddressEntry.COLUMN_NAME_ADDRESS + ") VALUES (?)");
+            mSelectStatement = db.compileStatement("SELECT " + AddressEntry.COLUMN_NAME_ID +
+                    " FROM " + AddressEntry.TABLE_NAME + " WHERE " + AddressEntry.COLUMN_NAME_ADDRESS + "=?");
+        }
+    }
+}
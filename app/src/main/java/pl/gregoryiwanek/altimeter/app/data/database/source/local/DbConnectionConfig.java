@@ -0,0 +1,89 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+/**
+ * Consists tuning parameters of the database connection, applied by {@link SessionDbHelper}
+ * each time database is opened. Zero value leaves SQLite default.
+ */
+public class DbConnectionConfig {
+
+    private final boolean writeAheadLogging;
+    private final int pageSize;
+    private final int cacheSizeKb;
+    private final long mmapSize;
+    private final boolean incrementalVacuum;
+
+    private DbConnectionConfig(Builder builder) {
+        writeAheadLogging = builder.writeAheadLogging;
+        pageSize = builder.pageSize;
+        cacheSizeKb = builder.cacheSizeKb;
+        mmapSize = builder.mmapSize;
+        incrementalVacuum = builder.incrementalVacuum;
+    }
+
+    public boolean isWriteAheadLogging() {
+        return writeAheadLogging;
+    }
+
+    /**
+     * @return page size in bytes; applied only to database created after it was set
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getCacheSizeKb() {
+        return cacheSizeKb;
+    }
+
+    /**
+     * @return maximum number of bytes of database file accessed by memory mapped I/O
+     */
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    /**
+     * @return true if free pages are kept in database file until reclaimed by
+     * {@link IncrementalVacuum}; applied at once only to database created after it was set
+     */
+    public boolean isIncrementalVacuum() {
+        return incrementalVacuum;
+    }
+
+    public static class Builder {
+        private boolean writeAheadLogging = true;
+        private int pageSize = 4096;
+        private int cacheSizeKb = 2048;
+        private long mmapSize = 8 * 1024 * 1024;
+        private boolean incrementalVacuum = true;
+
+        public Builder setWriteAheadLogging(boolean writeAheadLogging) {
+            this.writeAheadLogging = writeAheadLogging;
+            return this;
+        }
+
+        public Builder setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Builder setCacheSizeKb(int cacheSizeKb) {
+            this.cacheSizeKb = cacheSizeKb;
+            return this;
+        }
+
+        public Builder setMmapSize(long mmapSize) {
+            this.mmapSize = mmapSize;
+            return this;
+        }
+
+        public Builder setIncrementalVacuum(boolean incrementalVacuum) {
+            this.incrementalVacuum = incrementalVacuum;
+            return this;
+        }
+
+        public DbConnectionConfig build() {
+            return new DbConnectionConfig(this);
+        }
+    }
+}
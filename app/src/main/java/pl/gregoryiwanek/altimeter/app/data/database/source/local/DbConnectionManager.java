@@ -0,0 +1,74 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+/**
+ * Owns the single database connection of the process. Database is opened once, with write-ahead
+ * logging, so reads run on pooled connections and do not block the recording writer.
+ * Page cache and compiled statements live as long as the connection; it is closed only
+ * by explicit {@link #shutdown()}.
+ */
+public class DbConnectionManager {
+
+    private static DbConnectionManager INSTANCE = null;
+    private final SessionDbHelper mSessionDbHelper;
+    private final DbConnectionConfig mConfig;
+    private SQLiteDatabase mDatabase;
+
+    //Private to prevent direct instantiation.
+    private DbConnectionManager(@NonNull Context context, @NonNull DbConnectionConfig config) {
+        mConfig = config;
+        mSessionDbHelper = new SessionDbHelper(context.getApplicationContext(), config);
+        mSessionDbHelper.setWriteAheadLoggingEnabled(config.isWriteAheadLogging());
+    }
+
+    public static synchronized DbConnectionManager getInstance(@NonNull Context context) {
+        return getInstance(context, new DbConnectionConfig.Builder().build());
+    }
+
+    /**
+     * Returns the single instance of this class, creating it if necessary.
+     * @param context context used to open the database
+     * @param config tuning parameters, used only when instance is created
+     * @return the {@link DbConnectionManager} instance
+     */
+    public static synchronized DbConnectionManager getInstance(@NonNull Context context,
+                                                               @NonNull DbConnectionConfig config) {
+        if (INSTANCE == null) {
+            INSTANCE = new DbConnectionManager(context, config);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * @return open database, shared by all callers; must not be closed by them
+     */
+    synchronized SQLiteDatabase getDatabase() {
+        if (mDatabase == null || !mDatabase.isOpen()) {
+            mDatabase = mSessionDbHelper.getWritableDatabase();
+        }
+        return mDatabase;
+    }
+
+    SessionDbHelper getSessionDbHelper() {
+        return mSessionDbHelper;
+    }
+
+    DbConnectionConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Closes the database and releases the instance. Next {@link #getInstance(Context)} opens
+     * the database again.
+     */
+    public static synchronized void shutdown() {
+        if (INSTANCE != null) {
+            INSTANCE.mSessionDbHelper.close();
+            INSTANCE.mDatabase = null;
+            INSTANCE = null;
+        }
+    }
+}
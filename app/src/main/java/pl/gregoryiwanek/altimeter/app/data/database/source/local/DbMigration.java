@@ -0,0 +1,39 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Consists single background migration of the database content, run by {@link SessionDbMigrator}.
+ * Migration is split into units (eg. tables to move) and every unit is migrated in bounded steps.
+ */
+interface DbMigration {
+
+    /**
+     * @return unique, increasing version of the migration; used as a key of its checkpoint
+     */
+    int getVersion();
+
+    /**
+     * @param db database to check
+     * @return number of units left to migrate
+     */
+    int countPendingUnits(SQLiteDatabase db);
+
+    /**
+     * Performs one bounded step of the migration. Called inside transaction, which stores
+     * updated checkpoint as well.
+     * @param db database to migrate
+     * @param checkpoint progress of the migration, updated by step
+     * @return false if there is nothing left to migrate
+     */
+    boolean migrateStep(SQLiteDatabase db, MigrationCheckpoint checkpoint);
+
+    /**
+     * Migrates given unit at once. Used when unit is required before background migration reaches it.
+     * Called inside transaction, which stores updated checkpoint as well.
+     * @param db database to migrate
+     * @param checkpoint progress of the migration, updated if unit is the current one
+     * @param unit unit to migrate
+     */
+    void completeUnit(SQLiteDatabase db, MigrationCheckpoint checkpoint, String unit);
+}
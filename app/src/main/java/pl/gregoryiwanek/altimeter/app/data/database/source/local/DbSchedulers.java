@@ -0,0 +1,102 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Threads of database access. Reads run on small, bounded pool of reader threads; they use pooled
+ * connections of write-ahead log, so they don't wait for writes. Every write (points, sessions,
+ * migration steps) runs on the single writer thread, so writes are serialized and never run
+ * on the main thread.
+ */
+public final class DbSchedulers {
+
+    private static final int READER_THREADS = 2;
+
+    private static final AtomicInteger sReaderCount = new AtomicInteger();
+    private static volatile Thread sWriterThread;
+
+    private static final ExecutorService READER_EXECUTOR = Executors.newFixedThreadPool(READER_THREADS,
+            runnable -> newThread(runnable, "db-reader-" + sReaderCount.incrementAndGet()));
+    private static final ExecutorService WRITER_EXECUTOR = Executors.newSingleThreadExecutor(
+            runnable -> sWriterThread = newThread(runnable, "db-writer"));
+
+    private static final Scheduler READER = Schedulers.from(READER_EXECUTOR);
+    private static final Scheduler WRITER = Schedulers.from(WRITER_EXECUTOR);
+
+    private DbSchedulers() {}
+
+    public static Scheduler reader() {
+        return READER;
+    }
+
+    public static Scheduler writer() {
+        return WRITER;
+    }
+
+    static boolean isWriterThread() {
+        return Thread.currentThread() == sWriterThread;
+    }
+
+    /**
+     * Runs the write on the writer thread and waits for its end. Runs it at once if called
+     * on the writer thread. Must not be called on the main thread.
+     */
+    static void runOnWriter(@NonNull Runnable write) {
+        callOnWriter(() -> {
+            write.run();
+            return null;
+        });
+    }
+
+    /**
+     * Queues the write on the writer thread, behind writes queued before, without waiting for it.
+     */
+    static void postOnWriter(@NonNull Runnable write) {
+        WRITER_EXECUTOR.execute(write);
+    }
+
+    /**
+     * Runs the write on the writer thread and waits for its result. Runs it at once if called
+     * on the writer thread. Must not be called on the main thread.
+     * @throws RuntimeException thrown by the write
+     */
+    static <T> T callOnWriter(@NonNull Callable<T> write) {
+        try {
+            if (isWriterThread()) {
+                return write.call();
+            }
+            Future<T> result = WRITER_EXECUTOR.submit(write);
+            return result.get();
+        } catch (ExecutionException e) {
+            throw asRuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for database write", e);
+        } catch (Exception e) {
+            throw asRuntimeException(e);
+        }
+    }
+
+    private static RuntimeException asRuntimeException(Throwable throwable) {
+        if (throwable instanceof RuntimeException) {
+            return (RuntimeException) throwable;
+        }
+        return new IllegalStateException("Database write failed", throwable);
+    }
+
+    private static Thread newThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
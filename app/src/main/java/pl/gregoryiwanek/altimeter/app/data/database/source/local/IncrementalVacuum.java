@@ -0,0 +1,96 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.Subscription;
+
+/**
+ * Reclaims free pages of the database file, left by deleted sessions, while recording is idle.
+ * Pages are released in small steps, each one a separate write on the writer thread
+ * ({@link DbSchedulers}), so buffered points are flushed between steps. Steps are postponed
+ * as long as points are being recorded.
+ * <p>
+ * Only database created with incremental auto-vacuum is reclaimed. Converting older database
+ * takes a full vacuum, which can't be split into steps and would hold the writer for as long as
+ * it takes, so it isn't done in background; such database keeps its free pages for reuse.
+ */
+class IncrementalVacuum {
+
+    private static final int PAGES_PER_STEP = 64;
+    private static final long STEP_DELAY_MILLIS = 100;
+    private static final long IDLE_MILLIS = 30000;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private final String LOG_TAG = getClass().getSimpleName();
+    private final DbConnectionManager mConnectionManager;
+    private final RecordsWriteBuffer mRecordsWriteBuffer;
+    private final Scheduler.Worker mWorker;
+    private Subscription mScheduledStep;
+
+    IncrementalVacuum(@NonNull DbConnectionManager connectionManager,
+                      @NonNull RecordsWriteBuffer recordsWriteBuffer) {
+        mConnectionManager = connectionManager;
+        mRecordsWriteBuffer = recordsWriteBuffer;
+        mWorker = DbSchedulers.writer().createWorker();
+    }
+
+    /**
+     * Schedules reclaiming of free pages, unless it is already scheduled.
+     */
+    synchronized void request() {
+        schedule(STEP_DELAY_MILLIS);
+    }
+
+    private synchronized void schedule(long delayMillis) {
+        if (mScheduledStep == null) {
+            mScheduledStep = mWorker.schedule(this::step, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void step() {
+        synchronized (this) {
+            mScheduledStep = null;
+        }
+        if (!mConnectionManager.getConfig().isIncrementalVacuum()) {
+            return;
+        }
+        if (!mRecordsWriteBuffer.isIdle(IDLE_MILLIS)) {
+            schedule(IDLE_MILLIS);
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = mConnectionManager.getDatabase();
+            if (queryInt(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                Log.d(LOG_TAG, "Database created without incremental vacuum, pages are not reclaimed");
+                return;
+            }
+            if (queryInt(db, "PRAGMA freelist_count") == 0) {
+                return;
+            }
+            // pages are released while the statement is stepped, counting steps it to the end
+            Cursor c = db.rawQuery("PRAGMA incremental_vacuum(" + PAGES_PER_STEP + ")", null);
+            c.getCount();
+            c.close();
+            if (queryInt(db, "PRAGMA freelist_count") > 0) {
+                schedule(STEP_DELAY_MILLIS);
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Vacuum step failed", e);
+        }
+    }
+
+    private int queryInt(SQLiteDatabase db, String query) {
+        Cursor c = db.rawQuery(query, null);
+        int value = c.moveToFirst() ? c.getInt(0) : 0;
+        c.close();
+        return value;
+    }
+}
@@ -0,0 +1,47 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Moves records from legacy tables (one table per session, named as session's ID) into
+ * the single records table. Every legacy table is one unit of migration, it is dropped when all of
+ * its rows are copied.
+ */
+class LegacyRecordsMigration extends RecordsCopyMigration {
+
+    private static final int VERSION = 1;
+    private static final String LEGACY_TABLES = " FROM sqlite_master WHERE type='table' AND name IN" +
+            " (SELECT " + SessionEntry.COLUMN_NAME_ENTRY_ID + " FROM " + SessionEntry.TABLE_NAME + ")";
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public int countPendingUnits(SQLiteDatabase db) {
+        return (int) queryLong(db, "SELECT COUNT(*)" + LEGACY_TABLES, null);
+    }
+
+    @Override
+    String findNextUnit(SQLiteDatabase db) {
+        return queryString(db, "SELECT name" + LEGACY_TABLES + " ORDER BY name LIMIT 1", null);
+    }
+
+    @Override
+    boolean isUnitPending(SQLiteDatabase db, String unit) {
+        return SessionDbHelper.isTableExisting(db, unit);
+    }
+
+    @Override
+    String getSourceTable(String unit) {
+        return unit;
+    }
+
+    @Override
+    boolean isSourceShared() {
+        return false;
+    }
+}
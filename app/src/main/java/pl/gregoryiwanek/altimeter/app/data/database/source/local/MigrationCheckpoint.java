@@ -0,0 +1,127 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Consists stored progress of the {@link DbMigration}: unit currently migrated, position inside
+ * that unit, number of already migrated rows and ranges of IDs of rows created by migration
+ * of the unit, so they can be told apart from rows written meanwhile.
+ */
+class MigrationCheckpoint {
+
+    private static final String RANGES_SEPARATOR = ",";
+    private static final String RANGE_SEPARATOR = "-";
+
+    private String mUnit;
+    private long mPosition;
+    private long mCount;
+    private boolean mDone;
+    private String mCopiedRanges;
+    // not stored, counts units finished by the current step
+    private int mFinishedUnits = 0;
+
+    /**
+     * @param copiedRanges ranges of created rows, as returned by {@link #getCopiedRanges()}
+     */
+    MigrationCheckpoint(@Nullable String unit, long position, long count, boolean done,
+                        @Nullable String copiedRanges) {
+        mUnit = unit;
+        mPosition = position;
+        mCount = count;
+        mDone = done;
+        mCopiedRanges = copiedRanges;
+    }
+
+    /**
+     * Starts migration of the new unit from the beginning.
+     * @param unit unit to migrate, null if there is no current unit
+     */
+    void reset(@Nullable String unit) {
+        mUnit = unit;
+        mPosition = 0;
+        mCount = 0;
+        mCopiedRanges = null;
+    }
+
+    /**
+     * Counts a unit finished by the current step, so pending units don't have to be counted again.
+     */
+    void addFinishedUnit() {
+        mFinishedUnits++;
+    }
+
+    int getFinishedUnits() {
+        return mFinishedUnits;
+    }
+
+    @Nullable
+    String getUnit() {
+        return mUnit;
+    }
+
+    long getPosition() {
+        return mPosition;
+    }
+
+    void setPosition(long position) {
+        mPosition = position;
+    }
+
+    long getCount() {
+        return mCount;
+    }
+
+    void setCount(long count) {
+        mCount = count;
+    }
+
+    /**
+     * Adds range of IDs of rows created by migration of the unit; range continuing the last one
+     * is merged with it.
+     */
+    void addCopiedRange(long firstId, long lastId) {
+        if (mCopiedRanges == null || mCopiedRanges.isEmpty()) {
+            mCopiedRanges = firstId + RANGE_SEPARATOR + lastId;
+            return;
+        }
+        int lastRangeStart = mCopiedRanges.lastIndexOf(RANGES_SEPARATOR) + 1;
+        String[] lastRange = mCopiedRanges.substring(lastRangeStart).split(RANGE_SEPARATOR);
+        if (Long.parseLong(lastRange[1]) + 1 == firstId) {
+            mCopiedRanges = mCopiedRanges.substring(0, lastRangeStart) + lastRange[0] + RANGE_SEPARATOR + lastId;
+        } else {
+            mCopiedRanges += RANGES_SEPARATOR + firstId + RANGE_SEPARATOR + lastId;
+        }
+    }
+
+    /**
+     * @return ranges of IDs of created rows, as "first-last" pairs separated by commas; null if none
+     */
+    @Nullable
+    String getCopiedRanges() {
+        return mCopiedRanges;
+    }
+
+    /**
+     * @return ranges of IDs of created rows, as {first, last} pairs
+     */
+    long[][] parseCopiedRanges() {
+        if (mCopiedRanges == null || mCopiedRanges.isEmpty()) {
+            return new long[0][];
+        }
+        String[] ranges = mCopiedRanges.split(RANGES_SEPARATOR);
+        long[][] parsed = new long[ranges.length][];
+        for (int i = 0; i < ranges.length; i++) {
+            String[] range = ranges[i].split(RANGE_SEPARATOR);
+            parsed[i] = new long[] {Long.parseLong(range[0]), Long.parseLong(range[1])};
+        }
+        return parsed;
+    }
+
+    boolean isDone() {
+        return mDone;
+    }
+
+    void setDone(boolean done) {
+        mDone = done;
+    }
+}
@@ -0,0 +1,214 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Base of the migrations copying records of one session at a time into the records table.
+ * Every session is one unit of migration, rows are copied in batches in order of their entry ID,
+ * converted to numeric types of the records table, with addresses moved to the addresses dictionary.
+ * Source rows of the session are removed only
+ * if their number is equal to number of copied rows. IDs of created rows are kept in the checkpoint,
+ * so rows recorded into the session meanwhile are never removed with the copied ones.
+ */
+abstract class RecordsCopyMigration implements DbMigration {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String COPIED_COLUMNS = RecordsEntry.COLUMN_NAME_LATITUDE + "," +
+            RecordsEntry.COLUMN_NAME_LONGITUDE + "," +
+            RecordsEntry.COLUMN_NAME_ALTITUDE + "," +
+            RecordsEntry.COLUMN_NAME_DATE + "," +
+            RecordsEntry.COLUMN_NAME_ADDRESS_ID + "," +
+            RecordsEntry.COLUMN_NAME_DISTANCE;
+    private static final String CONVERTED_COLUMNS =
+            "CAST(" + RecordsEntry.COLUMN_NAME_LATITUDE + " AS REAL)," +
+            "CAST(" + RecordsEntry.COLUMN_NAME_LONGITUDE + " AS REAL)," +
+            "CAST(" + RecordsEntry.COLUMN_NAME_ALTITUDE + " AS REAL)," +
+            "CAST(" + RecordsEntry.COLUMN_NAME_DATE + " AS INTEGER)," +
+            "(SELECT " + AddressEntry.COLUMN_NAME_ID + " FROM " + AddressEntry.TABLE_NAME +
+            " WHERE " + AddressEntry.COLUMN_NAME_ADDRESS + "=src." + RecordsEntry.COLUMN_NAME_ADDRESS + ")," +
+            "CAST(" + RecordsEntry.COLUMN_NAME_DISTANCE + " AS REAL)";
+
+    private final String LOG_TAG = getClass().getSimpleName();
+
+    /**
+     * @return ID of the next session to migrate, null if there is none
+     */
+    @Nullable
+    abstract String findNextUnit(SQLiteDatabase db);
+
+    /**
+     * @return true if given session still has records to migrate
+     */
+    abstract boolean isUnitPending(SQLiteDatabase db, String unit);
+
+    /**
+     * @return name of the table keeping records of given session
+     */
+    abstract String getSourceTable(String unit);
+
+    /**
+     * @return true if source table keeps records of many sessions, so rows are selected by session ID
+     */
+    abstract boolean isSourceShared();
+
+    /**
+     * Called when there is nothing left to migrate.
+     */
+    void onMigrationFinished(SQLiteDatabase db) {}
+
+    @Override
+    public boolean migrateStep(SQLiteDatabase db, MigrationCheckpoint checkpoint) {
+        String unit = checkpoint.getUnit();
+        if (unit == null || !isUnitPending(db, unit)) {
+            unit = findNextUnit(db);
+            if (unit == null) {
+                onMigrationFinished(db);
+                return false;
+            }
+            checkpoint.reset(unit);
+        }
+
+        if (copyBatch(db, checkpoint) == 0) {
+            finishUnit(db, checkpoint);
+        }
+        return true;
+    }
+
+    @Override
+    public void completeUnit(SQLiteDatabase db, MigrationCheckpoint checkpoint, String unit) {
+        if (!isUnitPending(db, unit)) {
+            return;
+        }
+
+        MigrationCheckpoint unitCheckpoint = checkpoint;
+        if (!unit.equals(checkpoint.getUnit())) {
+            unitCheckpoint = new MigrationCheckpoint(unit, 0, 0, false, null);
+        }
+        //noinspection StatementWithEmptyBody
+        while (copyBatch(db, unitCheckpoint) > 0) {}
+        finishUnit(db, unitCheckpoint);
+    }
+
+    /**
+     * Copies next batch of rows of the current unit.
+     * @return number of copied rows, 0 if all rows of the unit are already copied
+     */
+    private int copyBatch(SQLiteDatabase db, MigrationCheckpoint checkpoint) {
+        String unit = checkpoint.getUnit();
+        String source = properName(getSourceTable(unit));
+        Cursor c = db.rawQuery("SELECT COUNT(*), MAX(" + RecordsEntry.COLUMN_NAME_ENTRY_ID + ")" +
+                " FROM (SELECT " + RecordsEntry.COLUMN_NAME_ENTRY_ID + " FROM " + source +
+                " WHERE " + selectionUnit() + RecordsEntry.COLUMN_NAME_ENTRY_ID + ">?" +
+                " ORDER BY " + RecordsEntry.COLUMN_NAME_ENTRY_ID + " LIMIT " + BATCH_SIZE + ")",
+                argsUnit(unit, String.valueOf(checkpoint.getPosition())));
+        c.moveToFirst();
+        int count = c.getInt(0);
+        long lastEntry = c.getLong(1);
+        c.close();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        String batchSelection = " WHERE " + selectionUnit() + RecordsEntry.COLUMN_NAME_ENTRY_ID + ">? AND " +
+                RecordsEntry.COLUMN_NAME_ENTRY_ID + "<=?";
+        Object[] batchArgs = isSourceShared()
+                ? new Object[] {unit, checkpoint.getPosition(), lastEntry}
+                : new Object[] {checkpoint.getPosition(), lastEntry};
+        db.execSQL("INSERT OR IGNORE INTO " + AddressEntry.TABLE_NAME +
+                " (" + AddressEntry.COLUMN_NAME_ADDRESS + ")" +
+                " SELECT DISTINCT " + RecordsEntry.COLUMN_NAME_ADDRESS + " FROM " + source +
+                batchSelection + " AND " + RecordsEntry.COLUMN_NAME_ADDRESS + " IS NOT NULL", batchArgs);
+        db.execSQL("INSERT INTO " + RecordsEntry.TABLE_NAME +
+                " (" + RecordsEntry.COLUMN_NAME_SESSION_ID + "," + COPIED_COLUMNS + ")" +
+                " SELECT ?," + CONVERTED_COLUMNS + " FROM " + source + " AS src" + batchSelection +
+                " ORDER BY " + RecordsEntry.COLUMN_NAME_ENTRY_ID,
+                isSourceShared()
+                        ? new Object[] {unit, unit, checkpoint.getPosition(), lastEntry}
+                        : new Object[] {unit, checkpoint.getPosition(), lastEntry});
+        // rows inserted by single statement get consecutive IDs
+        Cursor inserted = db.rawQuery("SELECT changes(), last_insert_rowid()", null);
+        inserted.moveToFirst();
+        int insertedCount = inserted.getInt(0);
+        long lastInsertedId = inserted.getLong(1);
+        inserted.close();
+        if (insertedCount > 0) {
+            checkpoint.addCopiedRange(lastInsertedId - insertedCount + 1, lastInsertedId);
+        }
+
+        checkpoint.setPosition(lastEntry);
+        checkpoint.setCount(checkpoint.getCount() + count);
+        return count;
+    }
+
+    /**
+     * Removes source rows of the unit if all of them are copied and summarizes the session again,
+     * as its summary may have been computed by the recording writer before rows were copied.
+     * Otherwise removes rows copied by this unit, keeping rows recorded into the session meanwhile,
+     * and starts the unit again.
+     */
+    private void finishUnit(SQLiteDatabase db, MigrationCheckpoint checkpoint) {
+        String unit = checkpoint.getUnit();
+        String source = properName(getSourceTable(unit));
+        long sourceCount = queryLong(db, "SELECT COUNT(*) FROM " + source +
+                (isSourceShared() ? " WHERE " + RecordsEntry.COLUMN_NAME_SESSION_ID + "=?" : ""),
+                isSourceShared() ? new String[] {unit} : null);
+
+        if (sourceCount == checkpoint.getCount()) {
+            if (isSourceShared()) {
+                db.delete(source, RecordsEntry.COLUMN_NAME_SESSION_ID + "=?", new String[] {unit});
+            } else {
+                db.execSQL("DROP TABLE IF EXISTS " + source);
+            }
+            SessionSummaryStore.write(db, unit, SessionSummaryStore.compute(db, unit));
+            checkpoint.reset(null);
+            checkpoint.addFinishedUnit();
+        } else {
+            Log.w(LOG_TAG, "Records of " + unit + " not verified: " + sourceCount +
+                    " rows, " + checkpoint.getCount() + " copied. Migrating again.");
+            deleteCopiedRows(db, checkpoint);
+            checkpoint.reset(unit);
+        }
+    }
+
+    private void deleteCopiedRows(SQLiteDatabase db, MigrationCheckpoint checkpoint) {
+        for (long[] range : checkpoint.parseCopiedRanges()) {
+            db.delete(RecordsEntry.TABLE_NAME, RecordsEntry.COLUMN_NAME_SESSION_ID + "=? AND " +
+                    RecordsEntry.COLUMN_NAME_ENTRY_ID + " BETWEEN ? AND ?",
+                    new String[] {checkpoint.getUnit(), String.valueOf(range[0]), String.valueOf(range[1])});
+        }
+    }
+
+    private String selectionUnit() {
+        return isSourceShared() ? RecordsEntry.COLUMN_NAME_SESSION_ID + "=? AND " : "";
+    }
+
+    private String[] argsUnit(String unit, String position) {
+        return isSourceShared() ? new String[] {unit, position} : new String[] {position};
+    }
+
+    long queryLong(SQLiteDatabase db, String query, String[] args) {
+        Cursor c = db.rawQuery(query, args);
+        c.moveToFirst();
+        long value = c.getLong(0);
+        c.close();
+        return value;
+    }
+
+    @Nullable
+    String queryString(SQLiteDatabase db, String query, String[] args) {
+        Cursor c = db.rawQuery(query, args);
+        String value = c.moveToFirst() ? c.getString(0) : null;
+        c.close();
+        return value;
+    }
+
+    private String properName(String name) {
+        return "\"" + name + "\"";
+    }
+}
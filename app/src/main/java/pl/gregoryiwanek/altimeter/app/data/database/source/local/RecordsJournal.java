@@ -0,0 +1,261 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of recorded points not written to the database yet, kept in memory mapped
+ * file. Appending a point copies fixed-width record into mapped memory, without system call,
+ * so records survive death of the process; they are replayed into the database on the next launch.
+ * <p>
+ * File starts with header: magic number and current generation of the journal. Each record
+ * consists generation, session ID, index of the point in the session, date, latitude, longitude,
+ * altitude, distance, address truncated to {@link #ADDRESS_BYTES} and CRC32 of all of them.
+ * Valid records are those of current generation with correct checksum, read from the start
+ * up to the first invalid one, so record torn by process death ends the journal. Truncation only
+ * increments generation, which invalidates all records at once.
+ * <p>
+ * Errors of the file are logged and turn the journal off; recording continues without it.
+ */
+class RecordsJournal {
+
+    private static final int MAGIC = 0x414c544a;
+    private static final int HEADER_SIZE = 16;
+    private static final int SESSION_ID_BYTES = 40;
+    private static final int ADDRESS_BYTES = 94;
+    // generation, session ID length and bytes, index, date, 4 doubles, address length and bytes
+    private static final int CHECKED_SIZE = 4 + 1 + SESSION_ID_BYTES + 4 + 8 + 4 * 8 + 2 + ADDRESS_BYTES;
+    private static final int RECORD_SIZE = 192;
+    private static final int INITIAL_RECORDS = 256;
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final String LOG_TAG = getClass().getSimpleName();
+    private final File mFile;
+    private RandomAccessFile mFileAccess;
+    private MappedByteBuffer mMapped;
+    private boolean mIsBroken = false;
+    private int mGeneration;
+    private int mCount;
+
+    private final byte[] mRecord = new byte[RECORD_SIZE];
+    private final ByteBuffer mRecordBuffer = ByteBuffer.wrap(mRecord);
+    private final CRC32 mCrc = new CRC32();
+    private String mLastSessionId;
+    private byte[] mLastSessionIdBytes;
+
+    /**
+     * Receives records read from the journal.
+     */
+    interface RecordConsumer {
+
+        void onRecord(String sessionId, int index, long date, double latitude, double longitude,
+                      double altitude, double distance, String address);
+    }
+
+    RecordsJournal(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * Appends record of the point.
+     * @param address address of the point, null if unknown; longer addresses are truncated
+     */
+    synchronized void append(String sessionId, int index, long date, double latitude, double longitude,
+                             double altitude, double distance, String address) {
+        byte[] sessionIdBytes = getSessionIdBytes(sessionId);
+        if (sessionIdBytes == null || !open()) {
+            return;
+        }
+        try {
+            ensureCapacity(mCount + 1);
+        } catch (IOException e) {
+            fail("Journal can't grow", e);
+            return;
+        }
+
+        mRecordBuffer.clear();
+        mRecordBuffer.putInt(mGeneration);
+        mRecordBuffer.put((byte) sessionIdBytes.length);
+        mRecordBuffer.put(sessionIdBytes);
+        mRecordBuffer.position(4 + 1 + SESSION_ID_BYTES);
+        mRecordBuffer.putInt(index);
+        mRecordBuffer.putLong(date);
+        mRecordBuffer.putDouble(latitude);
+        mRecordBuffer.putDouble(longitude);
+        mRecordBuffer.putDouble(altitude);
+        mRecordBuffer.putDouble(distance);
+        putAddress(address);
+        mRecordBuffer.position(CHECKED_SIZE);
+        mCrc.reset();
+        mCrc.update(mRecord, 0, CHECKED_SIZE);
+        mRecordBuffer.putInt((int) mCrc.getValue());
+
+        mMapped.position(HEADER_SIZE + mCount * RECORD_SIZE);
+        mMapped.put(mRecord);
+        mCount++;
+    }
+
+    /**
+     * Passes all valid records to the consumer, in order of appending.
+     */
+    synchronized void read(@NonNull RecordConsumer consumer) {
+        if (!open()) {
+            return;
+        }
+        for (int i = 0; i < mCount; i++) {
+            readRecord(i);
+            mRecordBuffer.clear();
+            mRecordBuffer.position(4);
+            int sessionIdLength = mRecordBuffer.get();
+            String sessionId = new String(mRecord, 5, sessionIdLength, CHARSET);
+            mRecordBuffer.position(4 + 1 + SESSION_ID_BYTES);
+            int index = mRecordBuffer.getInt();
+            long date = mRecordBuffer.getLong();
+            double latitude = mRecordBuffer.getDouble();
+            double longitude = mRecordBuffer.getDouble();
+            double altitude = mRecordBuffer.getDouble();
+            double distance = mRecordBuffer.getDouble();
+            int addressLength = mRecordBuffer.getShort();
+            String address = addressLength < 0 ? null
+                    : new String(mRecord, mRecordBuffer.position(), addressLength, CHARSET);
+            consumer.onRecord(sessionId, index, date, latitude, longitude, altitude, distance, address);
+        }
+    }
+
+    /**
+     * Removes all records.
+     */
+    synchronized void truncate() {
+        if (mCount == 0 || !open()) {
+            return;
+        }
+        mGeneration++;
+        mMapped.putInt(4, mGeneration);
+        mCount = 0;
+    }
+
+    synchronized void close() {
+        if (mFileAccess != null) {
+            try {
+                mFileAccess.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Journal can't be closed", e);
+            }
+        }
+        mFileAccess = null;
+        mMapped = null;
+    }
+
+    /**
+     * Maps the file, at first use; counts valid records left by previous process.
+     * @return false if journal is not usable
+     */
+    private boolean open() {
+        if (mMapped != null) {
+            return true;
+        }
+        if (mIsBroken) {
+            return false;
+        }
+        try {
+            mFileAccess = new RandomAccessFile(mFile, "rw");
+            boolean isExisting = mFileAccess.length() >= HEADER_SIZE + RECORD_SIZE;
+            map(Math.max(mFileAccess.length(), HEADER_SIZE + INITIAL_RECORDS * RECORD_SIZE));
+            if (isExisting && mMapped.getInt(0) == MAGIC) {
+                mGeneration = mMapped.getInt(4);
+                mCount = countValidRecords();
+            } else {
+                mGeneration = 0;
+                mCount = 0;
+                mMapped.putInt(0, MAGIC);
+                mMapped.putInt(4, mGeneration);
+            }
+            return true;
+        } catch (IOException e) {
+            fail("Journal can't be opened", e);
+            return false;
+        }
+    }
+
+    private void map(long size) throws IOException {
+        mMapped = mFileAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void ensureCapacity(int count) throws IOException {
+        long size = HEADER_SIZE + (long) count * RECORD_SIZE;
+        if (size > mMapped.capacity()) {
+            map(HEADER_SIZE + 2L * (mMapped.capacity() - HEADER_SIZE));
+        }
+    }
+
+    private int countValidRecords() {
+        int maxCount = (mMapped.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        int count = 0;
+        while (count < maxCount && isValid(count)) {
+            count++;
+        }
+        return count;
+    }
+
+    private boolean isValid(int index) {
+        readRecord(index);
+        mRecordBuffer.clear();
+        if (mRecordBuffer.getInt(0) != mGeneration) {
+            return false;
+        }
+        mCrc.reset();
+        mCrc.update(mRecord, 0, CHECKED_SIZE);
+        return mRecordBuffer.getInt(CHECKED_SIZE) == (int) mCrc.getValue();
+    }
+
+    private void readRecord(int index) {
+        mMapped.position(HEADER_SIZE + index * RECORD_SIZE);
+        mMapped.get(mRecord);
+    }
+
+    /**
+     * @return encoded session ID, null if it doesn't fit into record
+     */
+    private byte[] getSessionIdBytes(String sessionId) {
+        if (!sessionId.equals(mLastSessionId)) {
+            byte[] bytes = sessionId.getBytes(CHARSET);
+            if (bytes.length > SESSION_ID_BYTES) {
+                Log.w(LOG_TAG, "Session ID too long for journal: " + sessionId);
+                return null;
+            }
+            mLastSessionId = sessionId;
+            mLastSessionIdBytes = bytes;
+        }
+        return mLastSessionIdBytes;
+    }
+
+    private void putAddress(String address) {
+        if (address == null) {
+            mRecordBuffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = address.getBytes(CHARSET);
+        int length = Math.min(bytes.length, ADDRESS_BYTES);
+        // don't cut multi-byte character
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        mRecordBuffer.putShort((short) length);
+        mRecordBuffer.put(bytes, 0, length);
+    }
+
+    private void fail(String message, IOException e) {
+        Log.e(LOG_TAG, message + ", recording continues without journal", e);
+        mIsBroken = true;
+        close();
+    }
+}
@@ -0,0 +1,163 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import pl.gregoryiwanek.altimeter.app.data.database.source.RecordsSampling;
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Reads records of the session with date within range, reduced by {@link RecordsSampling}.
+ * Only chunks whose dates overlap the range are decoded; rows not packed into chunks are selected
+ * by the session and date index. Bucketed rows are grouped by SQLite, which returns the earliest
+ * row of every bucket, so skipped rows never leave the database.
+ * <p>
+ * Returned rows are copies, so the list can be kept; it should be bounded by the range or sampling.
+ */
+class RecordsRangeReader {
+
+    private static final String ROW_COLUMNS = "r." + RecordsEntry.COLUMN_NAME_ENTRY_ID + "," +
+            "r." + RecordsEntry.COLUMN_NAME_LATITUDE + "," +
+            "r." + RecordsEntry.COLUMN_NAME_LONGITUDE + "," +
+            "r." + RecordsEntry.COLUMN_NAME_ALTITUDE + ",";
+    private static final String ROW_SOURCE = "a." + AddressEntry.COLUMN_NAME_ADDRESS + "," +
+            "r." + RecordsEntry.COLUMN_NAME_DISTANCE +
+            " FROM " + RecordsEntry.TABLE_NAME + " r LEFT JOIN " + AddressEntry.TABLE_NAME + " a" +
+            " ON a." + AddressEntry.COLUMN_NAME_ID + "=r." + RecordsEntry.COLUMN_NAME_ADDRESS_ID +
+            " WHERE r." + RecordsEntry.COLUMN_NAME_SESSION_ID + "=?" +
+            " AND r." + RecordsEntry.COLUMN_NAME_DATE + " BETWEEN ? AND ?";
+    private static final String QUERY_ROWS = "SELECT " + ROW_COLUMNS +
+            "r." + RecordsEntry.COLUMN_NAME_DATE + "," + ROW_SOURCE +
+            " ORDER BY r." + RecordsEntry.COLUMN_NAME_DATE + " ASC,r." + RecordsEntry.COLUMN_NAME_ENTRY_ID + " ASC";
+    // other columns of the aggregated row are taken from the row with minimal date
+    private static final String QUERY_BUCKETED_ROWS = "SELECT " + ROW_COLUMNS +
+            "MIN(r." + RecordsEntry.COLUMN_NAME_DATE + ")," + ROW_SOURCE +
+            " GROUP BY (r." + RecordsEntry.COLUMN_NAME_DATE + "-%1$d)/%2$d" +
+            " ORDER BY MIN(r." + RecordsEntry.COLUMN_NAME_DATE + ") ASC";
+    private static final String QUERY_CHUNKS = "SELECT " + ChunkEntry.COLUMN_NAME_CHUNK_INDEX +
+            " FROM " + ChunkEntry.TABLE_NAME +
+            " WHERE " + ChunkEntry.COLUMN_NAME_SESSION_ID + "=?" +
+            " AND " + ChunkEntry.COLUMN_NAME_END_DATE + ">=? AND " + ChunkEntry.COLUMN_NAME_START_DATE + "<=?" +
+            " ORDER BY " + ChunkEntry.COLUMN_NAME_CHUNK_INDEX;
+
+    private final SQLiteDatabase mDb;
+    private final String mSessionId;
+    private final long mFromDate;
+    private final long mToDate;
+    private final RecordsSampling mSampling;
+    private final TrackChunkDecoder mDecoder = new TrackChunkDecoder();
+    private final List<RecordRow> mRecords = new ArrayList<>();
+    private int mPosition = 0;
+    private long mLastBucket = -1;
+    private long mLastAddressId = 0;
+    private String mLastAddress = null;
+
+    RecordsRangeReader(@NonNull SQLiteDatabase db, @NonNull String sessionId, long fromDate, long toDate,
+                       @NonNull RecordsSampling sampling) {
+        mDb = db;
+        mSessionId = sessionId;
+        mFromDate = fromDate;
+        mToDate = toDate;
+        mSampling = sampling;
+    }
+
+    /**
+     * @return records in order of date; empty list if range is empty
+     */
+    List<RecordRow> read() {
+        if (mFromDate > mToDate) {
+            return mRecords;
+        }
+        String[] args = new String[] {mSessionId, String.valueOf(mFromDate), String.valueOf(mToDate)};
+        readChunks(args);
+        readRows(args);
+        return mRecords;
+    }
+
+    private void readChunks(String[] args) {
+        Cursor c = mDb.rawQuery(QUERY_CHUNKS, args);
+        int[] chunkIndexes = new int[c.getCount()];
+        for (int i = 0; c.moveToNext(); i++) {
+            chunkIndexes[i] = c.getInt(0);
+        }
+        c.close();
+
+        for (int chunkIndex : chunkIndexes) {
+            if (!TrackChunkStore.readChunk(mDb, mSessionId, chunkIndex, mDecoder)) {
+                continue;
+            }
+            while (mDecoder.next()) {
+                long date = mDecoder.getDate();
+                if (date >= mFromDate && date <= mToDate && isSampled(date)) {
+                    add(mDecoder.getEntryId(), mDecoder.getLatitude(), mDecoder.getLongitude(),
+                            mDecoder.getAltitude(), date, getAddress(mDecoder.getAddressId()),
+                            mDecoder.getDistance());
+                }
+            }
+        }
+    }
+
+    private void readRows(String[] args) {
+        String query = mSampling.isBucketed()
+                ? String.format(Locale.US, QUERY_BUCKETED_ROWS, mFromDate, mSampling.getBucketMillis())
+                : QUERY_ROWS;
+        Cursor c = mDb.rawQuery(query, args);
+        while (c.moveToNext()) {
+            long date = c.getLong(4);
+            if (isSampled(date)) {
+                add(c.getLong(0), getDoubleOrNaN(c, 1), getDoubleOrNaN(c, 2), getDoubleOrNaN(c, 3),
+                        date, c.getString(5), c.getDouble(6));
+            }
+        }
+        c.close();
+    }
+
+    /**
+     * Counts the record in range and decides whether it is kept. Last bucket of chunks can
+     * continue in rows, so buckets are checked in rows as well.
+     */
+    private boolean isSampled(long date) {
+        if (mSampling.isBucketed()) {
+            long bucket = (date - mFromDate) / mSampling.getBucketMillis();
+            if (bucket == mLastBucket) {
+                return false;
+            }
+            mLastBucket = bucket;
+            return true;
+        }
+        return mPosition++ % mSampling.getStep() == 0;
+    }
+
+    private void add(long id, double latitude, double longitude, double altitude, long date,
+                     String address, double distance) {
+        RecordRow row = new RecordRow();
+        row.set(id, latitude, longitude, altitude, date, address, distance);
+        mRecords.add(row);
+    }
+
+    private String getAddress(long addressId) {
+        if (addressId == 0) {
+            return null;
+        }
+        if (addressId != mLastAddressId) {
+            Cursor c = mDb.query(AddressEntry.TABLE_NAME, new String[] {AddressEntry.COLUMN_NAME_ADDRESS},
+                    AddressEntry.COLUMN_NAME_ID + "=?", new String[] {String.valueOf(addressId)},
+                    null, null, null);
+            mLastAddress = c.moveToFirst() ? c.getString(0) : null;
+            mLastAddressId = addressId;
+            c.close();
+        }
+        return mLastAddress;
+    }
+
+    private static double getDoubleOrNaN(Cursor c, int index) {
+        return c.isNull(index) ? Double.NaN : c.getDouble(index);
+    }
+}
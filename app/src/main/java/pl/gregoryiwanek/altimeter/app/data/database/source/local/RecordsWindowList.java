@@ -0,0 +1,212 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.Locale;
+import java.util.RandomAccess;
+
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Read-only list of session's records, ordered by date, read from database in fixed windows.
+ * Windows of points packed into chunks ({@link TrackChunkStore}) are decoded from chunks, following
+ * windows are read from the records table.
+ * Only the current window is kept in memory, as primitive arrays; rows are decoded on demand
+ * into single reused {@link RecordRow}, so returned row is valid until the next call of
+ * {@link #get(int)}. Addresses are joined from the addresses dictionary. Sequential access reads
+ * every window once, cursor of the window is closed as soon as window is loaded.
+ * <p>
+ * Chunks are only appended, so a window which is already a chunk is read from it. Window of
+ * the records table is read by a single statement, returning also number of chunks it was read
+ * against; if records were packed into the window's chunk meanwhile, the chunk is read instead,
+ * so no row is skipped or read twice and no write transaction is needed. Window following
+ * the previous one is read after date and entry ID of the previous window's last row, so reading
+ * doesn't slow down with position in the track.
+ * Size of the list is fixed when list is created.
+ */
+class RecordsWindowList extends AbstractList<RecordRow> implements RandomAccess {
+
+    // windows are aligned with chunks, so every chunk is one window
+    private static final int WINDOW_SIZE = TrackChunkEncoder.CHUNK_POINTS;
+    private static final String QUERY_COLUMNS = "SELECT " +
+            "r." + RecordsEntry.COLUMN_NAME_ENTRY_ID + "," +
+            "r." + RecordsEntry.COLUMN_NAME_LATITUDE + "," +
+            "r." + RecordsEntry.COLUMN_NAME_LONGITUDE + "," +
+            "r." + RecordsEntry.COLUMN_NAME_ALTITUDE + "," +
+            "r." + RecordsEntry.COLUMN_NAME_DATE + "," +
+            "a." + AddressEntry.COLUMN_NAME_ADDRESS + "," +
+            "r." + RecordsEntry.COLUMN_NAME_DISTANCE + "," +
+            "(SELECT COUNT(*) FROM " + ChunkEntry.TABLE_NAME + " WHERE " +
+            ChunkEntry.COLUMN_NAME_SESSION_ID + "=r." + RecordsEntry.COLUMN_NAME_SESSION_ID + ")" +
+            " FROM " + RecordsEntry.TABLE_NAME + " r LEFT JOIN " + AddressEntry.TABLE_NAME + " a" +
+            " ON a." + AddressEntry.COLUMN_NAME_ID + "=r." + RecordsEntry.COLUMN_NAME_ADDRESS_ID +
+            " WHERE r." + RecordsEntry.COLUMN_NAME_SESSION_ID + "=?";
+    private static final String QUERY_ORDER = " ORDER BY r." + RecordsEntry.COLUMN_NAME_DATE + " ASC,r." +
+            RecordsEntry.COLUMN_NAME_ENTRY_ID + " ASC LIMIT " + WINDOW_SIZE;
+    // offset is counted from the first row after chunks, by number of chunks read by the statement
+    private static final String QUERY_WINDOW_AT = QUERY_COLUMNS + QUERY_ORDER + " OFFSET (%d-(SELECT COUNT(*)*" +
+            WINDOW_SIZE + " FROM " + ChunkEntry.TABLE_NAME + " WHERE " + ChunkEntry.COLUMN_NAME_SESSION_ID + "=?))";
+    private static final String QUERY_WINDOW_AFTER = QUERY_COLUMNS +
+            " AND (r." + RecordsEntry.COLUMN_NAME_DATE + ">? OR (r." + RecordsEntry.COLUMN_NAME_DATE + "=? AND r." +
+            RecordsEntry.COLUMN_NAME_ENTRY_ID + ">?))" + QUERY_ORDER;
+
+    private final DbConnectionManager mConnectionManager;
+    private final String mSessionId;
+    private final int mSize;
+    private final RecordRow mRow = new RecordRow();
+    private final TrackChunkDecoder mDecoder = new TrackChunkDecoder();
+    private long mLastAddressId = 0;
+    private String mLastAddress = null;
+
+    private int mWindowStart = -1;
+    private int mWindowCount = 0;
+    private final long[] mIds = new long[WINDOW_SIZE];
+    private final double[] mLatitudes = new double[WINDOW_SIZE];
+    private final double[] mLongitudes = new double[WINDOW_SIZE];
+    private final double[] mAltitudes = new double[WINDOW_SIZE];
+    private final long[] mDates = new long[WINDOW_SIZE];
+    private final String[] mAddresses = new String[WINDOW_SIZE];
+    private final double[] mDistances = new double[WINDOW_SIZE];
+
+    // date and entry ID of the last row of the loaded window, and its index; -1 if none
+    private int mKeyIndex = -1;
+    private long mKeyDate = 0;
+    private long mKeyId = 0;
+
+    RecordsWindowList(@NonNull DbConnectionManager connectionManager, @NonNull String sessionId,
+                      int size) {
+        mConnectionManager = connectionManager;
+        mSessionId = sessionId;
+        mSize = size;
+    }
+
+    @Override
+    public RecordRow get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+        if (index < mWindowStart || index >= mWindowStart + mWindowCount) {
+            loadWindow(index - index % WINDOW_SIZE);
+        }
+
+        int i = index - mWindowStart;
+        if (i >= mWindowCount) {
+            // records removed after list was created
+            throw new IndexOutOfBoundsException("Index: " + index + ", records left: " +
+                    (mWindowStart + mWindowCount));
+        }
+        mRow.set(mIds[i], mLatitudes[i], mLongitudes[i], mAltitudes[i], mDates[i], mAddresses[i],
+                mDistances[i]);
+        return mRow;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    private void loadWindow(int windowStart) {
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+        int window = windowStart / WINDOW_SIZE;
+        boolean isLoaded = false;
+        while (!isLoaded) {
+            if (loadChunkWindow(db, window)) {
+                isLoaded = true;
+            } else if (mKeyIndex == windowStart - 1) {
+                // rows of the records table follow all chunks, so rows after the key are next
+                isLoaded = loadRecordsWindow(db, window, QUERY_WINDOW_AFTER,
+                        new String[] {mSessionId, String.valueOf(mKeyDate), String.valueOf(mKeyDate),
+                                String.valueOf(mKeyId)});
+            } else {
+                isLoaded = loadRecordsWindow(db, window, String.format(Locale.US, QUERY_WINDOW_AT, windowStart),
+                        new String[] {mSessionId, mSessionId});
+            }
+        }
+        mWindowStart = windowStart;
+        if (mWindowCount > 0) {
+            mKeyIndex = windowStart + mWindowCount - 1;
+            mKeyDate = mDates[mWindowCount - 1];
+            mKeyId = mIds[mWindowCount - 1];
+        } else {
+            mKeyIndex = -1;
+        }
+    }
+
+    /**
+     * @return false if there is no such chunk
+     */
+    private boolean loadChunkWindow(SQLiteDatabase db, int chunkIndex) {
+        if (!TrackChunkStore.readChunk(db, mSessionId, chunkIndex, mDecoder)) {
+            return false;
+        }
+        int count = 0;
+        while (mDecoder.next()) {
+            mIds[count] = mDecoder.getEntryId();
+            mLatitudes[count] = mDecoder.getLatitude();
+            mLongitudes[count] = mDecoder.getLongitude();
+            mAltitudes[count] = mDecoder.getAltitude();
+            mDates[count] = mDecoder.getDate();
+            mAddresses[count] = getAddress(db, mDecoder.getAddressId());
+            mDistances[count] = mDecoder.getDistance();
+            count++;
+        }
+        mWindowCount = count;
+        return true;
+    }
+
+    /**
+     * @return false if records of the window were packed into chunk before they were read
+     */
+    private boolean loadRecordsWindow(SQLiteDatabase db, int window, String query, String[] args) {
+        Cursor c = db.rawQuery(query, args);
+        // column 7 is number of chunks seen by the statement
+        if (c.moveToFirst() && c.getInt(7) > window) {
+            c.close();
+            return false;
+        }
+
+        int count = 0;
+        c.moveToPosition(-1);
+        while (c.moveToNext()) {
+            mIds[count] = c.getLong(0);
+            mLatitudes[count] = getDoubleOrNaN(c, 1);
+            mLongitudes[count] = getDoubleOrNaN(c, 2);
+            mAltitudes[count] = getDoubleOrNaN(c, 3);
+            mDates[count] = c.getLong(4);
+            mAddresses[count] = c.getString(5);
+            mDistances[count] = c.getDouble(6);
+            count++;
+        }
+        c.close();
+        mWindowCount = count;
+        // without rows number of chunks is not known; window may have been packed meanwhile
+        return count > 0 || !TrackChunkStore.readChunk(db, mSessionId, window, mDecoder);
+    }
+
+    /**
+     * Reads address of the chunk's point; consecutive points mostly share the same address.
+     */
+    private String getAddress(SQLiteDatabase db, long addressId) {
+        if (addressId == 0) {
+            return null;
+        }
+        if (addressId != mLastAddressId) {
+            Cursor c = db.query(AddressEntry.TABLE_NAME, new String[] {AddressEntry.COLUMN_NAME_ADDRESS},
+                    AddressEntry.COLUMN_NAME_ID + "=?", new String[] {String.valueOf(addressId)},
+                    null, null, null);
+            mLastAddress = c.moveToFirst() ? c.getString(0) : null;
+            mLastAddressId = addressId;
+            c.close();
+        }
+        return mLastAddress;
+    }
+
+    private double getDoubleOrNaN(Cursor c, int index) {
+        return c.isNull(index) ? Double.NaN : c.getDouble(index);
+    }
+}
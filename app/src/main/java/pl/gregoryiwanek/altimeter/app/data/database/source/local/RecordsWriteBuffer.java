@@ -0,0 +1,481 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
+import pl.gregoryiwanek.altimeter.app.data.sessions.SessionSummary;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackBuffer;
+import rx.Scheduler;
+import rx.Subscription;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Write-behind buffer of session's record points. Points are collected in memory and written
+ * in one transaction, with reused compiled insert statement, when number of buffered points reaches
+ * the limit, when flush interval passes since the first buffered point, or when flush is requested
+ * (eg. when session is paused). Writes run on the writer thread ({@link DbSchedulers}), also when data
+ * is required at once, so batches are written in order and appending never touches the database.
+ * Number of saved points of each session (high-water mark) is stored in the sessions table in the same
+ * transaction as points, so points already written are never inserted again; high-water mark of
+ * a session seen for the first time is read by the writer, before its points are written. Summary columns of the
+ * session ({@link SessionSummaryStore}) are updated in that transaction as well. Addresses are written
+ * once, to the {@link AddressDictionary}; records keep ID of their address. Full chunks of the oldest
+ * records are packed by {@link TrackChunkStore} in the same transaction.
+ * <p>
+ * Every appended point is also written to the {@link RecordsJournal}, which is truncated after each
+ * successful flush. Points left in the journal by killed process are replayed into the database,
+ * in one transaction, before the first flush.
+ */
+class RecordsWriteBuffer {
+
+    private static final int FLUSH_POINTS = 50;
+    private static final long FLUSH_INTERVAL_MILLIS = 60000;
+
+    private final String LOG_TAG = getClass().getSimpleName();
+    private final DbConnectionManager mConnectionManager;
+    private final Scheduler.Worker mWorker;
+    private final RecordsJournal mJournal;
+    // journal is not truncated until points of the previous process are written
+    private volatile boolean mIsReplayPending = true;
+    private final Object mWriteLock = new Object();
+    private final int mFlushPoints;
+    private final long mFlushIntervalMillis;
+
+    private List<PendingPoint> mPendingPoints = new ArrayList<>();
+    private Map<String, ContentValues> mPendingSessions = new LinkedHashMap<>();
+    private final Map<String, Integer> mQueuedPoints = new HashMap<>();
+    private Set<String> mUnverifiedSessions = new HashSet<>();
+    private long mFirstPendingTime = 0;
+    private long mLastAppendTime = 0;
+    private Subscription mScheduledFlush;
+
+    // guarded by mWriteLock
+    private SQLiteDatabase mStatementDb;
+    private SQLiteStatement mInsertStatement;
+    private final AddressDictionary mAddressDictionary = new AddressDictionary();
+    private final TrackChunkEncoder mChunkEncoder = new TrackChunkEncoder();
+
+    // metrics
+    private long mFlushCount = 0;
+    private long mFlushedPoints = 0;
+    private long mLastFlushMillis = 0;
+    private long mLastLagMillis = 0;
+    private long mMaxLagMillis = 0;
+
+    RecordsWriteBuffer(@NonNull DbConnectionManager connectionManager, @NonNull RecordsJournal journal) {
+        this(connectionManager, journal, FLUSH_POINTS, FLUSH_INTERVAL_MILLIS);
+    }
+
+    RecordsWriteBuffer(@NonNull DbConnectionManager connectionManager, @NonNull RecordsJournal journal,
+                       int flushPoints, long flushIntervalMillis) {
+        mConnectionManager = connectionManager;
+        mJournal = journal;
+        mWorker = DbSchedulers.writer().createWorker();
+        mFlushPoints = flushPoints;
+        mFlushIntervalMillis = flushIntervalMillis;
+        mWorker.schedule(this::replayJournal);
+    }
+
+    /**
+     * Point waiting for write, with values parsed once, when appended.
+     */
+    private static class PendingPoint {
+
+        private final String mSessionId;
+        private final int mIndex;
+        private final double mLatitude;
+        private final double mLongitude;
+        private final double mAltitude;
+        private final long mDate;
+        private final String mAddress;
+        private final double mDistance;
+
+        PendingPoint(String sessionId, int index, double latitude, double longitude, double altitude,
+                     long date, String address, double distance) {
+            mSessionId = sessionId;
+            mIndex = index;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mAltitude = altitude;
+            mDate = date;
+            mAddress = address;
+            mDistance = distance;
+        }
+
+        PendingPoint(String sessionId, int index, TrackBuffer track, int position) {
+            this(sessionId, index, track.getLatitude(position), track.getLongitude(position),
+                    track.getAltitude(position), track.getTime(position),
+                    isEmpty(track.getAddress(position)) ? null : track.getAddress(position),
+                    track.getDistance(position));
+        }
+    }
+
+    /**
+     * Buffers record points appended to the session since its last call, as well new values
+     * of the session's row.
+     * @param session session to save
+     * @param sessionValues values of the session's row
+     */
+    synchronized void append(@NonNull Session session, @NonNull ContentValues sessionValues) {
+        String sessionId = session.getId();
+        TrackBuffer track = session.getTrack();
+        int queuedPoints = getQueuedPoints(sessionId);
+
+        mLastAppendTime = System.currentTimeMillis();
+        if (mPendingPoints.isEmpty() && mPendingSessions.isEmpty()) {
+            mFirstPendingTime = mLastAppendTime;
+        }
+        // points cleared from the track before being queued are lost
+        for (int i = Math.max(queuedPoints, track.getStartIndex()); i < track.getEndIndex(); i++) {
+            PendingPoint point = new PendingPoint(sessionId, i, track, i - track.getStartIndex());
+            mPendingPoints.add(point);
+            writeToJournal(point);
+        }
+        queuedPoints = Math.max(queuedPoints, track.getEndIndex());
+        mQueuedPoints.put(sessionId, queuedPoints);
+        // queued points are journaled, so the track can evict them
+        track.markSpilled(queuedPoints);
+
+        sessionValues.put(SessionEntry.COLUMN_NAME_SAVED_POINTS, queuedPoints);
+        mPendingSessions.put(sessionId, sessionValues);
+
+        if (mPendingPoints.size() >= mFlushPoints) {
+            flushAsync();
+        } else if (mScheduledFlush == null) {
+            mScheduledFlush = mWorker.schedule(this::flush, mFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Requests write of all buffered points. Returns at once, write is done by background worker.
+     */
+    void flushAsync() {
+        mWorker.schedule(this::flush);
+    }
+
+    /**
+     * Writes all buffered points and waits for the end of write. Used before reading of the session
+     * data, on reader thread.
+     */
+    void flushNow() {
+        DbSchedulers.runOnWriter(this::flush);
+    }
+
+    /**
+     * Removes buffered, not written yet, points of the session and forgets its high-water mark,
+     * so points recorded after the session's data is cleared are queued from the track again.
+     * Saved high-water mark is reset by the caller, when records are deleted.
+     * @param sessionId ID of the session
+     * @param isSessionDeleted true if session is deleted; its buffered row is dropped as well
+     */
+    synchronized void discard(@NonNull String sessionId, boolean isSessionDeleted) {
+        Iterator<PendingPoint> iterator = mPendingPoints.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mSessionId.equals(sessionId)) {
+                iterator.remove();
+            }
+        }
+        if (isSessionDeleted) {
+            mPendingSessions.remove(sessionId);
+        } else {
+            ContentValues values = mPendingSessions.get(sessionId);
+            if (values != null) {
+                values.remove(SessionEntry.COLUMN_NAME_SAVED_POINTS);
+            }
+        }
+        mQueuedPoints.remove(sessionId);
+        mUnverifiedSessions.remove(sessionId);
+        rewriteJournal();
+    }
+
+    /**
+     * @return true if nothing is buffered and nothing was appended for given time
+     */
+    synchronized boolean isIdle(long idleMillis) {
+        return mPendingPoints.isEmpty() && mPendingSessions.isEmpty()
+                && System.currentTimeMillis() - mLastAppendTime >= idleMillis;
+    }
+
+    synchronized WriteBufferMetrics getMetrics() {
+        return new WriteBufferMetrics(mFlushCount, mFlushedPoints, mPendingPoints.size(),
+                mLastFlushMillis, mLastLagMillis, mMaxLagMillis);
+    }
+
+    private int getQueuedPoints(String sessionId) {
+        Integer queuedPoints = mQueuedPoints.get(sessionId);
+        if (queuedPoints == null) {
+            // all points are queued; those already saved are skipped by the writer
+            queuedPoints = 0;
+            mQueuedPoints.put(sessionId, queuedPoints);
+            mUnverifiedSessions.add(sessionId);
+        }
+        return queuedPoints;
+    }
+
+    private int readSavedPoints(SQLiteDatabase db, String sessionId) {
+        Cursor c = db.query(SessionEntry.TABLE_NAME, new String[] {SessionEntry.COLUMN_NAME_SAVED_POINTS},
+                SessionEntry.COLUMN_NAME_ENTRY_ID + "=?", new String[] {sessionId}, null, null, null);
+        int savedPoints = c.moveToFirst() ? c.getInt(0) : 0;
+        c.close();
+        return savedPoints;
+    }
+
+    /**
+     * Writes buffered points and session rows in one transaction.
+     */
+    private void flush() {
+        synchronized (mWriteLock) {
+            flushLocked();
+        }
+    }
+
+    private void flushLocked() {
+        if (mIsReplayPending) {
+            replayJournal();
+        }
+        List<PendingPoint> points;
+        Map<String, ContentValues> sessions;
+        Set<String> unverifiedSessions;
+        long firstPendingTime;
+        synchronized (this) {
+            if (mScheduledFlush != null) {
+                mScheduledFlush.unsubscribe();
+                mScheduledFlush = null;
+            }
+            if (mPendingPoints.isEmpty() && mPendingSessions.isEmpty()) {
+                return;
+            }
+            points = mPendingPoints;
+            sessions = mPendingSessions;
+            unverifiedSessions = mUnverifiedSessions;
+            firstPendingTime = mFirstPendingTime;
+            mPendingPoints = new ArrayList<>();
+            mPendingSessions = new LinkedHashMap<>();
+            mUnverifiedSessions = new HashSet<>();
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            writePoints(points, sessions, unverifiedSessions, false);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Flush of " + points.size() + " points failed, points kept in buffer", e);
+            mAddressDictionary.clearCache();
+            requeue(points, sessions, unverifiedSessions);
+            return;
+        }
+        long endTime = System.currentTimeMillis();
+
+        synchronized (this) {
+            mFlushCount++;
+            mFlushedPoints += points.size();
+            mLastFlushMillis = endTime - startTime;
+            mLastLagMillis = endTime - firstPendingTime;
+            mMaxLagMillis = Math.max(mMaxLagMillis, mLastLagMillis);
+            rewriteJournal();
+        }
+        Log.d(LOG_TAG, "Flushed " + points.size() + " points; " + getMetrics());
+    }
+
+    /**
+     * Writes points left in the journal by the previous process, in one transaction. Points already
+     * saved are skipped by their index; session's row is created if it was not saved.
+     */
+    private void replayJournal() {
+        if (!mIsReplayPending) {
+            return;
+        }
+        List<PendingPoint> points = new ArrayList<>();
+        mJournal.read((sessionId, index, date, latitude, longitude, altitude, distance, address) ->
+                points.add(new PendingPoint(sessionId, index, latitude, longitude, altitude, date,
+                        address, distance)));
+        if (points.isEmpty()) {
+            mIsReplayPending = false;
+            return;
+        }
+
+        Map<String, ContentValues> sessions = new LinkedHashMap<>();
+        for (PendingPoint point : points) {
+            ContentValues values = sessions.get(point.mSessionId);
+            if (values == null) {
+                values = new ContentValues();
+                values.put(SessionEntry.COLUMN_NAME_SAVED_POINTS, 0);
+                sessions.put(point.mSessionId, values);
+            }
+            int savedPoints = Math.max(values.getAsInteger(SessionEntry.COLUMN_NAME_SAVED_POINTS),
+                    point.mIndex + 1);
+            values.put(SessionEntry.COLUMN_NAME_SAVED_POINTS, savedPoints);
+        }
+
+        synchronized (mWriteLock) {
+            try {
+                writePoints(points, sessions, sessions.keySet(), true);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Replay of " + points.size() + " journal points failed", e);
+                mAddressDictionary.clearCache();
+                return;
+            }
+        }
+        mIsReplayPending = false;
+        synchronized (this) {
+            rewriteJournal();
+        }
+        Log.d(LOG_TAG, "Replayed " + points.size() + " points from journal");
+    }
+
+    private void writePoints(List<PendingPoint> points, Map<String, ContentValues> sessions,
+                             Set<String> unverifiedSessions, boolean isCreatingSessions) {
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+        SQLiteStatement insert = getInsertStatement(db);
+
+        db.beginTransaction();
+        try {
+            if (isCreatingSessions) {
+                for (String sessionId : sessions.keySet()) {
+                    ContentValues values = new ContentValues();
+                    values.put(SessionEntry.COLUMN_NAME_ENTRY_ID, sessionId);
+                    db.insertWithOnConflict(SessionEntry.TABLE_NAME, null, values,
+                            SQLiteDatabase.CONFLICT_IGNORE);
+                }
+            }
+            Map<String, Integer> savedPoints = new HashMap<>();
+            for (String sessionId : unverifiedSessions) {
+                savedPoints.put(sessionId, readSavedPoints(db, sessionId));
+            }
+            Map<String, SessionSummary> summaries = new HashMap<>();
+            for (PendingPoint point : points) {
+                Integer saved = savedPoints.get(point.mSessionId);
+                if (saved != null && point.mIndex < saved) {
+                    continue;
+                }
+                SessionSummary summary = summaries.get(point.mSessionId);
+                if (summary == null) {
+                    summary = SessionSummaryStore.readOrCompute(db, point.mSessionId);
+                    summaries.put(point.mSessionId, summary);
+                }
+                bindPoint(db, insert, point, summary);
+                insert.executeInsert();
+            }
+            for (Map.Entry<String, ContentValues> session : sessions.entrySet()) {
+                db.update(SessionEntry.TABLE_NAME, session.getValue(),
+                        SessionEntry.COLUMN_NAME_ENTRY_ID + "=?", new String[] {session.getKey()});
+            }
+            for (Map.Entry<String, SessionSummary> summary : summaries.entrySet()) {
+                SessionSummaryStore.write(db, summary.getKey(), summary.getValue());
+                TrackChunkStore.compact(db, summary.getKey(), mChunkEncoder);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private synchronized void requeue(List<PendingPoint> points, Map<String, ContentValues> sessions,
+                                      Set<String> unverifiedSessions) {
+        points.addAll(mPendingPoints);
+        mPendingPoints = points;
+        for (Map.Entry<String, ContentValues> session : mPendingSessions.entrySet()) {
+            sessions.put(session.getKey(), session.getValue());
+        }
+        mPendingSessions = sessions;
+        mUnverifiedSessions.addAll(unverifiedSessions);
+        if (mScheduledFlush == null) {
+            mScheduledFlush = mWorker.schedule(this::flush, mFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private SQLiteStatement getInsertStatement(SQLiteDatabase db) {
+        if (mInsertStatement == null || mStatementDb != db) {
+            mStatementDb = db;
+            mInsertStatement = db.compileStatement("INSERT INTO " + RecordsEntry.TABLE_NAME + " (" +
+                    RecordsEntry.COLUMN_NAME_SESSION_ID + "," +
+                    RecordsEntry.COLUMN_NAME_LATITUDE + "," +
+                    RecordsEntry.COLUMN_NAME_LONGITUDE + "," +
+                    RecordsEntry.COLUMN_NAME_ALTITUDE + "," +
+                    RecordsEntry.COLUMN_NAME_DATE + "," +
+                    RecordsEntry.COLUMN_NAME_ADDRESS_ID + "," +
+                    RecordsEntry.COLUMN_NAME_DISTANCE +
+                    ") VALUES (?,?,?,?,?,?,?)");
+        }
+        return mInsertStatement;
+    }
+
+    /**
+     * Binds point to the insert statement and adds it to the session's summary.
+     */
+    private void bindPoint(SQLiteDatabase db, SQLiteStatement insert, PendingPoint point,
+                           SessionSummary summary) {
+        insert.clearBindings();
+        insert.bindString(1, point.mSessionId);
+        bindReal(insert, 2, point.mLatitude);
+        bindReal(insert, 3, point.mLongitude);
+        bindReal(insert, 4, point.mAltitude);
+        if (point.mDate != 0) {
+            insert.bindLong(5, point.mDate);
+        } else {
+            insert.bindNull(5);
+        }
+        if (point.mAddress == null) {
+            insert.bindNull(6);
+        } else {
+            insert.bindLong(6, mAddressDictionary.intern(db, point.mAddress));
+        }
+        bindReal(insert, 7, point.mDistance);
+
+        summary.addPoint(point.mLatitude, point.mLongitude, point.mAltitude, point.mDate);
+    }
+
+    /**
+     * Replaces content of the journal with points still waiting for write. Has to be called
+     * with lock of this buffer.
+     */
+    private void rewriteJournal() {
+        if (mIsReplayPending) {
+            return;
+        }
+        mJournal.truncate();
+        for (PendingPoint point : mPendingPoints) {
+            writeToJournal(point);
+        }
+    }
+
+    private void writeToJournal(PendingPoint point) {
+        mJournal.append(point.mSessionId, point.mIndex, point.mDate, point.mLatitude, point.mLongitude,
+                point.mAltitude, point.mDistance, point.mAddress);
+    }
+
+    /**
+     * Closes the journal. Called after the last flush.
+     */
+    void closeJournal() {
+        mJournal.close();
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private void bindReal(SQLiteStatement statement, int index, double value) {
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+}
@@ -14,7 +14,9 @@ final class SessionDbContract {
      * Sessions table entries. Holds general data about session, as well unique ID.
      */
     static abstract class SessionEntry implements BaseColumns {
-        static final String TABLE_NAME = "records";
+        static final String TABLE_NAME = "sessions";
+        // name under which sessions table was stored before records were unified
+        static final String LEGACY_TABLE_NAME = "records";
         static final String COLUMN_NAME_ENTRY_ID = "entryid";
         static final String COLUMN_NAME_TITLE = "title";
         static final String COLUMN_NAME_DESCRIPTION = "description";
@@ -23,19 +25,111 @@ final class SessionDbContract {
         static final String COLUMN_NAME_MIN_HEIGHT = "minheight";
         static final String COLUMN_NAME_CURRENT_DISTANCE = "currentdistance";
         static final String COLUMN_NAME_CURRENT_ADDRESS = "currentaddress";
+        // number of session's record points already written to records table
+        static final String COLUMN_NAME_SAVED_POINTS = "savedpoints";
+        // summary of written records, updated in the same transaction as records;
+        // point count is NULL until summary is computed for session saved by older version
+        static final String COLUMN_NAME_POINT_COUNT = "pointcount";
+        static final String COLUMN_NAME_START_TIME = "starttime";
+        static final String COLUMN_NAME_END_TIME = "endtime";
+        static final String COLUMN_NAME_MIN_LATITUDE = "minlatitude";
+        static final String COLUMN_NAME_MAX_LATITUDE = "maxlatitude";
+        static final String COLUMN_NAME_MIN_LONGITUDE = "minlongitude";
+        static final String COLUMN_NAME_MAX_LONGITUDE = "maxlongitude";
+        static final String COLUMN_NAME_ASCENT = "ascent";
+        static final String COLUMN_NAME_DESCENT = "descent";
+        static final String COLUMN_NAME_LAST_ALTITUDE = "lastaltitude";
     }
 
     /**
      * Session's records entries. Detailed data about each location.
-     * Name of the every table is set as equal to the session's unique ID.
+     * Records of all sessions are stored in one table, rows are identified by session's unique ID
+     * and indexed by (session ID, date). Latitude and longitude are stored as REAL, date as INTEGER
+     * (milliseconds since epoch).
      */
     static abstract class RecordsEntry implements BaseColumns {
+        static final String TABLE_NAME = "records";
+        static final String INDEX_NAME = "records_session_date_idx";
+        static final String TEXT_TABLE_NAME = "records_text";
+        static final String TEXT_INDEX_NAME = "records_text_session_idx";
         static final String COLUMN_NAME_ENTRY_ID = "entryid";
+        static final String COLUMN_NAME_SESSION_ID = "sessionid";
         static final String COLUMN_NAME_LATITUDE = "latitude";
         static final String COLUMN_NAME_LONGITUDE = "longitude";
         static final String COLUMN_NAME_ALTITUDE = "altitude";
+        // text address, present only in records table of older schema; moved to addresses table
         static final String COLUMN_NAME_ADDRESS = "address";
+        static final String COLUMN_NAME_ADDRESS_ID = "addressid";
         static final String COLUMN_NAME_DATE = "date";
         static final String COLUMN_NAME_DISTANCE = "distance";
     }
+
+    /**
+     * Session's records packed into compressed chunks, see {@link TrackChunkStore}.
+     */
+    static abstract class ChunkEntry implements BaseColumns {
+        static final String TABLE_NAME = "record_chunks";
+        static final String COLUMN_NAME_SESSION_ID = "sessionid";
+        static final String COLUMN_NAME_CHUNK_INDEX = "chunkindex";
+        static final String COLUMN_NAME_POINT_COUNT = "pointcount";
+        static final String COLUMN_NAME_START_DATE = "startdate";
+        static final String COLUMN_NAME_END_DATE = "enddate";
+        static final String COLUMN_NAME_DATA = "data";
+    }
+
+    /**
+     * Dictionary of addresses. Consecutive records mostly share the same address, so records keep
+     * only ID of their address.
+     */
+    static abstract class AddressEntry implements BaseColumns {
+        static final String TABLE_NAME = "addresses";
+        static final String COLUMN_NAME_ID = "id";
+        static final String COLUMN_NAME_ADDRESS = "address";
+    }
+
+    /**
+     * Checkpoints of the background migrations. One row per migration version, updated in the same
+     * transaction as migrated data, so migration can be resumed after process death.
+     */
+    static abstract class MigrationEntry implements BaseColumns {
+        static final String TABLE_NAME = "migrations";
+        static final String COLUMN_NAME_VERSION = "version";
+        static final String COLUMN_NAME_UNIT = "unit";
+        static final String COLUMN_NAME_POSITION = "position";
+        static final String COLUMN_NAME_COUNT = "count";
+        static final String COLUMN_NAME_DONE = "done";
+        static final String COLUMN_NAME_COPIED = "copied";
+    }
+
+    /**
+     * Spatial index (R*Tree) of sessions' bounding boxes, taken from their summary. ID is row ID
+     * of the session. Exists only if SQLite is built with R*Tree module.
+     */
+    static abstract class SessionBoundsEntry {
+        static final String TABLE_NAME = "sessions_bounds";
+        static final String TRIGGER_BEFORE_DELETE = "sessions_bounds_bd";
+        static final String COLUMN_NAME_ID = "id";
+        static final String COLUMN_NAME_MIN_LATITUDE = "minlatitude";
+        static final String COLUMN_NAME_MAX_LATITUDE = "maxlatitude";
+        static final String COLUMN_NAME_MIN_LONGITUDE = "minlongitude";
+        static final String COLUMN_NAME_MAX_LONGITUDE = "maxlongitude";
+    }
+
+    /**
+     * Full-text index (FTS4) of sessions' text columns. Has no own content: it indexes rows of the sessions
+     * table, document ID is row ID of the session. Kept in sync by triggers on the sessions table.
+     */
+    static abstract class SessionSearchEntry {
+        static final String TABLE_NAME = "sessions_search";
+        static final String TRIGGER_BEFORE_UPDATE = "sessions_search_bu";
+        static final String TRIGGER_BEFORE_DELETE = "sessions_search_bd";
+        static final String TRIGGER_AFTER_UPDATE = "sessions_search_au";
+        static final String TRIGGER_AFTER_INSERT = "sessions_search_ai";
+        static final String COLUMN_NAME_DOC_ID = "docid";
+        static final String[] INDEXED_COLUMNS = {
+                SessionEntry.COLUMN_NAME_TITLE,
+                SessionEntry.COLUMN_NAME_DESCRIPTION,
+                SessionEntry.COLUMN_NAME_CURRENT_ADDRESS
+        };
+    }
 }
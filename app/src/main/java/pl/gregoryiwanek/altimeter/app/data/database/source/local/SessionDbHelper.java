@@ -1,8 +1,10 @@
 package pl.gregoryiwanek.altimeter.app.data.database.source.local;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 import android.util.Log;
 
 import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
@@ -13,23 +15,27 @@ import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionD
  */
 class SessionDbHelper extends SQLiteOpenHelper {
 
-    private static int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 9;
     private static final String DATABASE_NAME = "Graphs.db";
     private static final String TEXT_TYPE = " TEXT";
     private static final String REAL_TYPE = " REAL";
     private static final String BOOLEAN_TYPE = " INTEGER";
+    private static final String BLOB_TYPE = " BLOB";
+    private static final String INTEGER_TYPE = " INTEGER";
     private static final String UNIQUE = " UNIQUE";
     private static final String COMMA_SEP = ",";
 
-    private static String CREATE_TABLE = "CREATE TABLE ";
-    private static String ON_UPGRADE = "";
+    private static final String CREATE_TABLE = "CREATE TABLE ";
 
-    SessionDbHelper(Context context) {
+    private final DbConnectionConfig mConfig;
+
+    SessionDbHelper(Context context, DbConnectionConfig config) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mConfig = config;
     }
 
     private static String createSQLSessionsEntries() {
-        return CREATE_TABLE + SessionEntry.TABLE_NAME + " (" +
+        return CREATE_TABLE + "IF NOT EXISTS " + SessionEntry.TABLE_NAME + " (" +
                 SessionEntry._ID + TEXT_TYPE + " PRIMARY KEY," +
                 SessionEntry.COLUMN_NAME_ENTRY_ID + TEXT_TYPE + UNIQUE + COMMA_SEP +
                 SessionEntry.COLUMN_NAME_TITLE + TEXT_TYPE + COMMA_SEP +
@@ -38,53 +44,343 @@ class SessionDbHelper extends SQLiteOpenHelper {
                 SessionEntry.COLUMN_NAME_MAX_HEIGHT + REAL_TYPE + COMMA_SEP +
                 SessionEntry.COLUMN_NAME_MIN_HEIGHT + REAL_TYPE + COMMA_SEP +
                 SessionEntry.COLUMN_NAME_CURRENT_ADDRESS + TEXT_TYPE + COMMA_SEP +
-                SessionEntry.COLUMN_NAME_CURRENT_DISTANCE + REAL_TYPE +
+                SessionEntry.COLUMN_NAME_CURRENT_DISTANCE + REAL_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_SAVED_POINTS + BOOLEAN_TYPE + " DEFAULT 0" + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_POINT_COUNT + INTEGER_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_START_TIME + INTEGER_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_END_TIME + INTEGER_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_MIN_LATITUDE + REAL_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_MAX_LATITUDE + REAL_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_MIN_LONGITUDE + REAL_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_MAX_LONGITUDE + REAL_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_ASCENT + REAL_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_DESCENT + REAL_TYPE + COMMA_SEP +
+                SessionEntry.COLUMN_NAME_LAST_ALTITUDE + REAL_TYPE +
                 " )";
     }
 
-    private static String createSQLRecordEntries(String sessionId) {
-        return CREATE_TABLE + "IF NOT EXISTS" + "\"" + sessionId + "\"" + " (" +
+    private static String createSQLRecordEntries() {
+        return CREATE_TABLE + "IF NOT EXISTS " + RecordsEntry.TABLE_NAME + " (" +
                 RecordsEntry.COLUMN_NAME_ENTRY_ID + BOOLEAN_TYPE + " PRIMARY KEY AUTOINCREMENT NOT NULL," +
-                RecordsEntry.COLUMN_NAME_LATITUDE + TEXT_TYPE + COMMA_SEP +
-                RecordsEntry.COLUMN_NAME_LONGITUDE + TEXT_TYPE + COMMA_SEP +
+                RecordsEntry.COLUMN_NAME_SESSION_ID + TEXT_TYPE + " NOT NULL" + COMMA_SEP +
+                RecordsEntry.COLUMN_NAME_LATITUDE + REAL_TYPE + COMMA_SEP +
+                RecordsEntry.COLUMN_NAME_LONGITUDE + REAL_TYPE + COMMA_SEP +
                 RecordsEntry.COLUMN_NAME_ALTITUDE + REAL_TYPE + COMMA_SEP +
-                RecordsEntry.COLUMN_NAME_DATE + TEXT_TYPE + COMMA_SEP +
-                RecordsEntry.COLUMN_NAME_ADDRESS + TEXT_TYPE + COMMA_SEP +
+                RecordsEntry.COLUMN_NAME_DATE + INTEGER_TYPE + COMMA_SEP +
+                RecordsEntry.COLUMN_NAME_ADDRESS_ID + INTEGER_TYPE + COMMA_SEP +
                 RecordsEntry.COLUMN_NAME_DISTANCE + REAL_TYPE +
                 " )";
     }
 
+    private static String createSQLRecordsIndex() {
+        return "CREATE INDEX IF NOT EXISTS " + RecordsEntry.INDEX_NAME + " ON " +
+                RecordsEntry.TABLE_NAME + " (" +
+                RecordsEntry.COLUMN_NAME_SESSION_ID + COMMA_SEP +
+                RecordsEntry.COLUMN_NAME_DATE +
+                " )";
+    }
+
+    private static String createSQLChunkEntries() {
+        return CREATE_TABLE + "IF NOT EXISTS " + ChunkEntry.TABLE_NAME + " (" +
+                ChunkEntry.COLUMN_NAME_SESSION_ID + TEXT_TYPE + " NOT NULL" + COMMA_SEP +
+                ChunkEntry.COLUMN_NAME_CHUNK_INDEX + INTEGER_TYPE + " NOT NULL" + COMMA_SEP +
+                ChunkEntry.COLUMN_NAME_POINT_COUNT + INTEGER_TYPE + COMMA_SEP +
+                ChunkEntry.COLUMN_NAME_START_DATE + INTEGER_TYPE + COMMA_SEP +
+                ChunkEntry.COLUMN_NAME_END_DATE + INTEGER_TYPE + COMMA_SEP +
+                ChunkEntry.COLUMN_NAME_DATA + BLOB_TYPE + COMMA_SEP +
+                "PRIMARY KEY (" + ChunkEntry.COLUMN_NAME_SESSION_ID + COMMA_SEP +
+                ChunkEntry.COLUMN_NAME_CHUNK_INDEX + ")" +
+                " )";
+    }
+
+    private static String createSQLAddressEntries() {
+        return CREATE_TABLE + "IF NOT EXISTS " + AddressEntry.TABLE_NAME + " (" +
+                AddressEntry.COLUMN_NAME_ID + INTEGER_TYPE + " PRIMARY KEY" + COMMA_SEP +
+                AddressEntry.COLUMN_NAME_ADDRESS + TEXT_TYPE + " NOT NULL" + UNIQUE +
+                " )";
+    }
+
+    private static String createSQLMigrationEntries() {
+        return CREATE_TABLE + "IF NOT EXISTS " + MigrationEntry.TABLE_NAME + " (" +
+                MigrationEntry.COLUMN_NAME_VERSION + BOOLEAN_TYPE + " PRIMARY KEY" + COMMA_SEP +
+                MigrationEntry.COLUMN_NAME_UNIT + TEXT_TYPE + COMMA_SEP +
+                MigrationEntry.COLUMN_NAME_POSITION + BOOLEAN_TYPE + COMMA_SEP +
+                MigrationEntry.COLUMN_NAME_COUNT + BOOLEAN_TYPE + COMMA_SEP +
+                MigrationEntry.COLUMN_NAME_DONE + BOOLEAN_TYPE + COMMA_SEP +
+                MigrationEntry.COLUMN_NAME_COPIED + TEXT_TYPE +
+                " )";
+    }
+
+    /**
+     * Creates full-text index of sessions and triggers keeping it in sync. Index created
+     * for existing sessions is rebuilt from their rows.
+     */
+    private static void createSessionSearch(SQLiteDatabase db) {
+        String columns = TextUtils.join(COMMA_SEP, SessionSearchEntry.INDEXED_COLUMNS);
+        if (!isTableExisting(db, SessionSearchEntry.TABLE_NAME)) {
+            db.execSQL("CREATE VIRTUAL TABLE " + SessionSearchEntry.TABLE_NAME + " USING fts4(" +
+                    "content=\"" + SessionEntry.TABLE_NAME + "\"" + COMMA_SEP +
+                    "prefix=\"2,3\"" + COMMA_SEP + columns + ")");
+            rebuildSessionSearch(db);
+        }
+
+        String newValues = "new.rowid" + COMMA_SEP + prefixColumns("new.");
+        String columnsUpdate = " OF " + columns + " ON " + SessionEntry.TABLE_NAME;
+        String deleteOld = " BEGIN DELETE FROM " + SessionSearchEntry.TABLE_NAME + " WHERE " +
+                SessionSearchEntry.COLUMN_NAME_DOC_ID + "=old.rowid; END";
+        String insertNew = " BEGIN INSERT INTO " + SessionSearchEntry.TABLE_NAME + "(" +
+                SessionSearchEntry.COLUMN_NAME_DOC_ID + COMMA_SEP + columns + ") VALUES(" + newValues + "); END";
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + SessionSearchEntry.TRIGGER_BEFORE_UPDATE +
+                " BEFORE UPDATE" + columnsUpdate + deleteOld);
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + SessionSearchEntry.TRIGGER_BEFORE_DELETE +
+                " BEFORE DELETE ON " + SessionEntry.TABLE_NAME + deleteOld);
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + SessionSearchEntry.TRIGGER_AFTER_UPDATE +
+                " AFTER UPDATE" + columnsUpdate + insertNew);
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + SessionSearchEntry.TRIGGER_AFTER_INSERT +
+                " AFTER INSERT ON " + SessionEntry.TABLE_NAME + insertNew);
+    }
+
+    /**
+     * Rebuilds full-text index from rows of sessions. Documents are keyed by rowid of the sessions
+     * table, which is renumbered by full VACUUM, so index would have to be rebuilt after it.
+     */
+    private static void rebuildSessionSearch(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + SessionSearchEntry.TABLE_NAME + "(" + SessionSearchEntry.TABLE_NAME +
+                ") VALUES('rebuild')");
+    }
+
+    private static String prefixColumns(String prefix) {
+        StringBuilder columns = new StringBuilder();
+        for (String column : SessionSearchEntry.INDEXED_COLUMNS) {
+            if (columns.length() > 0) {
+                columns.append(COMMA_SEP);
+            }
+            columns.append(prefix).append(column);
+        }
+        return columns.toString();
+    }
+
+    /**
+     * Applies tuning pragmas before schema is created or upgraded.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        if (mConfig.getPageSize() > 0) {
+            db.execSQL("PRAGMA page_size=" + mConfig.getPageSize());
+        }
+        if (mConfig.isIncrementalVacuum()) {
+            // takes effect only before the first table is created; existing database is not
+            // converted, see IncrementalVacuum
+            db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+        }
+        if (mConfig.getCacheSizeKb() > 0) {
+            // negative value sets cache size in KiB instead of number of pages
+            db.execSQL("PRAGMA cache_size=-" + mConfig.getCacheSizeKb());
+        }
+        if (mConfig.getMmapSize() > 0) {
+            // pragma returns new value, has to be run as a query
+            Cursor c = db.rawQuery("PRAGMA mmap_size=" + mConfig.getMmapSize(), null);
+            c.moveToFirst();
+            c.close();
+        }
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
+        createTables(db);
+        createSessionIndexes(db);
+    }
+
+    /**
+     * Creates missing tables. Existing tables are left as they are, their columns are added
+     * by {@link #upgradeSchema(SQLiteDatabase)}.
+     */
+    private static void createTables(SQLiteDatabase db) {
         db.execSQL(createSQLSessionsEntries());
+        db.execSQL(createSQLRecordEntries());
+        db.execSQL(createSQLRecordsIndex());
+        db.execSQL(createSQLChunkEntries());
+        db.execSQL(createSQLAddressEntries());
+        db.execSQL(createSQLMigrationEntries());
+    }
+
+    /**
+     * Creates full-text and spatial indexes of sessions, filled from the sessions table, so it
+     * has to have all its columns already.
+     */
+    private static void createSessionIndexes(SQLiteDatabase db) {
+        createSessionSearch(db);
+        SessionSpatialIndex.create(db);
     }
 
+    /**
+     * Schema is upgraded on every open in {@link #onOpen(SQLiteDatabase)}, by its state.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d(SessionDbHelper.class.getSimpleName(), "Upgrading database from version " +
-                oldVersion + " to " + newVersion + ", which will destroy all old data...");
-        db.execSQL(ON_UPGRADE);
-        db.setVersion(newVersion);
+                oldVersion + " to " + newVersion);
     }
 
+    /**
+     * Older builds bumped database version once per created session, so stored version can be
+     * higher than current one; schema is upgraded in {@link #onOpen(SQLiteDatabase)} as well.
+     */
+    @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    /**
+     * Upgrades schema whatever version is stored: older builds bumped database version once
+     * per created session, so legacy database can store version equal to the current one while
+     * its schema is old. Upgrade checks state of the schema, so on current schema it changes nothing.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        db.beginTransaction();
+        try {
+            upgradeSchema(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Brings schema to the current version. Every step checks state of the schema instead of
+     * stored version (version was used by older builds to create records tables), so it can be repeated.
+     * Indexes of sessions are created last, when the sessions table has all its columns.
+     */
+    private void upgradeSchema(SQLiteDatabase db) {
+        upgradeToUnifiedRecords(db);
+        upgradeToTypedRecords(db);
+        // text addresses of older records are moved to dictionary when they are copied by RecordsCopyMigration
+        addColumnIfMissing(db, RecordsEntry.TABLE_NAME, RecordsEntry.COLUMN_NAME_ADDRESS_ID, INTEGER_TYPE);
+        addColumnIfMissing(db, MigrationEntry.TABLE_NAME, MigrationEntry.COLUMN_NAME_COPIED, TEXT_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_SAVED_POINTS,
+                BOOLEAN_TYPE + " DEFAULT 0");
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_POINT_COUNT, INTEGER_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_START_TIME, INTEGER_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_END_TIME, INTEGER_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_MIN_LATITUDE, REAL_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_MAX_LATITUDE, REAL_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_MIN_LONGITUDE, REAL_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_MAX_LONGITUDE, REAL_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_ASCENT, REAL_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_DESCENT, REAL_TYPE);
+        addColumnIfMissing(db, SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_LAST_ALTITUDE, REAL_TYPE);
+        createSessionIndexes(db);
+    }
 
+    /**
+     * Moves schema from one table per session (named as session's ID) to the single records table.
+     * Renames old sessions table and creates new tables. Rows of per session tables are moved later,
+     * in background, by {@link LegacyRecordsMigration}.
+     */
+    private void upgradeToUnifiedRecords(SQLiteDatabase db) {
+        if (!isTableExisting(db, SessionEntry.TABLE_NAME)
+                && isTableExisting(db, SessionEntry.LEGACY_TABLE_NAME)) {
+            db.execSQL("ALTER TABLE " + SessionEntry.LEGACY_TABLE_NAME
+                    + " RENAME TO " + SessionEntry.TABLE_NAME);
+        }
+        createTables(db);
     }
-    static void setOnUpgrade(String sessionId) {
-        ON_UPGRADE = createSQLRecordEntries(sessionId);
+
+    /**
+     * Moves records table storing coordinates and date as text aside. New records table with
+     * numeric columns is created in its place; old rows are converted later, in background,
+     * by {@link TypedRecordsMigration}.
+     */
+    private void upgradeToTypedRecords(SQLiteDatabase db) {
+        String latitudeType = getColumnType(db, RecordsEntry.TABLE_NAME, RecordsEntry.COLUMN_NAME_LATITUDE);
+        if (!TEXT_TYPE.trim().equalsIgnoreCase(latitudeType)) {
+            return;
+        }
+
+        db.execSQL("DROP INDEX IF EXISTS " + RecordsEntry.INDEX_NAME);
+        db.execSQL("ALTER TABLE " + RecordsEntry.TABLE_NAME + " RENAME TO " + RecordsEntry.TEXT_TABLE_NAME);
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + RecordsEntry.TEXT_INDEX_NAME + " ON " +
+                RecordsEntry.TEXT_TABLE_NAME + " (" + RecordsEntry.COLUMN_NAME_SESSION_ID + COMMA_SEP +
+                RecordsEntry.COLUMN_NAME_ENTRY_ID + ")");
+        createTables(db);
+    }
+
+    private void addColumnIfMissing(SQLiteDatabase db, String tableName, String column, String type) {
+        if (getColumnType(db, tableName, column) == null) {
+            db.execSQL("ALTER TABLE " + tableName + " ADD COLUMN " + column + type);
+        }
+    }
+
+    /**
+     * @return declared type of the column, null if table has no such column
+     */
+    static String getColumnType(SQLiteDatabase db, String tableName, String column) {
+        Cursor c = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        String type = null;
+        int nameIndex = c.getColumnIndexOrThrow("name");
+        int typeIndex = c.getColumnIndexOrThrow("type");
+        while (c.moveToNext() && type == null) {
+            if (column.equals(c.getString(nameIndex))) {
+                type = c.getString(typeIndex);
+            }
+        }
+        c.close();
+        return type;
+    }
+
+    static boolean isTableExisting(SQLiteDatabase db, String tableName) {
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name=?",
+                new String[] {tableName});
+        boolean isExisting = c.getCount() > 0;
+        c.close();
+        return isExisting;
     }
 
     String queryDeleteTables(String tableName) {
         return "DROP TABLE IF EXISTS " + setProperName(tableName);
     }
 
-    String queryDeleteRows(String tableName) {
-        return "delete from "+ SessionEntry.TABLE_NAME + " where "
-                + SessionEntry.COLUMN_NAME_ENTRY_ID +"=" + setProperName(tableName);
+    /**
+     * @return " IN (?,?,...)" clause with given number of parameters
+     */
+    static String inClause(int count) {
+        StringBuilder clause = new StringBuilder(" IN (");
+        for (int i = 0; i < count; i++) {
+            clause.append(i == 0 ? "?" : ",?");
+        }
+        return clause.append(")").toString();
+    }
+
+    /**
+     * Converts text typed by user into full-text query: every word is matched as prefix, all words
+     * have to be found. Operators and quotes of the query syntax are dropped.
+     * @return query, empty if text has no words
+     */
+    static String toMatchQuery(String text) {
+        StringBuilder query = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty() || word.equals("AND") || word.equals("OR") || word.equals("NOT")
+                    || word.equals("NEAR")) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(word).append('*');
+        }
+        return query.toString();
     }
 
-    String queryClearRecordsTable(String tableName) {
-        return "delete from " + setProperName(tableName);
+    String selectionSession() {
+        return SessionEntry.COLUMN_NAME_ENTRY_ID + "=?";
+    }
+
+    String selectionRecords() {
+        return RecordsEntry.COLUMN_NAME_SESSION_ID + "=?";
     }
 
     String queryInsertOrIgnore(String rowValue) {
@@ -106,20 +402,17 @@ class SessionDbHelper extends SQLiteOpenHelper {
                 SessionEntry.COLUMN_NAME_MAX_HEIGHT,
                 SessionEntry.COLUMN_NAME_MIN_HEIGHT,
                 SessionEntry.COLUMN_NAME_CURRENT_ADDRESS,
-                SessionEntry.COLUMN_NAME_CURRENT_DISTANCE
-        };
-    }
-
-    String[] getProjectionsRecordsDate() {
-        return new String[] {
-                RecordsEntry.COLUMN_NAME_DATE
-        };
-    }
-
-    String[] getProjectionRecordsLatLng() {
-        return new String[] {
-                RecordsEntry.COLUMN_NAME_LATITUDE,
-                RecordsEntry.COLUMN_NAME_LONGITUDE
+                SessionEntry.COLUMN_NAME_CURRENT_DISTANCE,
+                SessionEntry.COLUMN_NAME_POINT_COUNT,
+                SessionEntry.COLUMN_NAME_START_TIME,
+                SessionEntry.COLUMN_NAME_END_TIME,
+                SessionEntry.COLUMN_NAME_MIN_LATITUDE,
+                SessionEntry.COLUMN_NAME_MAX_LATITUDE,
+                SessionEntry.COLUMN_NAME_MIN_LONGITUDE,
+                SessionEntry.COLUMN_NAME_MAX_LONGITUDE,
+                SessionEntry.COLUMN_NAME_ASCENT,
+                SessionEntry.COLUMN_NAME_DESCENT,
+                SessionEntry.COLUMN_NAME_LAST_ALTITUDE
         };
     }
 }
@@ -0,0 +1,231 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.Subscriber;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Runs versioned background migrations of the database ({@link DbMigration}) in small transactions.
+ * Checkpoint of every migration is stored in the same transaction as migrated data, so interrupted
+ * migration continues from the last committed step on the next run.
+ * Runs on the writer thread ({@link DbSchedulers}); every step is queued on it separately, behind
+ * writes queued meanwhile, so with write-ahead logging readers are not blocked and recording waits
+ * no longer than single step.
+ */
+class SessionDbMigrator {
+
+    private final DbConnectionManager mConnectionManager;
+    private final List<DbMigration> mMigrations;
+    private final AtomicBoolean mIsRunning = new AtomicBoolean(false);
+    private volatile boolean mIsCompleted = false;
+
+    SessionDbMigrator(@NonNull DbConnectionManager connectionManager) {
+        mConnectionManager = connectionManager;
+        mMigrations = Arrays.<DbMigration>asList(
+                new LegacyRecordsMigration(),
+                new TypedRecordsMigration(),
+                new SessionSummaryMigration()
+        );
+    }
+
+    /**
+     * Consists progress of the migrations, as number of migrated units out of all units pending
+     * when migration started.
+     */
+    static class Progress {
+
+        private final int mMigratedUnits;
+        private final int mAllUnits;
+
+        Progress(int migratedUnits, int allUnits) {
+            mMigratedUnits = migratedUnits;
+            mAllUnits = allUnits;
+        }
+
+        int getMigratedUnits() {
+            return mMigratedUnits;
+        }
+
+        int getAllUnits() {
+            return mAllUnits;
+        }
+    }
+
+    /**
+     * Returns observable running all pending migrations; has to be subscribed on the writer thread.
+     * Emits progress, on the writer thread, whenever another unit is migrated. Completes at once
+     * if migration is already running.
+     */
+    @SuppressWarnings("Convert2Lambda")
+    Observable<Progress> getMigrationObservable() {
+        return Observable.create(new Observable.OnSubscribe<Progress>() {
+            @Override
+            public void call(Subscriber<? super Progress> subscriber) {
+                if (!mIsRunning.compareAndSet(false, true)) {
+                    subscriber.onCompleted();
+                    return;
+                }
+                try {
+                    SQLiteDatabase db = mConnectionManager.getDatabase();
+                    new MigrationRun(db, subscriber, countPendingUnits(db)).run();
+                } catch (SQLException e) {
+                    mIsRunning.set(false);
+                    subscriber.onError(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs one step of the current migration and queues itself again on the writer thread,
+     * so writes queued meanwhile, like flushes of recorded points, run between steps.
+     */
+    private class MigrationRun implements Runnable {
+
+        private final SQLiteDatabase mDb;
+        private final Subscriber<? super Progress> mSubscriber;
+        private final int mAllUnits;
+        private int mPendingUnits;
+        private int mMigrationIndex = 0;
+
+        MigrationRun(SQLiteDatabase db, Subscriber<? super Progress> subscriber, int allUnits) {
+            mDb = db;
+            mSubscriber = subscriber;
+            mAllUnits = allUnits;
+            mPendingUnits = allUnits;
+        }
+
+        @Override
+        public void run() {
+            if (mSubscriber.isUnsubscribed()) {
+                mIsRunning.set(false);
+                return;
+            }
+            if (mMigrationIndex == mMigrations.size()) {
+                mIsCompleted = true;
+                mIsRunning.set(false);
+                mSubscriber.onCompleted();
+                return;
+            }
+            try {
+                MigrationCheckpoint checkpoint = runStep(mDb, mMigrations.get(mMigrationIndex));
+                int currentPendingUnits;
+                if (checkpoint == null || checkpoint.isDone()) {
+                    mMigrationIndex++;
+                    // units completed on demand aren't reported by steps; counted once per migration
+                    currentPendingUnits = countPendingUnits(mDb);
+                } else {
+                    currentPendingUnits = Math.max(0, mPendingUnits - checkpoint.getFinishedUnits());
+                }
+                if (currentPendingUnits != mPendingUnits) {
+                    mPendingUnits = currentPendingUnits;
+                    mSubscriber.onNext(new Progress(mAllUnits - mPendingUnits, mAllUnits));
+                }
+            } catch (SQLException e) {
+                mIsRunning.set(false);
+                mSubscriber.onError(e);
+                return;
+            }
+            DbSchedulers.postOnWriter(this);
+        }
+    }
+
+    private int countPendingUnits(SQLiteDatabase db) {
+        int pendingUnits = 0;
+        for (DbMigration migration : mMigrations) {
+            pendingUnits += migration.countPendingUnits(db);
+        }
+        return pendingUnits;
+    }
+
+    /**
+     * @return checkpoint updated by the step, null if migration was already done
+     */
+    private MigrationCheckpoint runStep(SQLiteDatabase db, DbMigration migration) {
+        db.beginTransaction();
+        try {
+            MigrationCheckpoint checkpoint = readCheckpoint(db, migration.getVersion());
+            if (checkpoint.isDone()) {
+                return null;
+            }
+            boolean isMigrating = migration.migrateStep(db, checkpoint);
+            checkpoint.setDone(!isMigrating);
+            saveCheckpoint(db, migration.getVersion(), checkpoint);
+            db.setTransactionSuccessful();
+            return checkpoint;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Migrates given unit at once, inside one transaction, by every migration which is not done yet.
+     * Has to be called on the writer thread.
+     * @param db database connection of the caller
+     * @param unit unit required by the caller, eg. ID of session to read
+     */
+    void completeUnit(SQLiteDatabase db, String unit) {
+        if (mIsCompleted) {
+            return;
+        }
+        db.beginTransaction();
+        try {
+            for (DbMigration migration : mMigrations) {
+                MigrationCheckpoint checkpoint = readCheckpoint(db, migration.getVersion());
+                if (!checkpoint.isDone()) {
+                    migration.completeUnit(db, checkpoint, unit);
+                    saveCheckpoint(db, migration.getVersion(), checkpoint);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private MigrationCheckpoint readCheckpoint(SQLiteDatabase db, int version) {
+        String[] projection = new String[] {
+                MigrationEntry.COLUMN_NAME_UNIT,
+                MigrationEntry.COLUMN_NAME_POSITION,
+                MigrationEntry.COLUMN_NAME_COUNT,
+                MigrationEntry.COLUMN_NAME_DONE,
+                MigrationEntry.COLUMN_NAME_COPIED
+        };
+        Cursor c = db.query(MigrationEntry.TABLE_NAME, projection,
+                MigrationEntry.COLUMN_NAME_VERSION + "=?", new String[] {String.valueOf(version)},
+                null, null, null);
+
+        MigrationCheckpoint checkpoint;
+        if (c.moveToFirst()) {
+            checkpoint = new MigrationCheckpoint(c.getString(0), c.getLong(1), c.getLong(2),
+                    c.getInt(3) == 1, c.getString(4));
+        } else {
+            checkpoint = new MigrationCheckpoint(null, 0, 0, false, null);
+        }
+        c.close();
+        return checkpoint;
+    }
+
+    private void saveCheckpoint(SQLiteDatabase db, int version, MigrationCheckpoint checkpoint) {
+        ContentValues values = new ContentValues();
+        values.put(MigrationEntry.COLUMN_NAME_VERSION, version);
+        values.put(MigrationEntry.COLUMN_NAME_UNIT, checkpoint.getUnit());
+        values.put(MigrationEntry.COLUMN_NAME_POSITION, checkpoint.getPosition());
+        values.put(MigrationEntry.COLUMN_NAME_COUNT, checkpoint.getCount());
+        values.put(MigrationEntry.COLUMN_NAME_DONE, checkpoint.isDone() ? 1 : 0);
+        values.put(MigrationEntry.COLUMN_NAME_COPIED, checkpoint.getCopiedRanges());
+        db.insertWithOnConflict(MigrationEntry.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
@@ -2,40 +2,66 @@ package pl.gregoryiwanek.altimeter.app.data.database.source.local;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import com.google.android.gms.maps.model.LatLng;
-
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
-import pl.gregoryiwanek.altimeter.app.data.Session;
+import pl.gregoryiwanek.altimeter.app.data.database.source.RecordsSampling;
 import pl.gregoryiwanek.altimeter.app.data.database.source.SessionDataSource;
+import pl.gregoryiwanek.altimeter.app.data.database.source.SessionRxDataSource;
 import pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.SessionEntry;
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
+import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
+import pl.gregoryiwanek.altimeter.app.data.sessions.SessionSummary;
 import pl.gregoryiwanek.altimeter.app.utils.Constants;
-import pl.gregoryiwanek.altimeter.app.utils.FormatAndValueConverter;
+import pl.gregoryiwanek.altimeter.app.utils.formatconventer.FormatAndValueConverter;
+
+import rx.Subscriber;
+import rx.android.schedulers.AndroidSchedulers;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
 
 /**
- * Consists
+ * Synchronous, SQLite based {@link SessionDataSource}. Every method runs on the caller's thread
+ * and calls back before it returns; it is called by {@link SessionRxDataSource}, on reader thread
+ * for reads and on writer thread for writes ({@link DbSchedulers}). Writes required by reads
+ * (flush of buffered points, migration of the session) are passed to the writer thread.
  */
 public class SessionLocalDataSource implements SessionDataSource {
 
+    // bound parameters of single statement are limited to 999
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private static final String COMMA = ",";
+    private static final String JOURNAL_FILE_NAME = "records.journal";
+
     private static SessionLocalDataSource INSTANCE = null;
-    private SessionDbHelper mSessionDbHelper;
+    private final DbConnectionManager mConnectionManager;
+    private final SessionDbHelper mSessionDbHelper;
+    private final SessionDbMigrator mSessionDbMigrator;
+    private final RecordsWriteBuffer mRecordsWriteBuffer;
+    private final IncrementalVacuum mIncrementalVacuum;
 
     //Private to prevent direct instantiation.
     public SessionLocalDataSource(@NonNull Context context) {
-        mSessionDbHelper = new SessionDbHelper(context);
+        mConnectionManager = DbConnectionManager.getInstance(context);
+        mSessionDbHelper = mConnectionManager.getSessionDbHelper();
+        mSessionDbMigrator = new SessionDbMigrator(mConnectionManager);
+        RecordsJournal journal = new RecordsJournal(new File(context.getFilesDir(), JOURNAL_FILE_NAME));
+        mRecordsWriteBuffer = new RecordsWriteBuffer(mConnectionManager, journal);
+        mIncrementalVacuum = new IncrementalVacuum(mConnectionManager, mRecordsWriteBuffer);
     }
 
     public static SessionLocalDataSource getInstance(@NonNull Context context) {
@@ -45,9 +71,19 @@ public class SessionLocalDataSource implements SessionDataSource {
         return INSTANCE;
     }
 
+    /**
+     * Writes buffered data and closes the database. Called only when data source is no longer used.
+     */
+    public void shutdown() {
+        mRecordsWriteBuffer.flushNow();
+        mRecordsWriteBuffer.closeJournal();
+        DbConnectionManager.shutdown();
+        INSTANCE = null;
+    }
+
     @Override
     public void createNewSession(@NonNull Session session, @NonNull SaveSessionCallback callback) {
-        SQLiteDatabase db = mSessionDbHelper.getWritableDatabase();
+        SQLiteDatabase db = mConnectionManager.getDatabase();
 
         session.setTitle(adjustStrIfEmpty(session.getTitle()));
         session.setDescription(adjustStrIfEmpty(session.getDescription()));
@@ -57,52 +93,31 @@ public class SessionLocalDataSource implements SessionDataSource {
 
         updateSessionRow(db, session);
 
-        db.close();
-
         callback.onNewSessionSaved(session.getId());
     }
 
+    /**
+     * Buffers record points appended to the session since the last call. Points are written
+     * in groups by {@link RecordsWriteBuffer}.
+     */
     @Override
-    public void createRecordsTable(@NonNull Session session) {
-        SQLiteDatabase db = mSessionDbHelper.getWritableDatabase();
-        int oldVersion = db.getVersion();
-        int newVersion = oldVersion + 1;
-        SessionDbHelper.setOnUpgrade(session.getId());
-        mSessionDbHelper.onUpgrade(db, oldVersion, newVersion);
-        db.close();
+    public void updateSessionData(@NonNull Session session) {
+        mRecordsWriteBuffer.append(session, getSessionValues(session));
     }
 
     @Override
-    public void updateSessionData(@NonNull Session session) {
-        SQLiteDatabase db = mSessionDbHelper.getWritableDatabase();
-
-        updateSessionRow(db, session);
-        updateRecordsRow(db, session);
+    public void flushSessionData() {
+        mRecordsWriteBuffer.flushAsync();
+    }
 
-        db.close();
+    public WriteBufferMetrics getWriteBufferMetrics() {
+        return mRecordsWriteBuffer.getMetrics();
     }
 
     private void updateSessionRow(SQLiteDatabase db, Session session) {
         ContentValues valuesSession = getSessionValues(session);
-        String rowSelection = SessionEntry.COLUMN_NAME_ENTRY_ID + "=" + "\"" + session.getId() + "\"";
-        updateRowsDb(db, SessionEntry.TABLE_NAME, valuesSession, rowSelection);
-    }
-
-    private void updateRecordsRow(SQLiteDatabase db, Session session) {
-        ContentValues valuesRecord = getRecordValues(session);
-        String tableNameRecords = "\"" + session.getId() +"\"";
-        insertToDb(db, tableNameRecords, valuesRecord);
-    }
-
-    private ContentValues getRecordValues(Session session) {
-        ContentValues vRecord = new ContentValues();
-        vRecord.put(RecordsEntry.COLUMN_NAME_LATITUDE, session.getLatNumericStr());
-        vRecord.put(RecordsEntry.COLUMN_NAME_LONGITUDE, session.getLongNumericStr());
-        vRecord.put(RecordsEntry.COLUMN_NAME_ALTITUDE, session.getCurrentElevation());
-        vRecord.put(RecordsEntry.COLUMN_NAME_DATE, session.getCurrentLocation().getTime());
-        vRecord.put(RecordsEntry.COLUMN_NAME_ADDRESS, session.getAddress());
-        vRecord.put(RecordsEntry.COLUMN_NAME_DISTANCE, session.getDistance());
-        return vRecord;
+        String rowSelection = mSessionDbHelper.selectionSession();
+        updateRowsDb(db, SessionEntry.TABLE_NAME, valuesSession, rowSelection, session.getId());
     }
 
     private ContentValues getSessionValues(Session session) {
@@ -117,34 +132,125 @@ public class SessionLocalDataSource implements SessionDataSource {
         return vSession;
     }
 
-    private void insertToDb(SQLiteDatabase db, String tableName, ContentValues values) {
-        db.insert(tableName, null, values);
-    }
-
-    private void updateRowsDb(SQLiteDatabase db, String tableName, ContentValues values, String where) {
-        db.update(tableName, values, where, null);
+    private void updateRowsDb(SQLiteDatabase db, String tableName, ContentValues values,
+                              String where, String id) {
+        db.update(tableName, values, where, new String[] {id});
     }
 
     @Override
     public void getSessions(@NonNull LoadSessionsCallback callback) {
-        List<Session> sessions = new ArrayList<>();
-        SQLiteDatabase db = mSessionDbHelper.getReadableDatabase();
-
-        String[] projection = {
-                SessionEntry.COLUMN_NAME_ENTRY_ID,
-                SessionEntry.COLUMN_NAME_TITLE,
-                SessionEntry.COLUMN_NAME_DESCRIPTION,
-                SessionEntry.COLUMN_NAME_CURRENT_ALTITUDE,
-                SessionEntry.COLUMN_NAME_MAX_HEIGHT,
-                SessionEntry.COLUMN_NAME_MIN_HEIGHT,
-                SessionEntry.COLUMN_NAME_CURRENT_ADDRESS,
-                SessionEntry.COLUMN_NAME_CURRENT_DISTANCE
-        };
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+
+        String[] projection = mSessionDbHelper.getProjectionsSessions();
 
         Cursor c = db.query(
                 SessionEntry.TABLE_NAME, projection, null, null, null, null, null
         );
 
+        callback.onSessionLoaded(readSessions(c));
+    }
+
+    /**
+     * Finds sessions by words of their title, description or address, using full-text index.
+     * Every word is matched as prefix of the indexed word. Sessions are returned in order
+     * of creation; empty query returns page of all sessions.
+     */
+    @Override
+    public void searchSessions(@NonNull String query, int offset, int limit,
+                               @NonNull LoadSessionsCallback callback) {
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+        String[] projection = mSessionDbHelper.getProjectionsSessions();
+        String matchQuery = SessionDbHelper.toMatchQuery(query);
+
+        String selection = null;
+        String[] selectionArgs = null;
+        if (!matchQuery.isEmpty()) {
+            selection = "rowid IN (SELECT " + SessionSearchEntry.COLUMN_NAME_DOC_ID + " FROM " +
+                    SessionSearchEntry.TABLE_NAME + " WHERE " + SessionSearchEntry.TABLE_NAME + " MATCH ?)";
+            selectionArgs = new String[] {matchQuery};
+        }
+        Cursor c = db.query(SessionEntry.TABLE_NAME, projection, selection, selectionArgs,
+                null, null, "rowid", offset + COMMA + limit);
+
+        callback.onSessionLoaded(readSessions(c));
+    }
+
+    @Override
+    public void findSessionsInArea(double minLatitude, double maxLatitude, double minLongitude,
+                                   double maxLongitude, @NonNull LoadSessionsCallback callback) {
+        // bounds are updated with summaries, when buffered points are written
+        mRecordsWriteBuffer.flushNow();
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+        String[] projection = mSessionDbHelper.getProjectionsSessions();
+        Cursor c = db.query(SessionEntry.TABLE_NAME, projection, SessionSpatialIndex.selectionIntersecting(db),
+                SessionSpatialIndex.intersectingArgs(minLatitude, maxLatitude, minLongitude, maxLongitude),
+                null, null, "rowid");
+
+        callback.onSessionLoaded(readSessions(c));
+    }
+
+    @Override
+    public void findSessionsNear(double latitude, double longitude, double radiusMeters,
+                                 @NonNull LoadSessionsCallback callback) {
+        double[] bounds = SessionSpatialIndex.boundsOfRadius(latitude, longitude, radiusMeters);
+        findSessionsInArea(bounds[0], bounds[1], bounds[2], bounds[3], callback);
+    }
+
+    /**
+     * Scans records of the session, skipping these outside bounding box of the circle before
+     * distance is computed; nearest records are kept in bounded heap.
+     */
+    @Override
+    public void findNearestRecords(@NonNull String sessionId, double latitude, double longitude,
+                                   double radiusMeters, int limit, @NonNull LoadRecordsCallback callback) {
+        if (limit <= 0) {
+            callback.onRecordsLoaded(Collections.emptyList());
+            return;
+        }
+        double[] bounds = SessionSpatialIndex.boundsOfRadius(latitude, longitude, radiusMeters);
+        PriorityQueue<NearRecord> nearest = new PriorityQueue<>(Math.max(1, limit),
+                (first, second) -> Float.compare(second.mDistance, first.mDistance));
+        float[] distance = new float[1];
+        for (RecordRow row : getRecordsList(sessionId)) {
+            double rowLatitude = row.getLatitude();
+            double rowLongitude = row.getLongitude();
+            // negated, so records without position (NaN) are skipped too
+            if (!(rowLatitude >= bounds[0] && rowLatitude <= bounds[1]
+                    && rowLongitude >= bounds[2] && rowLongitude <= bounds[3])) {
+                continue;
+            }
+            Location.distanceBetween(latitude, longitude, rowLatitude, rowLongitude, distance);
+            if (distance[0] > radiusMeters
+                    || (nearest.size() == limit && distance[0] >= nearest.peek().mDistance)) {
+                continue;
+            }
+            if (nearest.size() == limit) {
+                nearest.poll();
+            }
+            nearest.add(new NearRecord(row, distance[0]));
+        }
+
+        RecordRow[] records = new RecordRow[nearest.size()];
+        for (int i = records.length - 1; i >= 0; i--) {
+            records[i] = nearest.poll().mRow;
+        }
+        callback.onRecordsLoaded(Arrays.asList(records));
+    }
+
+    private static class NearRecord {
+
+        private final RecordRow mRow = new RecordRow();
+        private final float mDistance;
+
+        private NearRecord(RecordRow row, float distance) {
+            mRow.set(row.getId(), row.getLatitude(), row.getLongitude(), row.getAltitude(),
+                    row.getDate(), row.getAddress(), row.getDistance());
+            mDistance = distance;
+        }
+    }
+
+    private List<Session> readSessions(Cursor c) {
+        List<Session> sessions = new ArrayList<>();
         if (c != null && c.getCount() > 0) {
             while (c.moveToNext()) {
                 String itemId = getCursorStr(c, SessionEntry.COLUMN_NAME_ENTRY_ID);
@@ -153,14 +259,12 @@ public class SessionLocalDataSource implements SessionDataSource {
                 itemTitle = adjustStrIfEmpty(itemTitle);
                 itemDescription = adjustStrIfEmpty(itemDescription);
                 Session session = new Session(itemTitle, itemDescription, itemId);
+                session.setSummary(SessionSummaryStore.read(c));
                 sessions.add(session);
             }
         }
         closeCursor(c);
-
-        db.close();
-
-        callback.onSessionLoaded(sessions);
+        return sessions;
     }
 
     private String adjustStrIfEmpty(String str) {
@@ -177,20 +281,88 @@ public class SessionLocalDataSource implements SessionDataSource {
 
     @Override
     public void clearSessionData(@NonNull String sessionId) {
-        SQLiteDatabase db = mSessionDbHelper.getWritableDatabase();
-        db.execSQL(mSessionDbHelper.queryClearRecordsTable(sessionId));
-        db.close();
+        mRecordsWriteBuffer.discard(sessionId, false);
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+        db.beginTransaction();
+        try {
+            deleteSessionRecords(db, sessionId);
+            // points recorded after clearing are saved from the start of the cleared track
+            ContentValues values = new ContentValues();
+            values.put(SessionEntry.COLUMN_NAME_SAVED_POINTS, 0);
+            db.update(SessionEntry.TABLE_NAME, values, mSessionDbHelper.selectionSession(),
+                    new String[] {sessionId});
+            SessionSummaryStore.write(db, sessionId, new SessionSummary());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        mIncrementalVacuum.request();
     }
 
+    /**
+     * Deletes sessions and their records in one transaction, by groups of IDs bound to IN clause.
+     * Space of deleted rows is reclaimed later, by {@link IncrementalVacuum}.
+     */
     @Override
     public void deleteSessions(ArrayList<String> sessionsId, boolean isDeleteAll,
                                @Nullable DeleteSessionCallback callback) {
-        SQLiteDatabase db = mSessionDbHelper.getWritableDatabase();
         for (String sessionId : sessionsId) {
-            db.execSQL(mSessionDbHelper.queryDeleteTables(sessionId));
-            db.execSQL(mSessionDbHelper.queryDeleteRows(sessionId));
+            mRecordsWriteBuffer.discard(sessionId, true);
+        }
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+        boolean hasTextRecords = SessionDbHelper.isTableExisting(db, RecordsEntry.TEXT_TABLE_NAME);
+        db.beginTransaction();
+        try {
+            for (int from = 0; from < sessionsId.size(); from += DELETE_BATCH_SIZE) {
+                List<String> batch = sessionsId.subList(from,
+                        Math.min(from + DELETE_BATCH_SIZE, sessionsId.size()));
+                deleteSessionsBatch(db, batch.toArray(new String[batch.size()]), hasTextRecords);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (callback != null) {
+            callback.onSessionsDeleted();
+        }
+        mIncrementalVacuum.request();
+    }
+
+    private void deleteSessionsBatch(SQLiteDatabase db, String[] sessionsId, boolean hasTextRecords) {
+        // records of not migrated sessions are still kept in their legacy tables
+        for (String legacyTable : findExistingTables(db, sessionsId)) {
+            db.execSQL(mSessionDbHelper.queryDeleteTables(legacyTable));
         }
-        db.close();
+        String inClause = SessionDbHelper.inClause(sessionsId.length);
+        if (hasTextRecords) {
+            db.delete(RecordsEntry.TEXT_TABLE_NAME, RecordsEntry.COLUMN_NAME_SESSION_ID + inClause, sessionsId);
+        }
+        db.delete(RecordsEntry.TABLE_NAME, RecordsEntry.COLUMN_NAME_SESSION_ID + inClause, sessionsId);
+        db.delete(ChunkEntry.TABLE_NAME, ChunkEntry.COLUMN_NAME_SESSION_ID + inClause, sessionsId);
+        db.delete(SessionEntry.TABLE_NAME, SessionEntry.COLUMN_NAME_ENTRY_ID + inClause, sessionsId);
+    }
+
+    private List<String> findExistingTables(SQLiteDatabase db, String[] tableNames) {
+        List<String> tables = new ArrayList<>();
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name" +
+                SessionDbHelper.inClause(tableNames.length), tableNames);
+        while (c.moveToNext()) {
+            tables.add(c.getString(0));
+        }
+        c.close();
+        return tables;
+    }
+
+    private void deleteSessionRecords(SQLiteDatabase db, String sessionId) {
+        // records of not migrated session are still kept in its legacy table or in text records table
+        db.execSQL(mSessionDbHelper.queryDeleteTables(sessionId));
+        if (SessionDbHelper.isTableExisting(db, RecordsEntry.TEXT_TABLE_NAME)) {
+            db.delete(RecordsEntry.TEXT_TABLE_NAME, mSessionDbHelper.selectionRecords(),
+                    new String[] {sessionId});
+        }
+        db.delete(RecordsEntry.TABLE_NAME, mSessionDbHelper.selectionRecords(),
+                new String[] {sessionId});
+        TrackChunkStore.delete(db, sessionId);
     }
 
     @Override
@@ -207,17 +379,15 @@ public class SessionLocalDataSource implements SessionDataSource {
     }
 
     private void updateDetails(Map<String, String> changes) {
-        SQLiteDatabase db = mSessionDbHelper.getWritableDatabase();
+        SQLiteDatabase db = mConnectionManager.getDatabase();
 
         updateChangedDetails(db, changes);
-
-        db.close();
     }
 
     private void updateChangedDetails(SQLiteDatabase db, Map<String, String> changes) {
         ContentValues valuesChanges = getChangedDetailsValues(changes);
-        String rowSelection = SessionEntry.COLUMN_NAME_ENTRY_ID + "=" + "\"" + changes.get("id") + "\"";
-        updateRowsDb(db, SessionEntry.TABLE_NAME, valuesChanges, rowSelection);
+        String rowSelection = mSessionDbHelper.selectionSession();
+        updateRowsDb(db, SessionEntry.TABLE_NAME, valuesChanges, rowSelection, changes.get("id"));
     }
 
     private ContentValues getChangedDetailsValues(Map<String, String> changes) {
@@ -227,6 +397,36 @@ public class SessionLocalDataSource implements SessionDataSource {
         return vChanges;
     }
 
+    @Override
+    public void runPendingMigrations(@Nullable final MigrationCallback callback) {
+        mSessionDbMigrator.getMigrationObservable()
+                .subscribeOn(DbSchedulers.writer())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Subscriber<SessionDbMigrator.Progress>() {
+                    @Override
+                    public void onCompleted() {
+                        // legacy tables of migrated sessions are dropped
+                        mIncrementalVacuum.request();
+                        if (callback != null) {
+                            callback.onMigrationCompleted();
+                        }
+                        this.unsubscribe();
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        e.printStackTrace();
+                    }
+
+                    @Override
+                    public void onNext(SessionDbMigrator.Progress progress) {
+                        if (callback != null) {
+                            callback.onMigrationProgress(progress.getMigratedUnits(), progress.getAllUnits());
+                        }
+                    }
+                });
+    }
+
     @Override
     public void refreshSessions() {
         // Not required because the {@link SessionRepository} handles the logic of refreshing the
@@ -236,84 +436,77 @@ public class SessionLocalDataSource implements SessionDataSource {
 
     @Override
     public void getMapData(@NonNull String sessionId, @NonNull LoadMapDataCallback callback) {
-        List<LatLng> positions = new ArrayList<>();
+        List<RecordRow> records = Collections.emptyList();
         if (!sessionId.equals(Constants.DEFAULT_TEXT)) {
-            positions = populateMapData(sessionId);
+            records = getRecordsList(sessionId);
         }
-        callback.onMapDataLoaded(positions);
+        callback.onMapDataLoaded(records);
     }
 
-    private List<LatLng> populateMapData(String sessionId) {
-        SQLiteDatabase db = mSessionDbHelper.getReadableDatabase();
-        List<LatLng> positions  = populateMapDataFromRecords(db, sessionId);
-        db.close();
-        return positions;
+    @Override
+    public void getRecords(@NonNull String sessionId, @NonNull LoadRecordsCallback callback) {
+        callback.onRecordsLoaded(getRecordsList(sessionId));
     }
 
-    private List<LatLng> populateMapDataFromRecords(SQLiteDatabase db, String sessionId) {
-        String[] projectionRecords = mSessionDbHelper.getProjectionRecordsLatLng();
-        String tableName = mSessionDbHelper.setProperName(sessionId);
-        Cursor cLatLng = getDetailsCursor(db, tableName, projectionRecords, null);
-        return populateMapFromRecords(cLatLng);
+    @Override
+    public void getRecordsInRange(@NonNull String sessionId, long fromDate, long toDate,
+                                  @NonNull RecordsSampling sampling, @NonNull LoadRecordsCallback callback) {
+        prepareSessionRead(sessionId);
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+        callback.onRecordsLoaded(new RecordsRangeReader(db, sessionId, fromDate, toDate, sampling).read());
     }
 
-    private List<LatLng> populateMapFromRecords(Cursor c) {
-        List<LatLng> positions = new ArrayList<>();
-        if (isCursorNotEmpty(c)) {
-            while (c.moveToNext()) {
-                Double lat = Double.valueOf(getCursorStr(c, RecordsEntry.COLUMN_NAME_LATITUDE));
-                Double lng = Double.valueOf(getCursorStr(c, RecordsEntry.COLUMN_NAME_LONGITUDE));
-                LatLng position = new LatLng(lat, lng);
-                positions.add(position);
-            }
-        }
-        closeCursor(c);
-
-        return positions;
+    /**
+     * Returns records of the session as list reading them from database in windows, so memory use
+     * doesn't depend on length of the session. Size of the list is taken from session's summary.
+     */
+    private List<RecordRow> getRecordsList(String sessionId) {
+        prepareSessionRead(sessionId);
+        SQLiteDatabase db = mConnectionManager.getDatabase();
+        int size = SessionSummaryStore.readOrCompute(db, sessionId).getPointCount();
+        return new RecordsWindowList(mConnectionManager, sessionId, size);
     }
 
     @Override
     public void getDetails(@NonNull String sessionId, DetailsSessionCallback callback, Context context) {
         Bundle args = populateDetails(sessionId);
-        saveCurrentIdDrawerMapGeneration(args, context);
         callback.onDetailsLoaded(args);
     }
 
     private Bundle populateDetails(String sessionId) {
         Bundle args = new Bundle();
-        SQLiteDatabase db = mSessionDbHelper.getReadableDatabase();
+        prepareSessionRead(sessionId);
+        SQLiteDatabase db = mConnectionManager.getDatabase();
         args = populateDetailsFromSession(db, args, sessionId);
-        args = populateDetailsFromRecords(db, args, sessionId);
-        db.close();
 
         return args;
     }
 
+    /**
+     * Writes buffered points and migrates the session, so it can be read. Waits for the writer thread.
+     */
+    private void prepareSessionRead(String sessionId) {
+        DbSchedulers.runOnWriter(() -> {
+            mRecordsWriteBuffer.flushNow();
+            mSessionDbMigrator.completeUnit(mConnectionManager.getDatabase(), sessionId);
+        });
+    }
+
     private Bundle populateDetailsFromSession(SQLiteDatabase db, Bundle args, String id) {
         String[] projectionSession = mSessionDbHelper.getProjectionsSessions();
-        String cursorSelection = SessionEntry.COLUMN_NAME_ENTRY_ID
-                + "=" + mSessionDbHelper.setProperName(id);
+        String cursorSelection = mSessionDbHelper.selectionSession();
         String name = SessionEntry.TABLE_NAME;
-        Cursor cSession = getDetailsCursor(db, name, projectionSession, cursorSelection);
+        Cursor cSession = getDetailsCursor(db, name, projectionSession, cursorSelection, id);
         args = populateFromSession(cSession, args);
         closeCursor(cSession);
 
         return args;
     }
 
-    private Bundle populateDetailsFromRecords(SQLiteDatabase db, Bundle args, String id) {
-        String[] projectionRecords = mSessionDbHelper.getProjectionsRecordsDate();
-        String tableName = mSessionDbHelper.setProperName(id);
-        Cursor cRecords = getDetailsCursor(db, tableName, projectionRecords, null);
-        args = populateFromRecords(cRecords, args);
-        closeCursor(cRecords);
-
-        return args;
-    }
-
-    private Cursor getDetailsCursor(SQLiteDatabase db, String tableName, String[] projection, String selection) {
+    private Cursor getDetailsCursor(SQLiteDatabase db, String tableName, String[] projection,
+                                    String selection, String id) {
         return db.query(tableName, projection, selection,
-                null, null, null, null);
+                new String[] {id}, null, null, null);
     }
 
     private Bundle populateFromSession(Cursor c, Bundle args) {
@@ -334,35 +527,22 @@ public class SessionLocalDataSource implements SessionDataSource {
         args.putString("minHeight", itemMinHeight);
         args.putString("address", itemAddress);
 
+        populateFromSummary(SessionSummaryStore.read(c), args);
         return args;
     }
 
-    private Bundle populateFromRecords(Cursor c, Bundle args) {
-        getNumOfPoints(c, args);
-        getRecordingTime(c, args);
+    private Bundle populateFromSummary(SessionSummary summary, Bundle args) {
+        args.putString("numOfPoints", String.valueOf(summary.getPointCount()));
+        args.putString("ascent", FormatAndValueConverter.setDistanceStr(summary.getAscent()));
+        args.putString("descent", FormatAndValueConverter.setDistanceStr(summary.getDescent()));
+        getRecordingTime(summary, args);
         return args;
     }
 
-    private Bundle getNumOfPoints(Cursor c, Bundle args) {
-        int numb = c.getCount();
-        args.putString("numOfPoints", String.valueOf(numb));
-
-        return args;
-    }
-
-    private Bundle getRecordingTime(Cursor c, Bundle args) {
-        if (isCursorNotEmpty(c)) {
-            c.moveToFirst();
-            String timeStartStr = getCursorStr(c, RecordsEntry.COLUMN_NAME_DATE);
-            long timeStart = convertTimeToNumeric(timeStartStr);
-            timeStartStr = FormatAndValueConverter.setDateString(timeStart);
-            args.putString("timeStart", timeStartStr);
-
-            c.moveToLast();
-            String timeEndStr = getCursorStr(c, RecordsEntry.COLUMN_NAME_DATE);
-            long timeEnd = convertTimeToNumeric(timeEndStr);
-            timeEndStr = FormatAndValueConverter.setDateString(timeEnd);
-            args.putString("timeEnd", timeEndStr);
+    private Bundle getRecordingTime(SessionSummary summary, Bundle args) {
+        if (summary.getStartTime() != 0) {
+            args.putString("timeStart", FormatAndValueConverter.setDateString(summary.getStartTime()));
+            args.putString("timeEnd", FormatAndValueConverter.setDateString(summary.getEndTime()));
         } else {
             args.putString("timeStart", "something is wrong");
             args.putString("timeEnd", "something is wrong");
@@ -371,29 +551,13 @@ public class SessionLocalDataSource implements SessionDataSource {
         return args;
     }
 
-    private boolean isCursorNotEmpty(Cursor c) {
-        return c!= null && c.getCount()>0;
-    }
-
     private String getCursorStr(Cursor c, String entry) {
         return c.getString(c.getColumnIndexOrThrow(entry));
     }
 
-    private long convertTimeToNumeric(String time) {
-        return Long.valueOf(time);
-    }
-
     private void closeCursor(Cursor c) {
         if (c != null) {
             c.close();
         }
     }
-
-    private void saveCurrentIdDrawerMapGeneration(Bundle args, Context context) {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        SharedPreferences.Editor editor = preferences.edit();
-        String id = args.getString("id");
-        editor.putString("sessionId", id);
-        editor.apply();
-    }
 }
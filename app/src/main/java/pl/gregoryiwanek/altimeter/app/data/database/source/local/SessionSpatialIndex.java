@@ -0,0 +1,121 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import pl.gregoryiwanek.altimeter.app.data.sessions.SessionSummary;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Keeps bounding boxes of sessions in R*Tree table, updated together with session's summary,
+ * and selects sessions whose box intersects given area. If SQLite is built without R*Tree module,
+ * sessions are selected by their summary columns instead, by scan of the sessions table.
+ * <p>
+ * Longitudes are not wrapped: area crossing 180th meridian has to be queried as two areas.
+ */
+final class SessionSpatialIndex {
+
+    private static final String LOG_TAG = SessionSpatialIndex.class.getSimpleName();
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private static final String SELECT_SESSION_ROW_ID = "(SELECT rowid FROM " + SessionEntry.TABLE_NAME +
+            " WHERE " + SessionEntry.COLUMN_NAME_ENTRY_ID + "=?)";
+    private static final String BOX_INTERSECTS = "%1$s<=? AND %2$s>=? AND %3$s<=? AND %4$s>=?";
+
+    private SessionSpatialIndex() {}
+
+    /**
+     * Creates index, if possible, and fills it with bounds of already summarized sessions.
+     */
+    static void create(SQLiteDatabase db) {
+        if (isAvailable(db)) {
+            return;
+        }
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE " + SessionBoundsEntry.TABLE_NAME + " USING rtree(" +
+                    SessionBoundsEntry.COLUMN_NAME_ID + "," +
+                    SessionBoundsEntry.COLUMN_NAME_MIN_LATITUDE + "," +
+                    SessionBoundsEntry.COLUMN_NAME_MAX_LATITUDE + "," +
+                    SessionBoundsEntry.COLUMN_NAME_MIN_LONGITUDE + "," +
+                    SessionBoundsEntry.COLUMN_NAME_MAX_LONGITUDE + ")");
+        } catch (SQLiteException e) {
+            Log.w(LOG_TAG, "R*Tree module not available, sessions are searched by scan", e);
+            return;
+        }
+        fill(db);
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + SessionBoundsEntry.TRIGGER_BEFORE_DELETE +
+                " BEFORE DELETE ON " + SessionEntry.TABLE_NAME + " BEGIN DELETE FROM " +
+                SessionBoundsEntry.TABLE_NAME + " WHERE " + SessionBoundsEntry.COLUMN_NAME_ID +
+                "=old.rowid; END");
+    }
+
+    /**
+     * Index is keyed by rowid of the sessions table, which is renumbered by full VACUUM; index
+     * would have to be filled again after it.
+     */
+    private static void fill(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + SessionBoundsEntry.TABLE_NAME + " SELECT rowid," +
+                SessionEntry.COLUMN_NAME_MIN_LATITUDE + "," + SessionEntry.COLUMN_NAME_MAX_LATITUDE + "," +
+                SessionEntry.COLUMN_NAME_MIN_LONGITUDE + "," + SessionEntry.COLUMN_NAME_MAX_LONGITUDE +
+                " FROM " + SessionEntry.TABLE_NAME +
+                " WHERE " + SessionEntry.COLUMN_NAME_MIN_LATITUDE + " IS NOT NULL");
+    }
+
+    static boolean isAvailable(SQLiteDatabase db) {
+        return SessionDbHelper.isTableExisting(db, SessionBoundsEntry.TABLE_NAME);
+    }
+
+    /**
+     * Stores bounds of the session's summary; removes the session from index if it has no bounds.
+     */
+    static void update(SQLiteDatabase db, String sessionId, SessionSummary summary) {
+        if (!isAvailable(db)) {
+            return;
+        }
+        if (!summary.hasBounds()) {
+            db.execSQL("DELETE FROM " + SessionBoundsEntry.TABLE_NAME + " WHERE " +
+                    SessionBoundsEntry.COLUMN_NAME_ID + "=" + SELECT_SESSION_ROW_ID, new Object[] {sessionId});
+            return;
+        }
+        db.execSQL("INSERT OR REPLACE INTO " + SessionBoundsEntry.TABLE_NAME + " SELECT rowid,?,?,?,? FROM " +
+                SessionEntry.TABLE_NAME + " WHERE " + SessionEntry.COLUMN_NAME_ENTRY_ID + "=?",
+                new Object[] {summary.getMinLatitude(), summary.getMaxLatitude(),
+                        summary.getMinLongitude(), summary.getMaxLongitude(), sessionId});
+    }
+
+    /**
+     * @return selection of the sessions table, matching sessions whose bounding box intersects
+     * the area; arguments are returned by {@link #intersectingArgs(double, double, double, double)}
+     */
+    static String selectionIntersecting(SQLiteDatabase db) {
+        if (isAvailable(db)) {
+            return "rowid IN (SELECT " + SessionBoundsEntry.COLUMN_NAME_ID + " FROM " +
+                    SessionBoundsEntry.TABLE_NAME + " WHERE " + String.format(BOX_INTERSECTS,
+                    SessionBoundsEntry.COLUMN_NAME_MIN_LATITUDE, SessionBoundsEntry.COLUMN_NAME_MAX_LATITUDE,
+                    SessionBoundsEntry.COLUMN_NAME_MIN_LONGITUDE, SessionBoundsEntry.COLUMN_NAME_MAX_LONGITUDE) +
+                    ")";
+        }
+        return String.format(BOX_INTERSECTS,
+                SessionEntry.COLUMN_NAME_MIN_LATITUDE, SessionEntry.COLUMN_NAME_MAX_LATITUDE,
+                SessionEntry.COLUMN_NAME_MIN_LONGITUDE, SessionEntry.COLUMN_NAME_MAX_LONGITUDE);
+    }
+
+    static String[] intersectingArgs(double minLatitude, double maxLatitude,
+                                     double minLongitude, double maxLongitude) {
+        return new String[] {String.valueOf(maxLatitude), String.valueOf(minLatitude),
+                String.valueOf(maxLongitude), String.valueOf(minLongitude)};
+    }
+
+    /**
+     * @return bounding box of the circle, as {min latitude, max latitude, min longitude, max longitude}
+     */
+    static double[] boundsOfRadius(double latitude, double longitude, double radiusMeters) {
+        double latitudeDelta = radiusMeters / METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(latitude));
+        double longitudeDelta = cos > 1e-6 ? radiusMeters / (METERS_PER_DEGREE * cos) : 180;
+        return new double[] {latitude - latitudeDelta, latitude + latitudeDelta,
+                longitude - longitudeDelta, longitude + longitudeDelta};
+    }
+}
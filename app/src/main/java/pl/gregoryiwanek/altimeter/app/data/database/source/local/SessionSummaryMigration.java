@@ -0,0 +1,63 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Computes summary columns of sessions saved before those columns existed. Every session
+ * is one unit of migration, summarized in a single step.
+ */
+class SessionSummaryMigration implements DbMigration {
+
+    private static final int VERSION = 3;
+    private static final String NOT_SUMMARIZED = " FROM " + SessionEntry.TABLE_NAME +
+            " WHERE " + SessionEntry.COLUMN_NAME_POINT_COUNT + " IS NULL";
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public int countPendingUnits(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("SELECT COUNT(*)" + NOT_SUMMARIZED, null);
+        c.moveToFirst();
+        int count = c.getInt(0);
+        c.close();
+        return count;
+    }
+
+    @Override
+    public boolean migrateStep(SQLiteDatabase db, MigrationCheckpoint checkpoint) {
+        Cursor c = db.rawQuery("SELECT " + SessionEntry.COLUMN_NAME_ENTRY_ID + NOT_SUMMARIZED +
+                " LIMIT 1", null);
+        String unit = c.moveToFirst() ? c.getString(0) : null;
+        c.close();
+
+        if (unit == null) {
+            return false;
+        }
+        summarize(db, unit);
+        checkpoint.reset(null);
+        checkpoint.addFinishedUnit();
+        return true;
+    }
+
+    @Override
+    public void completeUnit(SQLiteDatabase db, MigrationCheckpoint checkpoint, String unit) {
+        Cursor c = db.rawQuery("SELECT 1" + NOT_SUMMARIZED + " AND " +
+                SessionEntry.COLUMN_NAME_ENTRY_ID + "=?", new String[] {unit});
+        boolean isPending = c.getCount() > 0;
+        c.close();
+
+        if (isPending) {
+            summarize(db, unit);
+        }
+    }
+
+    private void summarize(SQLiteDatabase db, String sessionId) {
+        SessionSummaryStore.write(db, sessionId, SessionSummaryStore.compute(db, sessionId));
+    }
+}
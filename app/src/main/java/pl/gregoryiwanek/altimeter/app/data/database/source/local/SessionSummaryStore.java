@@ -0,0 +1,159 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import pl.gregoryiwanek.altimeter.app.data.sessions.SessionSummary;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Reads and writes summary columns of the sessions table ({@link SessionSummary}).
+ * Summary is computed from records only for sessions saved before summary columns existed.
+ */
+final class SessionSummaryStore {
+
+    private static final String[] PROJECTION_SUMMARY = {
+            SessionEntry.COLUMN_NAME_POINT_COUNT,
+            SessionEntry.COLUMN_NAME_START_TIME,
+            SessionEntry.COLUMN_NAME_END_TIME,
+            SessionEntry.COLUMN_NAME_MIN_LATITUDE,
+            SessionEntry.COLUMN_NAME_MAX_LATITUDE,
+            SessionEntry.COLUMN_NAME_MIN_LONGITUDE,
+            SessionEntry.COLUMN_NAME_MAX_LONGITUDE,
+            SessionEntry.COLUMN_NAME_ASCENT,
+            SessionEntry.COLUMN_NAME_DESCENT,
+            SessionEntry.COLUMN_NAME_LAST_ALTITUDE
+    };
+    private static final String[] PROJECTION_RECORDS = {
+            RecordsEntry.COLUMN_NAME_LATITUDE,
+            RecordsEntry.COLUMN_NAME_LONGITUDE,
+            RecordsEntry.COLUMN_NAME_ALTITUDE,
+            RecordsEntry.COLUMN_NAME_DATE
+    };
+
+    private SessionSummaryStore() {}
+
+    /**
+     * @param c cursor positioned at session's row, containing all summary columns
+     * @return false if summary of the session is not computed yet
+     */
+    static boolean isComputed(Cursor c) {
+        return !c.isNull(c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_POINT_COUNT));
+    }
+
+    /**
+     * @param c cursor positioned at session's row, containing all summary columns
+     * @return summary stored in the row; empty summary if not computed yet
+     */
+    static SessionSummary read(Cursor c) {
+        int countIndex = c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_POINT_COUNT);
+        int minLatIndex = c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_MIN_LATITUDE);
+        int lastAltitudeIndex = c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_LAST_ALTITUDE);
+
+        SessionSummary summary = new SessionSummary(
+                c.getInt(countIndex),
+                c.getLong(c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_START_TIME)),
+                c.getLong(c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_END_TIME)),
+                c.getDouble(c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_ASCENT)),
+                c.getDouble(c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_DESCENT)),
+                c.isNull(lastAltitudeIndex) ? Double.NaN : c.getDouble(lastAltitudeIndex));
+        if (!c.isNull(minLatIndex)) {
+            summary.setBounds(c.getDouble(minLatIndex),
+                    c.getDouble(c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_MAX_LATITUDE)),
+                    c.getDouble(c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_MIN_LONGITUDE)),
+                    c.getDouble(c.getColumnIndexOrThrow(SessionEntry.COLUMN_NAME_MAX_LONGITUDE)));
+        }
+        return summary;
+    }
+
+    /**
+     * Reads stored summary of the session, computes it from records if not computed yet.
+     */
+    static SessionSummary readOrCompute(SQLiteDatabase db, String sessionId) {
+        Cursor c = db.query(SessionEntry.TABLE_NAME, PROJECTION_SUMMARY,
+                SessionEntry.COLUMN_NAME_ENTRY_ID + "=?", new String[] {sessionId}, null, null, null);
+        SessionSummary summary = null;
+        if (c.moveToFirst() && isComputed(c)) {
+            summary = read(c);
+        }
+        c.close();
+        return summary != null ? summary : compute(db, sessionId);
+    }
+
+    /**
+     * Computes summary of the session by single scan of its chunks and records.
+     */
+    static SessionSummary compute(SQLiteDatabase db, String sessionId) {
+        SessionSummary summary = new SessionSummary();
+        TrackChunkDecoder decoder = new TrackChunkDecoder();
+        for (int i = 0; TrackChunkStore.readChunk(db, sessionId, i, decoder); i++) {
+            while (decoder.next()) {
+                summary.addPoint(decoder.getLatitude(), decoder.getLongitude(), decoder.getAltitude(),
+                        decoder.getDate());
+            }
+        }
+
+        Cursor c = db.query(RecordsEntry.TABLE_NAME, PROJECTION_RECORDS,
+                RecordsEntry.COLUMN_NAME_SESSION_ID + "=?", new String[] {sessionId},
+                null, null, RecordsEntry.COLUMN_NAME_DATE + " ASC");
+        int latIndex = c.getColumnIndexOrThrow(RecordsEntry.COLUMN_NAME_LATITUDE);
+        int lngIndex = c.getColumnIndexOrThrow(RecordsEntry.COLUMN_NAME_LONGITUDE);
+        int altitudeIndex = c.getColumnIndexOrThrow(RecordsEntry.COLUMN_NAME_ALTITUDE);
+        int dateIndex = c.getColumnIndexOrThrow(RecordsEntry.COLUMN_NAME_DATE);
+        while (c.moveToNext()) {
+            summary.addPoint(getDoubleOrNaN(c, latIndex), getDoubleOrNaN(c, lngIndex),
+                    getDoubleOrNaN(c, altitudeIndex), c.getLong(dateIndex));
+        }
+        c.close();
+        return summary;
+    }
+
+    /**
+     * Writes summary to the session's row and its bounds to {@link SessionSpatialIndex}.
+     */
+    static void write(SQLiteDatabase db, String sessionId, SessionSummary summary) {
+        db.update(SessionEntry.TABLE_NAME, toValues(summary),
+                SessionEntry.COLUMN_NAME_ENTRY_ID + "=?", new String[] {sessionId});
+        SessionSpatialIndex.update(db, sessionId, summary);
+    }
+
+    static ContentValues toValues(SessionSummary summary) {
+        ContentValues values = new ContentValues();
+        values.put(SessionEntry.COLUMN_NAME_POINT_COUNT, summary.getPointCount());
+        putTime(values, SessionEntry.COLUMN_NAME_START_TIME, summary.getStartTime());
+        putTime(values, SessionEntry.COLUMN_NAME_END_TIME, summary.getEndTime());
+        if (summary.hasBounds()) {
+            values.put(SessionEntry.COLUMN_NAME_MIN_LATITUDE, summary.getMinLatitude());
+            values.put(SessionEntry.COLUMN_NAME_MAX_LATITUDE, summary.getMaxLatitude());
+            values.put(SessionEntry.COLUMN_NAME_MIN_LONGITUDE, summary.getMinLongitude());
+            values.put(SessionEntry.COLUMN_NAME_MAX_LONGITUDE, summary.getMaxLongitude());
+        } else {
+            values.putNull(SessionEntry.COLUMN_NAME_MIN_LATITUDE);
+            values.putNull(SessionEntry.COLUMN_NAME_MAX_LATITUDE);
+            values.putNull(SessionEntry.COLUMN_NAME_MIN_LONGITUDE);
+            values.putNull(SessionEntry.COLUMN_NAME_MAX_LONGITUDE);
+        }
+        values.put(SessionEntry.COLUMN_NAME_ASCENT, summary.getAscent());
+        values.put(SessionEntry.COLUMN_NAME_DESCENT, summary.getDescent());
+        if (Double.isNaN(summary.getLastAltitude())) {
+            values.putNull(SessionEntry.COLUMN_NAME_LAST_ALTITUDE);
+        } else {
+            values.put(SessionEntry.COLUMN_NAME_LAST_ALTITUDE, summary.getLastAltitude());
+        }
+        return values;
+    }
+
+    private static void putTime(ContentValues values, String column, long time) {
+        if (time == 0) {
+            values.putNull(column);
+        } else {
+            values.put(column, time);
+        }
+    }
+
+    private static double getDoubleOrNaN(Cursor c, int index) {
+        return c.isNull(index) ? Double.NaN : c.getDouble(index);
+    }
+}
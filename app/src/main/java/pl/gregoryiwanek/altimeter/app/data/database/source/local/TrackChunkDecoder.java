@@ -0,0 +1,152 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+/**
+ * Streaming decoder of chunks written by {@link TrackChunkEncoder}. Decodes one point per call
+ * of {@link #next()} into primitive fields, without allocation; decoder can be reused for
+ * many chunks.
+ */
+class TrackChunkDecoder {
+
+    private byte[] mData;
+    private int mBytePos;
+    private int mBitPos;
+    private int mCount;
+    private int mDecoded;
+
+    private final long[] mLongs = new long[3];
+    private final long[] mDeltas = new long[3];
+    private final long[] mDoubles = new long[4];
+    private final int[] mLeading = new int[4];
+    private final int[] mTrailing = new int[4];
+
+    /**
+     * Starts decoding of the chunk.
+     * @param data encoded chunk
+     * @param count number of points in the chunk
+     */
+    void reset(byte[] data, int count) {
+        mData = data;
+        mCount = count;
+        mDecoded = 0;
+        mBytePos = 0;
+        mBitPos = 0;
+        for (int i = 0; i < mDeltas.length; i++) {
+            mDeltas[i] = 0;
+        }
+    }
+
+    /**
+     * Decodes next point of the chunk.
+     * @return false if all points are already decoded
+     */
+    boolean next() {
+        if (mDecoded >= mCount) {
+            return false;
+        }
+        if (mDecoded == 0) {
+            for (int i = 0; i < mLongs.length; i++) {
+                mLongs[i] = readBits(64);
+            }
+            for (int i = 0; i < mDoubles.length; i++) {
+                mDoubles[i] = readBits(64);
+            }
+        } else {
+            readDeltaOfDelta(0);
+            readDeltaOfDelta(1);
+            mLongs[2] += readBucketed();
+            for (int i = 0; i < mDoubles.length; i++) {
+                readXor(i);
+            }
+        }
+        mDecoded++;
+        return true;
+    }
+
+    long getEntryId() {
+        return mLongs[0];
+    }
+
+    long getDate() {
+        return mLongs[1];
+    }
+
+    /**
+     * @return ID of point's address, 0 if unknown
+     */
+    long getAddressId() {
+        return mLongs[2];
+    }
+
+    double getLatitude() {
+        return Double.longBitsToDouble(mDoubles[0]);
+    }
+
+    double getLongitude() {
+        return Double.longBitsToDouble(mDoubles[1]);
+    }
+
+    double getAltitude() {
+        return Double.longBitsToDouble(mDoubles[2]);
+    }
+
+    double getDistance() {
+        return Double.longBitsToDouble(mDoubles[3]);
+    }
+
+    private void readDeltaOfDelta(int field) {
+        mDeltas[field] += readBucketed();
+        mLongs[field] += mDeltas[field];
+    }
+
+    private long readBucketed() {
+        int bits;
+        if (readBits(1) == 0) {
+            return 0;
+        } else if (readBits(1) == 0) {
+            bits = 7;
+        } else if (readBits(1) == 0) {
+            bits = 9;
+        } else if (readBits(1) == 0) {
+            bits = 12;
+        } else if (readBits(1) == 0) {
+            bits = 32;
+        } else {
+            bits = 64;
+        }
+        long zigZag = readBits(bits);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    private void readXor(int field) {
+        if (readBits(1) == 0) {
+            return;
+        }
+        if (readBits(1) == 1) {
+            mLeading[field] = (int) readBits(5);
+            int length = (int) readBits(6) + 1;
+            mTrailing[field] = 64 - mLeading[field] - length;
+        }
+        int length = 64 - mLeading[field] - mTrailing[field];
+        mDoubles[field] ^= readBits(length) << mTrailing[field];
+    }
+
+    /**
+     * Reads given number of bits, most significant first.
+     */
+    private long readBits(int bits) {
+        long value = 0;
+        while (bits > 0) {
+            int available = 8 - mBitPos;
+            int n = Math.min(available, bits);
+            int chunk = ((mData[mBytePos] & 0xFF) >>> (available - n)) & ((1 << n) - 1);
+            value = (value << n) | chunk;
+            mBitPos += n;
+            bits -= n;
+            if (mBitPos == 8) {
+                mBytePos++;
+                mBitPos = 0;
+            }
+        }
+        return value;
+    }
+}
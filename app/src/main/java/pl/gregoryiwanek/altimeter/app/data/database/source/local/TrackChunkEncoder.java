@@ -0,0 +1,188 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import java.util.Arrays;
+
+/**
+ * Packs consecutive record points into compressed chunk, stored as BLOB in the record chunks table
+ * and read by {@link TrackChunkDecoder}.
+ * <p>
+ * Points are written one after another, all fields of the point at once. First point stores every
+ * field as raw 64 bits. Following points store:
+ * <ul>
+ * <li>entry ID and date - delta of delta to the previous point,</li>
+ * <li>address ID - delta to the previous point,</li>
+ * <li>latitude, longitude, altitude, distance - XOR of bits with the previous value.</li>
+ * </ul>
+ * Integer deltas are zig-zag encoded into buckets: '0' for zero, '10' + 7 bits, '110' + 9 bits,
+ * '1110' + 12 bits, '11110' + 32 bits, '11111' + 64 bits. XOR of doubles is written as '0' if equal,
+ * '10' + meaningful bits if they fit within previous leading and trailing zeros, otherwise
+ * '11' + 5 bits of leading zeros + 6 bits of length - 1 + meaningful bits.
+ * <p>
+ * Encoder is reused: buffer is allocated once, for the largest possible chunk.
+ */
+class TrackChunkEncoder {
+
+    static final int CHUNK_POINTS = 256;
+    // 3 integer fields of at most 69 bits and 4 doubles of at most 77 bits per point
+    private static final int MAX_CHUNK_BYTES = CHUNK_POINTS * (3 * 69 + 4 * 77) / 8 + 1;
+
+    private final byte[] mBuffer = new byte[MAX_CHUNK_BYTES];
+    private int mBytePos;
+    private int mBitPos;
+    private int mCount;
+
+    private final long[] mPrevLongs = new long[3];
+    private final long[] mPrevDeltas = new long[3];
+    private final long[] mPrevDoubles = new long[4];
+    private final int[] mPrevLeading = new int[4];
+    private final int[] mPrevTrailing = new int[4];
+
+    TrackChunkEncoder() {
+        reset();
+    }
+
+    /**
+     * Starts new chunk.
+     */
+    void reset() {
+        Arrays.fill(mBuffer, 0, Math.min(mBytePos + 1, MAX_CHUNK_BYTES), (byte) 0);
+        mBytePos = 0;
+        mBitPos = 0;
+        mCount = 0;
+        Arrays.fill(mPrevDeltas, 0);
+        Arrays.fill(mPrevLeading, -1);
+    }
+
+    /**
+     * Adds next point to the chunk.
+     * @param addressId ID of point's address, 0 if unknown
+     * @param altitude altitude in meters, NaN if unknown
+     */
+    void add(long entryId, long date, long addressId, double latitude, double longitude,
+             double altitude, double distance) {
+        if (mCount >= CHUNK_POINTS) {
+            throw new IllegalStateException("Chunk is full: " + mCount + " points");
+        }
+        if (mCount == 0) {
+            writeFirstLong(0, entryId);
+            writeFirstLong(1, date);
+            writeFirstLong(2, addressId);
+            writeFirstDouble(0, latitude);
+            writeFirstDouble(1, longitude);
+            writeFirstDouble(2, altitude);
+            writeFirstDouble(3, distance);
+        } else {
+            writeDeltaOfDelta(0, entryId);
+            writeDeltaOfDelta(1, date);
+            writeDelta(2, addressId);
+            writeXor(0, latitude);
+            writeXor(1, longitude);
+            writeXor(2, altitude);
+            writeXor(3, distance);
+        }
+        mCount++;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return encoded chunk, as a new array of exact size
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(mBuffer, mBitPos == 0 ? mBytePos : mBytePos + 1);
+    }
+
+    private void writeFirstLong(int field, long value) {
+        writeBits(value, 64);
+        mPrevLongs[field] = value;
+    }
+
+    private void writeFirstDouble(int field, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        writeBits(bits, 64);
+        mPrevDoubles[field] = bits;
+    }
+
+    private void writeDeltaOfDelta(int field, long value) {
+        long delta = value - mPrevLongs[field];
+        writeBucketed(delta - mPrevDeltas[field]);
+        mPrevDeltas[field] = delta;
+        mPrevLongs[field] = value;
+    }
+
+    private void writeDelta(int field, long value) {
+        writeBucketed(value - mPrevLongs[field]);
+        mPrevLongs[field] = value;
+    }
+
+    private void writeBucketed(long value) {
+        if (value == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+        long zigZag = (value << 1) ^ (value >> 63);
+        if (zigZag >>> 7 == 0) {
+            writeBits(0b10, 2);
+            writeBits(zigZag, 7);
+        } else if (zigZag >>> 9 == 0) {
+            writeBits(0b110, 3);
+            writeBits(zigZag, 9);
+        } else if (zigZag >>> 12 == 0) {
+            writeBits(0b1110, 4);
+            writeBits(zigZag, 12);
+        } else if (zigZag >>> 32 == 0) {
+            writeBits(0b11110, 5);
+            writeBits(zigZag, 32);
+        } else {
+            writeBits(0b11111, 5);
+            writeBits(zigZag, 64);
+        }
+    }
+
+    private void writeXor(int field, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        long xor = bits ^ mPrevDoubles[field];
+        mPrevDoubles[field] = bits;
+        if (xor == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        int prevLeading = mPrevLeading[field];
+        int prevTrailing = mPrevTrailing[field];
+        if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+            writeBits(0b10, 2);
+            writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+        } else {
+            int length = 64 - leading - trailing;
+            writeBits(0b11, 2);
+            writeBits(leading, 5);
+            writeBits(length - 1, 6);
+            writeBits(xor >>> trailing, length);
+            mPrevLeading[field] = leading;
+            mPrevTrailing[field] = trailing;
+        }
+    }
+
+    /**
+     * Writes lowest bits of the value, most significant first.
+     */
+    private void writeBits(long value, int bits) {
+        while (bits > 0) {
+            int free = 8 - mBitPos;
+            int n = Math.min(free, bits);
+            int chunk = (int) ((value >>> (bits - n)) & ((1 << n) - 1));
+            mBuffer[mBytePos] |= chunk << (free - n);
+            mBitPos += n;
+            bits -= n;
+            if (mBitPos == 8) {
+                mBytePos++;
+                mBitPos = 0;
+            }
+        }
+    }
+}
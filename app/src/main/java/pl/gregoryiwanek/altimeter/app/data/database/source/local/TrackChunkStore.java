@@ -0,0 +1,113 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Keeps session's records packed into compressed chunks ({@link TrackChunkEncoder}) of exactly
+ * {@link TrackChunkEncoder#CHUNK_POINTS} points. Oldest records of the session are moved from
+ * the records table into the next chunk as soon as there are enough of them, so session is stored
+ * as chunks followed by at most one chunk's worth of rows. Chunk with index n holds points
+ * n * CHUNK_POINTS up to (n + 1) * CHUNK_POINTS - 1, in order of date.
+ */
+final class TrackChunkStore {
+
+    private static final String QUERY_OLDEST_RECORDS = "SELECT " +
+            RecordsEntry.COLUMN_NAME_ENTRY_ID + "," +
+            RecordsEntry.COLUMN_NAME_DATE + "," +
+            RecordsEntry.COLUMN_NAME_ADDRESS_ID + "," +
+            RecordsEntry.COLUMN_NAME_LATITUDE + "," +
+            RecordsEntry.COLUMN_NAME_LONGITUDE + "," +
+            RecordsEntry.COLUMN_NAME_ALTITUDE + "," +
+            RecordsEntry.COLUMN_NAME_DISTANCE +
+            " FROM " + RecordsEntry.TABLE_NAME +
+            " WHERE " + RecordsEntry.COLUMN_NAME_SESSION_ID + "=?" +
+            " ORDER BY " + RecordsEntry.COLUMN_NAME_DATE + " ASC," + RecordsEntry.COLUMN_NAME_ENTRY_ID + " ASC" +
+            " LIMIT " + TrackChunkEncoder.CHUNK_POINTS;
+
+    private TrackChunkStore() {}
+
+    /**
+     * Moves oldest records of the session into chunks, while there are enough records to fill
+     * a chunk. Has to be called inside transaction.
+     * @param encoder reused encoder
+     */
+    static void compact(SQLiteDatabase db, String sessionId, TrackChunkEncoder encoder) {
+        String[] args = new String[] {sessionId};
+        while (countRecords(db, sessionId) >= TrackChunkEncoder.CHUNK_POINTS) {
+            Cursor c = db.rawQuery(QUERY_OLDEST_RECORDS, args);
+            encoder.reset();
+            long startDate = 0;
+            long endDate = 0;
+            while (c.moveToNext()) {
+                long date = c.getLong(1);
+                if (encoder.getCount() == 0) {
+                    startDate = date;
+                }
+                endDate = date;
+                encoder.add(c.getLong(0), date, c.getLong(2), getDoubleOrNaN(c, 3),
+                        getDoubleOrNaN(c, 4), getDoubleOrNaN(c, 5), c.getDouble(6));
+            }
+            c.close();
+
+            ContentValues values = new ContentValues();
+            values.put(ChunkEntry.COLUMN_NAME_SESSION_ID, sessionId);
+            values.put(ChunkEntry.COLUMN_NAME_CHUNK_INDEX, countChunks(db, sessionId));
+            values.put(ChunkEntry.COLUMN_NAME_POINT_COUNT, encoder.getCount());
+            values.put(ChunkEntry.COLUMN_NAME_START_DATE, startDate);
+            values.put(ChunkEntry.COLUMN_NAME_END_DATE, endDate);
+            values.put(ChunkEntry.COLUMN_NAME_DATA, encoder.toByteArray());
+            db.insertOrThrow(ChunkEntry.TABLE_NAME, null, values);
+
+            db.execSQL("DELETE FROM " + RecordsEntry.TABLE_NAME + " WHERE " +
+                    RecordsEntry.COLUMN_NAME_ENTRY_ID + " IN (SELECT " + RecordsEntry.COLUMN_NAME_ENTRY_ID +
+                    " FROM (" + QUERY_OLDEST_RECORDS + "))", args);
+        }
+    }
+
+    static int countChunks(SQLiteDatabase db, String sessionId) {
+        return queryInt(db, "SELECT COUNT(*) FROM " + ChunkEntry.TABLE_NAME +
+                " WHERE " + ChunkEntry.COLUMN_NAME_SESSION_ID + "=?", sessionId);
+    }
+
+    /**
+     * Starts decoding of the session's chunk.
+     * @return false if there is no such chunk
+     */
+    static boolean readChunk(SQLiteDatabase db, String sessionId, int chunkIndex, TrackChunkDecoder decoder) {
+        Cursor c = db.query(ChunkEntry.TABLE_NAME,
+                new String[] {ChunkEntry.COLUMN_NAME_DATA, ChunkEntry.COLUMN_NAME_POINT_COUNT},
+                ChunkEntry.COLUMN_NAME_SESSION_ID + "=? AND " + ChunkEntry.COLUMN_NAME_CHUNK_INDEX + "=?",
+                new String[] {sessionId, String.valueOf(chunkIndex)}, null, null, null);
+        boolean isExisting = c.moveToFirst();
+        if (isExisting) {
+            decoder.reset(c.getBlob(0), c.getInt(1));
+        }
+        c.close();
+        return isExisting;
+    }
+
+    static void delete(SQLiteDatabase db, String sessionId) {
+        db.delete(ChunkEntry.TABLE_NAME, ChunkEntry.COLUMN_NAME_SESSION_ID + "=?", new String[] {sessionId});
+    }
+
+    private static int countRecords(SQLiteDatabase db, String sessionId) {
+        return queryInt(db, "SELECT COUNT(*) FROM " + RecordsEntry.TABLE_NAME +
+                " WHERE " + RecordsEntry.COLUMN_NAME_SESSION_ID + "=?", sessionId);
+    }
+
+    private static int queryInt(SQLiteDatabase db, String query, String sessionId) {
+        Cursor c = db.rawQuery(query, new String[] {sessionId});
+        c.moveToFirst();
+        int value = c.getInt(0);
+        c.close();
+        return value;
+    }
+
+    private static double getDoubleOrNaN(Cursor c, int index) {
+        return c.isNull(index) ? Double.NaN : c.getDouble(index);
+    }
+}
@@ -0,0 +1,64 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+/**
+ * Moves records stored as text (records table of older schema, renamed on upgrade) into
+ * the records table with numeric latitude, longitude and date. Every session is one unit
+ * of migration, old table is dropped when no rows are left.
+ */
+class TypedRecordsMigration extends RecordsCopyMigration {
+
+    private static final int VERSION = 2;
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public int countPendingUnits(SQLiteDatabase db) {
+        if (!isSourceExisting(db)) {
+            return 0;
+        }
+        return (int) queryLong(db, "SELECT COUNT(DISTINCT " + RecordsEntry.COLUMN_NAME_SESSION_ID + ")" +
+                " FROM " + RecordsEntry.TEXT_TABLE_NAME, null);
+    }
+
+    @Override
+    String findNextUnit(SQLiteDatabase db) {
+        if (!isSourceExisting(db)) {
+            return null;
+        }
+        return queryString(db, "SELECT " + RecordsEntry.COLUMN_NAME_SESSION_ID +
+                " FROM " + RecordsEntry.TEXT_TABLE_NAME + " LIMIT 1", null);
+    }
+
+    @Override
+    boolean isUnitPending(SQLiteDatabase db, String unit) {
+        return isSourceExisting(db) && queryLong(db, "SELECT EXISTS (SELECT 1 FROM " +
+                RecordsEntry.TEXT_TABLE_NAME + " WHERE " + RecordsEntry.COLUMN_NAME_SESSION_ID + "=?)",
+                new String[] {unit}) > 0;
+    }
+
+    @Override
+    String getSourceTable(String unit) {
+        return RecordsEntry.TEXT_TABLE_NAME;
+    }
+
+    @Override
+    boolean isSourceShared() {
+        return true;
+    }
+
+    @Override
+    void onMigrationFinished(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + RecordsEntry.TEXT_TABLE_NAME);
+    }
+
+    private boolean isSourceExisting(SQLiteDatabase db) {
+        return SessionDbHelper.isTableExisting(db, RecordsEntry.TEXT_TABLE_NAME);
+    }
+}
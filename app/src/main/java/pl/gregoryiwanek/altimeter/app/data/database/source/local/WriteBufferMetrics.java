@@ -0,0 +1,59 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+/**
+ * Consists snapshot of {@link RecordsWriteBuffer} counters: number of flushes and written points,
+ * duration of the last flush and lag between buffering of the point and its write.
+ */
+public final class WriteBufferMetrics {
+
+    private final long mFlushCount;
+    private final long mFlushedPoints;
+    private final int mPendingPoints;
+    private final long mLastFlushMillis;
+    private final long mLastLagMillis;
+    private final long mMaxLagMillis;
+
+    WriteBufferMetrics(long flushCount, long flushedPoints, int pendingPoints,
+                       long lastFlushMillis, long lastLagMillis, long maxLagMillis) {
+        mFlushCount = flushCount;
+        mFlushedPoints = flushedPoints;
+        mPendingPoints = pendingPoints;
+        mLastFlushMillis = lastFlushMillis;
+        mLastLagMillis = lastLagMillis;
+        mMaxLagMillis = maxLagMillis;
+    }
+
+    public long getFlushCount() {
+        return mFlushCount;
+    }
+
+    public long getFlushedPoints() {
+        return mFlushedPoints;
+    }
+
+    public int getPendingPoints() {
+        return mPendingPoints;
+    }
+
+    public long getLastFlushMillis() {
+        return mLastFlushMillis;
+    }
+
+    /**
+     * @return time between buffering of the oldest point of the last flush and the end of that flush
+     */
+    public long getLastLagMillis() {
+        return mLastLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return mMaxLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "flushes: " + mFlushCount + "; points: " + mFlushedPoints + "; pending: " + mPendingPoints
+                + "; last flush: " + mLastFlushMillis + " ms; last lag: " + mLastLagMillis
+                + " ms; max lag: " + mMaxLagMillis + " ms";
+    }
+}
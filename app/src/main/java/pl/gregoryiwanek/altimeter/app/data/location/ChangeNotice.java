@@ -0,0 +1,255 @@
+package pl.gregoryiwanek.altimeter.app.data.location;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.gregoryiwanek.altimeter.app.data.location.processing.AltitudeEventRing;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.AltitudeSourceRegistry;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Passes changes made on the processing thread to the main thread. Events which must not be
+ * lost or reordered, locations and samples applied to the location published before them, are
+ * queued in bounded {@link AltitudeEventRing}; events published while it is full are dropped and
+ * counted. Other samples only update displayed values, so the latest altitude and its text are
+ * kept per slot, as are new fused points in a single bit. Merged changes are handled after queued
+ * events; at most one message waits on the main thread however fast sources report.
+ * <p>
+ * Notice is closed while not recording; changes published then are dropped. Queue depth and
+ * drops are logged when closed.
+ */
+final class ChangeNotice {
+
+    private static final String LOG_TAG = ChangeNotice.class.getSimpleName();
+
+    // has to be power of two
+    private static final int CAPACITY = 64;
+    private static final int EVENT_SAMPLE = 0;
+    private static final int EVENT_LOCATION = 1;
+    private static final int FUSED = 1 << AltitudeSourceRegistry.MAX_SOURCES;
+
+    interface Receiver {
+
+        /**
+         * Called on the main thread.
+         * @param text rounded altitude
+         */
+        void onSample(int slot, double altitude, String text);
+
+        /**
+         * Called on the main thread, after queued samples published before the location.
+         */
+        void onLocation(int slot, Location location);
+
+        /**
+         * Called on the main thread, after queued events and merged samples.
+         */
+        void onFused();
+    }
+
+    private final Receiver mReceiver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mDeliverRunnable = this::deliver;
+    private final AltitudeEventRing mRing = new AltitudeEventRing(CAPACITY);
+    private final AltitudeEventRing.Consumer mConsumer = this::dispatch;
+    private final AltitudeEventRing.Consumer mDiscardConsumer = (kind, slot, timeMillis, value, accuracy,
+                                                                 attachment, latencyNanos) -> {};
+    private final AtomicLong mDroppedCount = new AtomicLong(0);
+
+    // guarded by mLock; events are offered under the lock too, so none is queued once closed
+    private final Object mLock = new Object();
+    private boolean mIsOpen = false;
+    private boolean mIsPosted = false;
+    private int mChanges = 0;
+    private final double[] mAltitudes = new double[AltitudeSourceRegistry.MAX_SOURCES];
+    private final String[] mTexts = new String[AltitudeSourceRegistry.MAX_SOURCES];
+
+    // used only on the main thread
+    private final double[] mTakenAltitudes = new double[AltitudeSourceRegistry.MAX_SOURCES];
+    private final String[] mTakenTexts = new String[AltitudeSourceRegistry.MAX_SOURCES];
+    private volatile int mMaxQueueDepth = 0;
+
+    ChangeNotice(@NonNull Receiver receiver) {
+        mReceiver = checkNotNull(receiver);
+    }
+
+    void open() {
+        synchronized (mLock) {
+            mIsOpen = true;
+        }
+    }
+
+    /**
+     * Drops changes not taken yet and the following ones, until opened again. Called on the main thread.
+     */
+    void close() {
+        synchronized (mLock) {
+            mIsOpen = false;
+            mIsPosted = false;
+            mChanges = 0;
+            while (mRing.poll(mDiscardConsumer)) {
+                // queued events are dropped
+            }
+        }
+        mMainHandler.removeCallbacks(mDeliverRunnable);
+        Log.d(LOG_TAG, getStatsString());
+    }
+
+    /**
+     * Called on the processing thread. Only the latest sample of the slot is delivered.
+     */
+    void publishSample(int slot, double altitude, String text) {
+        synchronized (mLock) {
+            if (!mIsOpen) {
+                return;
+            }
+            mAltitudes[slot] = altitude;
+            mTexts[slot] = text;
+            mChanges |= 1 << slot;
+            if (!post()) {
+                return;
+            }
+        }
+        mMainHandler.post(mDeliverRunnable);
+    }
+
+    /**
+     * Called on the processing thread. Sample is delivered in order with locations.
+     */
+    void publishOrderedSample(int slot, double altitude, String text) {
+        offer(EVENT_SAMPLE, slot, altitude, text);
+    }
+
+    /**
+     * Called on the processing thread.
+     */
+    void publishLocation(int slot, Location location) {
+        offer(EVENT_LOCATION, slot, Double.NaN, location);
+    }
+
+    /**
+     * Called on the processing thread.
+     */
+    void publishFused() {
+        synchronized (mLock) {
+            if (!mIsOpen) {
+                return;
+            }
+            mChanges |= FUSED;
+            if (!post()) {
+                return;
+            }
+        }
+        mMainHandler.post(mDeliverRunnable);
+    }
+
+    /**
+     * @return number of events waiting for the main thread
+     */
+    int getQueueDepth() {
+        return mRing.size();
+    }
+
+    /**
+     * @return largest number of events found waiting by the main thread
+     */
+    int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    private void offer(int kind, int slot, double altitude, Object attachment) {
+        synchronized (mLock) {
+            if (!mIsOpen) {
+                return;
+            }
+            if (!mRing.offer(kind, slot, 0, altitude, Double.NaN, attachment)) {
+                mDroppedCount.incrementAndGet();
+                return;
+            }
+            if (!post()) {
+                return;
+            }
+        }
+        mMainHandler.post(mDeliverRunnable);
+    }
+
+    /**
+     * @return true if delivery has to be posted by the caller
+     */
+    private boolean post() {
+        if (mIsPosted) {
+            return false;
+        }
+        mIsPosted = true;
+        return true;
+    }
+
+    /**
+     * Delivers events queued when delivery started, then merged changes, so receiver is called
+     * without holding the lock. Events queued meanwhile post another delivery.
+     */
+    private void deliver() {
+        int depth;
+        synchronized (mLock) {
+            mIsPosted = false;
+            depth = mRing.size();
+        }
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+        for (int i = 0; i < depth && mRing.poll(mConsumer); i++) {
+            // events are passed to dispatch
+        }
+
+        int changes;
+        synchronized (mLock) {
+            changes = mChanges;
+            for (int i = 0; i < AltitudeSourceRegistry.MAX_SOURCES; i++) {
+                if ((changes & (1 << i)) != 0) {
+                    mTakenAltitudes[i] = mAltitudes[i];
+                    mTakenTexts[i] = mTexts[i];
+                    mTexts[i] = null;
+                }
+            }
+            mChanges = 0;
+        }
+        for (int i = 0; i < AltitudeSourceRegistry.MAX_SOURCES; i++) {
+            if ((changes & (1 << i)) != 0) {
+                mReceiver.onSample(i, mTakenAltitudes[i], mTakenTexts[i]);
+            }
+        }
+        if ((changes & FUSED) != 0) {
+            mReceiver.onFused();
+        }
+    }
+
+    private void dispatch(int kind, int slot, long timeMillis, double value, double accuracy, Object attachment,
+                          long latencyNanos) {
+        synchronized (mLock) {
+            if (!mIsOpen) {
+                // closed by the receiver meanwhile
+                return;
+            }
+        }
+        if (kind == EVENT_LOCATION) {
+            mReceiver.onLocation(slot, (Location) attachment);
+        } else {
+            mReceiver.onSample(slot, value, (String) attachment);
+        }
+    }
+
+    private String getStatsString() {
+        return String.format(Locale.US, "dropped %d, queue depth max %d", getDroppedCount(), getMaxQueueDepth());
+    }
+}
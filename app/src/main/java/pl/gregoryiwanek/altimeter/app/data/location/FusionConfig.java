@@ -0,0 +1,49 @@
+package pl.gregoryiwanek.altimeter.app.data.location;
+
+/**
+ * Consists parameters of {@link SensorFusionPipeline}: how often fused altitude is emitted
+ * and what change of altitude is worth emitting.
+ */
+public class FusionConfig {
+
+    private final long outputIntervalMillis;
+    private final double minAltitudeChange;
+
+    private FusionConfig(Builder builder) {
+        outputIntervalMillis = builder.outputIntervalMillis;
+        minAltitudeChange = builder.minAltitudeChange;
+    }
+
+    /**
+     * @return minimal time between two fused points, 0 if every meaningful change is emitted
+     */
+    public long getOutputIntervalMillis() {
+        return outputIntervalMillis;
+    }
+
+    /**
+     * @return change of fused altitude in meters emitted even without new location
+     */
+    public double getMinAltitudeChange() {
+        return minAltitudeChange;
+    }
+
+    public static class Builder {
+        private long outputIntervalMillis = 2000;
+        private double minAltitudeChange = 1;
+
+        public Builder setOutputIntervalMillis(long outputIntervalMillis) {
+            this.outputIntervalMillis = outputIntervalMillis;
+            return this;
+        }
+
+        public Builder setMinAltitudeChange(double minAltitudeChange) {
+            this.minAltitudeChange = minAltitudeChange;
+            return this;
+        }
+
+        public FusionConfig build() {
+            return new FusionConfig(this);
+        }
+    }
+}
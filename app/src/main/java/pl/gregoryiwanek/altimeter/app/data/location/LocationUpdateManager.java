@@ -14,17 +14,21 @@ import android.support.annotation.Nullable;
 
 import java.util.List;
 
+import pl.gregoryiwanek.altimeter.app.data.location.fusion.AltitudeFusionEngine;
 import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
 import pl.gregoryiwanek.altimeter.app.data.location.managers.BarometerManager;
 import pl.gregoryiwanek.altimeter.app.data.location.managers.GpsManager;
-import pl.gregoryiwanek.altimeter.app.data.location.managers.NetworkManager;
 import pl.gregoryiwanek.altimeter.app.data.location.managers.models.BarometerAltitudeModel;
 import pl.gregoryiwanek.altimeter.app.data.location.managers.models.CombinedLocationModel;
 import pl.gregoryiwanek.altimeter.app.data.location.managers.models.GpsAltitudeModel;
 import pl.gregoryiwanek.altimeter.app.data.location.managers.models.NetworkAltitudeModel;
+import pl.gregoryiwanek.altimeter.app.data.location.processing.AltitudeProcessor;
 import pl.gregoryiwanek.altimeter.app.data.location.services.elevation.BarometerListener;
-import pl.gregoryiwanek.altimeter.app.data.location.services.elevation.GpsLocationListener;
-import pl.gregoryiwanek.altimeter.app.data.location.services.elevation.NetworkTaskRx;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.AltitudeSource;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.AltitudeSourceRegistry;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.BarometerAltitudeSource;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.GpsAltitudeSource;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.NetworkAltitudeSource;
 import pl.gregoryiwanek.altimeter.app.data.location.services.helpers.AddressService;
 import pl.gregoryiwanek.altimeter.app.data.location.services.helpers.airporttask.AirportsTaskRx;
 import pl.gregoryiwanek.altimeter.app.data.location.services.helpers.airporttask.AirportsWithDataTaskRx;
@@ -33,15 +37,17 @@ import pl.gregoryiwanek.altimeter.app.utils.Constants;
 import pl.gregoryiwanek.altimeter.app.utils.formatconventer.FormatAndValueConverter;
 import rx.Observable;
 import rx.Subscriber;
-import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.functions.Func0;
 import rx.schedulers.Schedulers;
 
-public class LocationUpdateManager implements LocationResponse {
+public class LocationUpdateManager implements LocationResponse, SamplingController.Listener {
+
+    // points of the recording kept in memory; older ones are read back from the database
+    private static final int RECORDING_WINDOW_POINTS = 2048;
+    private static final long RECORDING_WINDOW_MILLIS = 0;
 
     private GpsManager mGpsManager;
-    private NetworkManager mNetworkManager;
     private BarometerManager mBarometerManager;
     private GpsAltitudeModel mGpsAltitudeModel;
     private NetworkAltitudeModel mNetworkAltitudeModel;
@@ -53,15 +59,21 @@ public class LocationUpdateManager implements LocationResponse {
     private AddressFoundCallback callbackFoundAddress;
     private GpsElevationCallback callbackFoundGpsLocation;
     private AddressResultReceiver mResultReceiver;
-    private LocationResponse mGpsLocationListener;
     private BarometerListener mBarometerListener;
+    private AltitudeSourceRegistry mSourceRegistry;
+    private GpsAltitudeSource mGpsSource;
+    private NetworkAltitudeSource mNetworkSource;
+    private BarometerAltitudeSource mBarometerSource;
+    private int mGpsSlot;
+    private int mNetworkSlot;
+    private int mBarometerSlot;
+    private AltitudeProcessor mProcessor;
+    private ChangeNotice mChangeNotice;
+    private Handler mMainHandler;
     private Context mContext;
-    private Handler mHandler;
-    private Runnable mBarometerRunnable;
-    private Runnable mNetworkRunnable;
-    private Runnable mDataCombinedRunnable;
+    private SensorFusionPipeline mFusionPipeline;
+    private SamplingController mSamplingController;
     private Session mSession;
-    private Subscription mBarometerSubscription;
 
     public LocationUpdateManager(@NonNull Context context) {
         setVariables(context);
@@ -69,16 +81,33 @@ public class LocationUpdateManager implements LocationResponse {
         setModels();
         setManagers();
         setSession();
-        setListeners();
-        setRunnable();
+        setSources();
         setVariablesDependantOnOtherObject();
     }
 
     private void setVariables(Context context) {
         mContext = context;
         mCombinedLocationModel = new CombinedLocationModel();
-        mResultReceiver = new AddressResultReceiver(new Handler());
-        mHandler = new Handler();
+        mFusionPipeline = new SensorFusionPipeline(mCombinedLocationModel);
+        mSamplingController = new SamplingController(this);
+        mChangeNotice = new ChangeNotice(new ChangeNotice.Receiver() {
+            @Override
+            public void onSample(int slot, double altitude, String text) {
+                onSourceChange(slot, altitude, text);
+            }
+
+            @Override
+            public void onLocation(int slot, Location location) {
+                callbackFoundGpsLocation.onGpsLocationFound(location);
+            }
+
+            @Override
+            public void onFused() {
+                runCallbackFullInfo();
+            }
+        });
+        mMainHandler = new Handler();
+        mResultReceiver = new AddressResultReceiver(mMainHandler);
     }
 
     // callbacks defined with lambdas
@@ -87,23 +116,26 @@ public class LocationUpdateManager implements LocationResponse {
             if (isAirportUpdateRequired(location.getTime())) {
                 updateAirportInfo(location);
             }
-            if (mGpsManager.isGpsEnabled() && location.getAltitude() != 0) {
+            if (mSourceRegistry.isEnabled(mGpsSource) && location.getAltitude() != 0) {
                 mGpsAltitudeModel.setAltitude(location.getAltitude());
             }
             mSession.setCurrLocation(location);
+            mNetworkSource.setLocation(location);
         };
 
         callbackFoundGpsLocation = location -> {
             mGpsManager.setMeasureTime(System.currentTimeMillis());
             mSessionUpdateModel.saveSessionsLocation(mSession, location);
+            mNetworkSource.setLocation(mSession.getCurrentLocation());
             mSessionUpdateModel.appendLocationToList(mSession);
+            mFusionPipeline.onLocationChanged();
             fetchAddressService(location);
 
             if (isAirportUpdateRequired(location.getTime())) {
                 updateAirportInfo(location);
             }
+            // altitude of the fix is already combined, its sample is passed before the location
             if (location.getAltitude() != 0) {
-                saveNonZeroGpsAltitude(location);
                 mSession.appendGraphPoint(mSession.getCurrentLocation().getTime(), mCombinedLocationModel.getCombinedAltitude());
             }
         };
@@ -120,56 +152,56 @@ public class LocationUpdateManager implements LocationResponse {
 
     private void setManagers() {
         mGpsManager = new GpsManager();
-        mNetworkManager = new NetworkManager();
         mBarometerManager = new BarometerManager();
-        setMangersStateDisabled();
         readStoredPressure();
     }
 
     private void setSession() {
         mSession = new Session("","");
+        mSession.setRecordingWindow(RECORDING_WINDOW_POINTS, RECORDING_WINDOW_MILLIS);
         saveCurrentIdDrawerMapGeneration();
     }
 
-    private void setListeners() {
-        mGpsLocationListener = new GpsLocationListener(mContext, callbackInitiation,
-                callbackFoundGpsLocation);
+    private void setSources() {
         mBarometerListener = new BarometerListener(mContext);
-    }
+        mGpsSource = new GpsAltitudeSource(mContext, callbackInitiation, callbackFoundGpsLocation);
+        mNetworkSource = new NetworkAltitudeSource();
+        mBarometerSource = new BarometerAltitudeSource(mBarometerListener);
+        mProcessor = new AltitudeProcessor();
+        mSourceRegistry = new AltitudeSourceRegistry(mProcessor);
+        mGpsSlot = mSourceRegistry.register(mGpsSource);
+        mNetworkSlot = mSourceRegistry.register(mNetworkSource);
+        mBarometerSlot = mSourceRegistry.register(mBarometerSource);
+        mSourceRegistry.setSampleListener(new AltitudeSourceRegistry.SampleListener() {
+            @Override
+            public void onSample(int slot, AltitudeSource source, long timeMillis, double altitude,
+                                 double accuracyMeters) {
+                onSourceSample(slot, source, timeMillis, altitude, accuracyMeters);
+            }
 
-    private void setVariablesDependantOnOtherObject() {
-        mBarometerListener.setClosestAirportPressure(mBarometerManager.getClosestAirportPressure());
+            @Override
+            public void onLocation(int slot, AltitudeSource source, Location location) {
+                mChangeNotice.publishLocation(slot, location);
+            }
+        });
     }
 
-    private void setMangersStateDisabled() {
-        mGpsManager.setGpsEnabled(false);
-        mNetworkManager.setNetworkEnabled(false);
-        mBarometerManager.setBarometerEnabled(false);
+    /**
+     * Adds altitude source, disabled until enabled by its name.
+     */
+    public void registerSource(@NonNull AltitudeSource source) {
+        mSourceRegistry.register(source);
     }
 
-    private void setRunnable() {
-        mBarometerRunnable = () -> mBarometerListener.registerListener();
-
-        mNetworkRunnable = () -> fetchCurrentElevationRx(mSession.getCurrentLocation());
-
-        mDataCombinedRunnable = () -> {
-            String enabledProviders = getWhichProvidesEnabled();
-            runCallbackFullInfo(enabledProviders);
-        };
+    private void setVariablesDependantOnOtherObject() {
+        mBarometerListener.setClosestAirportPressure(mBarometerManager.getClosestAirportPressure());
     }
 
-    private String getWhichProvidesEnabled() {
-        String enabledProviders = "";
-        if (mGpsManager.isGpsEnabled()) {
-            enabledProviders += "GPS;";
-        }
-        if (mNetworkManager.isNetworkEnabled()) {
-            enabledProviders += "NETWORK;";
-        }
-        if (mBarometerManager.isBarometerEnabled()) {
-            enabledProviders += "BAROMETER;";
-        }
-        return enabledProviders;
+    /**
+     * Sets how often fused points are emitted; applied when listening for locations starts.
+     */
+    public void setFusionConfig(@NonNull FusionConfig config) {
+        mFusionPipeline.setConfig(config);
     }
 
     /**
@@ -177,36 +209,36 @@ public class LocationUpdateManager implements LocationResponse {
      * of full information callback to draw GraphView with altitude diagram.
      * Only two cases are possible bugs: only GPS enabled and only BAROMETER enabled.
      * Only GPS: possibility of constant return of locations without real altitude/elevation
-     * value by {@link GpsLocationListener};
-     * Only BAROMETER: lack of any locations on the list ( {@link BarometerListener} returning
+     * value by {@link GpsAltitudeSource};
+     * Only BAROMETER: lack of any locations on the list ( {@link BarometerAltitudeSource} returning
      * pressure value instead of location);
      * Cases without bugs: GPS+NETWORK+BAROMETER; GPS+NETWORK; GPS+BAROMETER; NETWORK+BAROMETER;
-     * @param enabledProviders providers
+     * Called on the main thread for every fused point of {@link SensorFusionPipeline}.
      */
-    private void runCallbackFullInfo(String enabledProviders) {
-        switch (enabledProviders) {
-            case "GPS;":
-                callbackFullInfoOnlyGPS();
-                break;
-            case "BAROMETER;":
-                callbackFullInfoOnlyBarometer();
-                break;
-            default:
-                callbackFullInfoDefault();
+    private void runCallbackFullInfo() {
+        mSamplingController.onFusedPoint(System.currentTimeMillis(),
+                mCombinedLocationModel.getCombinedAltitude(), mSession.getCurrentLocation());
+        boolean isGps = mSourceRegistry.isEnabled(mGpsSource);
+        boolean isNetwork = mSourceRegistry.isEnabled(mNetworkSource);
+        boolean isBarometer = mSourceRegistry.isEnabled(mBarometerSource);
+        if (isGps && !isNetwork && !isBarometer) {
+            callbackFullInfoOnlyGPS();
+        } else if (isBarometer && !isGps && !isNetwork) {
+            callbackFullInfoOnlyBarometer();
+        } else {
+            callbackFullInfoDefault();
         }
     }
 
     private void callbackFullInfoOnlyGPS() {
         if (mGpsAltitudeModel.isInitiated()) {
-            mSession.getLocationList().get(mSession.getLocationList().size()-1).setAltitude(mCombinedLocationModel.getCombinedAltitude());
+            mSession.setElevationOnList(mCombinedLocationModel.getCombinedAltitude());
             mCombinedLocationModel.setUpdateTime(System.currentTimeMillis());
             appendGraphPointFromCombinedAltModel();
             mSessionUpdateModel.setCurrentElevation(mSession, mCombinedLocationModel);
             setTextViewStrings();
             callbackFullInfo.onFullInfoAcquired(mSession);
         }
-
-        mHandler.postDelayed(mDataCombinedRunnable, 20000);
     }
 
     private void callbackFullInfoOnlyBarometer() {
@@ -216,18 +248,16 @@ public class LocationUpdateManager implements LocationResponse {
         mSessionUpdateModel.setSessionsHeight(mSession);
 
         callbackFullInfo.onFullInfoAcquired(mSession);
-        mHandler.postDelayed(mDataCombinedRunnable, 20000);
     }
 
     private void callbackFullInfoDefault() {
-        mSession.getLocationList().get(mSession.getLocationList().size()-1).setAltitude(mCombinedLocationModel.getCombinedAltitude());
+        mSession.setElevationOnList(mCombinedLocationModel.getCombinedAltitude());
         mCombinedLocationModel.setUpdateTime(System.currentTimeMillis());
         appendGraphPointFromCombinedAltModel();
         mSessionUpdateModel.setCurrentElevation(mSession, mCombinedLocationModel);
         setTextViewStrings();
 
         callbackFullInfo.onFullInfoAcquired(mSession);
-        mHandler.postDelayed(mDataCombinedRunnable, 20000);
     }
 
     private void appendGraphPointFromCombinedAltModel() {
@@ -236,30 +266,36 @@ public class LocationUpdateManager implements LocationResponse {
         mSession.appendGraphPoint(valueX, valueY);
     }
 
-    private void fetchBarometerAltitudeRx() {
-        if (mBarometerSubscription == null) {
-            mBarometerSubscription = mBarometerListener.getPressureAltitudePublishSubject()
-                    .observeOn(Schedulers.io())
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(new Subscriber<Double>() {
-                        @Override
-                        public void onCompleted() {
-                            this.unsubscribe();
-                        }
-
-                        @Override
-                        public void onError(Throwable e) {}
-
-                        @Override
-                        public void onNext(Double barAltitude) {
-                            mBarometerListener.unregisterListener();
-                            mBarometerAltitudeModel.setAltitude(barAltitude);
-                            barAltitude = FormatAndValueConverter.roundValue(barAltitude);
-                            callbackFullInfo.onBarometerInfoAcquired(String.valueOf(barAltitude));
-                            mHandler.postDelayed(mBarometerRunnable, 20000);
-                            updateCombinedLocationAltitude();
-                        }
-                    });
+    /**
+     * Combines sample of the source with other sources; called on the processing thread.
+     * Network sample appends the current location, so it is queued in order with locations;
+     * samples of other sources only update displayed values and are merged.
+     */
+    private void onSourceSample(int slot, AltitudeSource source, long timeMillis, double altitude,
+                                double accuracy) {
+        mCombinedLocationModel.updateCombinedAltitude(slot, source.isRelative(), timeMillis, altitude, accuracy);
+        String text = String.valueOf(FormatAndValueConverter.roundValue(altitude));
+        if (slot == mNetworkSlot) {
+            mChangeNotice.publishOrderedSample(slot, altitude, text);
+        } else {
+            mChangeNotice.publishSample(slot, altitude, text);
+        }
+        mFusionPipeline.onAltitudeChanged();
+    }
+
+    /**
+     * Applies sample of the processing thread to the session and views; called on the main thread.
+     */
+    private void onSourceChange(int slot, double altitude, String text) {
+        if (slot == mGpsSlot) {
+            mGpsAltitudeModel.setAltitude(altitude);
+            callbackFullInfo.onGpsInfoAcquired(text);
+        } else if (slot == mNetworkSlot) {
+            onNetworkElevation(altitude, text);
+            afterNetworkElevation();
+        } else if (slot == mBarometerSlot) {
+            mBarometerAltitudeModel.setAltitude(altitude);
+            callbackFullInfo.onBarometerInfoAcquired(text);
         }
     }
 
@@ -274,51 +310,31 @@ public class LocationUpdateManager implements LocationResponse {
     }
 
     private boolean isSessionEmpty() {
-        return mSession.getLocationList() != null && mSession.getLocationList().size() < 1;
+        return mSession.getTrack().isEmpty();
     }
 
-    private void fetchCurrentElevationRx(Location location) {
-        NetworkTaskRx taskRx = new NetworkTaskRx(location);
-        taskRx.getElevationObservable()
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new Subscriber<Double>() {
-                    @Override
-                    public void onCompleted() {
-                        this.unsubscribe();
-                    }
-
-                    @Override
-                    public void onError(Throwable e) {}
-
-                    @Override
-                    public void onNext(Double elevation) {
-                        elevation = (double) Math.round(elevation);
-                        elevation = FormatAndValueConverter.roundValue(elevation);
+    private void onNetworkElevation(double elevation, String elevationText) {
+        mSessionUpdateModel.appendLocationToList(mSession);
+        mFusionPipeline.onLocationChanged();
 
-                        mSessionUpdateModel.appendLocationToList(mSession);
+        mNetworkAltitudeModel.setAltitude(elevation);
 
-                        mNetworkAltitudeModel.setAltitude(elevation);
-
-                        if (!mGpsManager.isGpsEnabled() || isAddressUpdateRequired(System.currentTimeMillis())) {
-                            fetchAddressService(mSession.getCurrentLocation());
-                        }
+        if (!mSourceRegistry.isEnabled(mGpsSource) || isAddressUpdateRequired(System.currentTimeMillis())) {
+            fetchAddressService(mSession.getCurrentLocation());
+        }
 
-                        String alt = String.valueOf(elevation);
-                        callbackFullInfo.onNetworkInfoAcquired(alt);
+        callbackFullInfo.onNetworkInfoAcquired(elevationText);
+    }
 
-                        updateCombinedLocationAltitude();
-                        mSessionUpdateModel.setCurrentElevation(mSession, mCombinedLocationModel);
-                        mHandler.postDelayed(mNetworkRunnable, Constants.NETWORK_INTERVAL_VALUE);
+    private void afterNetworkElevation() {
+        mSessionUpdateModel.setCurrentElevation(mSession, mCombinedLocationModel);
 
-                        if (!mGpsManager.isGpsEnabled() || isAddressUpdateRequired(System.currentTimeMillis())) {
-                            identifyCurrentLocation();
-                        }
-                        if (isAirportUpdateRequired(mSession.getCurrentLocation().getTime())) {
-                            updateAirportInfo(mSession.getCurrentLocation());
-                        }
-                    }
-                });
+        if (!mSourceRegistry.isEnabled(mGpsSource) || isAddressUpdateRequired(System.currentTimeMillis())) {
+            identifyCurrentLocation();
+        }
+        if (isAirportUpdateRequired(mSession.getCurrentLocation().getTime())) {
+            updateAirportInfo(mSession.getCurrentLocation());
+        }
     }
 
     private void fetchNearestAirportsRx(Location location) {
@@ -394,10 +410,10 @@ public class LocationUpdateManager implements LocationResponse {
     }
 
     private void unsubscribeOnDestroy() {
-        if (mBarometerSubscription != null) {
-            mBarometerSubscription.unsubscribe();
-            mBarometerSubscription = null;
-        }
+        mFusionPipeline.stop();
+        mChangeNotice.close();
+        mSourceRegistry.release();
+        mProcessor.quit();
     }
 
     private void setTextViewStrings() {
@@ -408,27 +424,11 @@ public class LocationUpdateManager implements LocationResponse {
         mSessionUpdateModel.setSessionsHeight(mSession);
     }
 
-    private void saveNonZeroGpsAltitude(Location location) {
-        mGpsAltitudeModel.setAltitude(location.getAltitude());
-        updateCombinedLocationAltitude();
-        Double gpsAlt = FormatAndValueConverter.roundValue(location.getAltitude());
-        callbackFullInfo.onGpsInfoAcquired(String.valueOf(gpsAlt));
-    }
-
-    private void updateCombinedLocationAltitude() {
-        boolean[] stateOfProviders = getStateOfProviders();
-        double[] modelsAltitude = getProvidersAltitudes();
-        mCombinedLocationModel.updateCombinedAltitude(stateOfProviders, modelsAltitude);
-    }
-
-    private boolean[] getStateOfProviders() {
-        return new boolean[]{mGpsManager.isGpsEnabled(), mNetworkManager.isNetworkEnabled(),
-                mBarometerManager.isBarometerEnabled()};
-    }
-
-    private double[] getProvidersAltitudes() {
-        return new double[]{mGpsAltitudeModel.getAltitude(), mNetworkAltitudeModel.getAltitude(),
-                mBarometerAltitudeModel.getAltitude()};
+    /**
+     * Replaces engine combining altitudes of enabled sources.
+     */
+    public void setFusionEngine(@NonNull AltitudeFusionEngine fusionEngine) {
+        mCombinedLocationModel.setFusionEngine(fusionEngine);
     }
 
     private void assignAirportPressure() {
@@ -444,50 +444,49 @@ public class LocationUpdateManager implements LocationResponse {
         callbackFullInfo = callback;
         mSessionUpdateModel.updateDistanceUnits(mContext);
 
-        if (mGpsManager.isGpsEnabled()) {
-            mGpsLocationListener.startListenForLocations(null);
-        }
-
-        if (mNetworkManager.isNetworkEnabled()) {
-            fetchCurrentElevationRx(mSession.getCurrentLocation());
-        }
-
-        if (mBarometerManager.isBarometerEnabled()) {
-            if (!mBarometerListener.isBarometerListenerRegistered()) {
-                fetchBarometerAltitudeRx();
-                mBarometerListener.registerListener();
-            }
-        }
-
-        mHandler.postDelayed(mDataCombinedRunnable, 10000);
+        mProcessor.start();
+        // barometer takes reference pressure again when registered, posted ahead of its samples
+        new Handler(mProcessor.getLooper()).post(mCombinedLocationModel::resetRelativeSources);
+        mChangeNotice.open();
+        mSourceRegistry.start();
+        mFusionPipeline.start(AndroidSchedulers.from(mProcessor.getLooper()), mChangeNotice::publishFused);
     }
 
     @Override
     public void identifyCurrentLocation() {
-        mGpsLocationListener.identifyCurrentLocation();
+        mGpsSource.identifyCurrentLocation();
     }
 
     @Override
     public void stopListenForLocations(boolean isLocked) {
-        mGpsLocationListener.stopListenForLocations(isLocked);
-        mBarometerListener.unregisterListener();
+        mSourceRegistry.stop();
         resetHandlers();
         if (isLocked) {
+            mGpsSource.disconnect();
             lockSession();
         }
     }
 
+    /**
+     * Applies sampling rates suited to the user's motion to all sources.
+     */
+    @Override
+    public void onMotionStateChanged(MotionState state) {
+        mSourceRegistry.setMotionState(state);
+    }
+
     private void lockSession() {
         mSession.setLocked(true);
     }
 
-    public void setManagerState(Class<?> manager, boolean isEnabled) {
-        if (manager == GpsManager.class) {
-            mGpsManager.setGpsEnabled(isEnabled);
-        } else if (manager == NetworkManager.class) {
-            mNetworkManager.setNetworkEnabled(isEnabled);
-        } else if (manager == BarometerManager.class){
-            mBarometerManager.setBarometerEnabled(isEnabled);
+    /**
+     * Enables or disables altitude source; applied when listening for locations starts.
+     * @param name name of the source, like {@link GpsAltitudeSource#NAME}
+     */
+    public void setSourceEnabled(@NonNull String name, boolean isEnabled) {
+        AltitudeSource source = mSourceRegistry.getSource(name);
+        if (source != null) {
+            mSourceRegistry.setEnabled(source, isEnabled);
         }
     }
 
@@ -519,15 +518,16 @@ public class LocationUpdateManager implements LocationResponse {
     }
 
     private void resetHandlers() {
-        mHandler.removeCallbacks(mBarometerRunnable);
-        mHandler.removeCallbacks(mNetworkRunnable);
-        mHandler.removeCallbacks(mDataCombinedRunnable);
+        mFusionPipeline.stop();
+        mChangeNotice.close();
+        mFusionPipeline.reset();
+        mSamplingController.reset(System.currentTimeMillis());
     }
 
     private void resetManagers() {
         mGpsManager.resetData();
-        mNetworkManager.resetData();
         mBarometerManager.resetData();
+        mSourceRegistry.disableAll();
     }
 
     private void updateAirportInfo(Location location) {
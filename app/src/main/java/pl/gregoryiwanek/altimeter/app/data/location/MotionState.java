@@ -0,0 +1,57 @@
+package pl.gregoryiwanek.altimeter.app.data.location;
+
+import com.google.android.gms.location.LocationRequest;
+
+import pl.gregoryiwanek.altimeter.app.utils.Constants;
+
+/**
+ * Motion of the user estimated by {@link SamplingController}, with sampling rates of altitude
+ * sources suited to it. While stationary GPS is duty-cycled off: locations come from
+ * low-power providers, which still reveal movement, and barometer keeps watching altitude.
+ */
+public enum MotionState {
+
+    STATIONARY(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, 60000, 30000, 1000000, 300000),
+    MOVING(LocationRequest.PRIORITY_HIGH_ACCURACY, Constants.GPS_INTERVAL_VALUE,
+            Constants.GPS_FASTEST_INTERVAL_VALUE, 200000, Constants.NETWORK_INTERVAL_VALUE),
+    FAST_VERTICAL(LocationRequest.PRIORITY_HIGH_ACCURACY, 5000, 2000, 100000,
+            Constants.NETWORK_INTERVAL_VALUE);
+
+    private final int mGpsPriority;
+    private final long mGpsIntervalMillis;
+    private final long mGpsFastestIntervalMillis;
+    private final int mBarometerPeriodUs;
+    private final long mNetworkIntervalMillis;
+
+    MotionState(int gpsPriority, long gpsIntervalMillis, long gpsFastestIntervalMillis,
+                int barometerPeriodUs, long networkIntervalMillis) {
+        mGpsPriority = gpsPriority;
+        mGpsIntervalMillis = gpsIntervalMillis;
+        mGpsFastestIntervalMillis = gpsFastestIntervalMillis;
+        mBarometerPeriodUs = barometerPeriodUs;
+        mNetworkIntervalMillis = networkIntervalMillis;
+    }
+
+    /**
+     * @return priority of {@link LocationRequest}
+     */
+    public int getGpsPriority() {
+        return mGpsPriority;
+    }
+
+    public long getGpsIntervalMillis() {
+        return mGpsIntervalMillis;
+    }
+
+    public long getGpsFastestIntervalMillis() {
+        return mGpsFastestIntervalMillis;
+    }
+
+    public int getBarometerPeriodUs() {
+        return mBarometerPeriodUs;
+    }
+
+    public long getNetworkIntervalMillis() {
+        return mNetworkIntervalMillis;
+    }
+}
@@ -0,0 +1,149 @@
+package pl.gregoryiwanek.altimeter.app.data.location;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.Locale;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Estimates vertical and horizontal speed from fused points and switches {@link MotionState},
+ * whose sampling rates are applied by the listener. Speeds are smoothed, thresholds of leaving
+ * a state are wider than thresholds of entering it, and new state has to hold for
+ * {@link #DWELL_MILLIS} before it is applied, so noisy estimates don't switch rates back and forth.
+ * Every switch is logged with time spent in each state, to compare power use of recordings.
+ * Not thread-safe; used on the main thread.
+ */
+class SamplingController {
+
+    private static final String LOG_TAG = SamplingController.class.getSimpleName();
+
+    private static final long DWELL_MILLIS = 30000;
+    // weight of the newest speed in smoothed speed
+    private static final double SMOOTHING = 0.5;
+    // m/s
+    private static final double FAST_VERTICAL_ENTER = 0.5;
+    private static final double FAST_VERTICAL_EXIT = 0.3;
+    private static final double STATIONARY_VERTICAL_ENTER = 0.05;
+    private static final double STATIONARY_VERTICAL_EXIT = 0.15;
+    private static final double STATIONARY_HORIZONTAL_ENTER = 0.3;
+    private static final double STATIONARY_HORIZONTAL_EXIT = 0.8;
+
+    interface Listener {
+        void onMotionStateChanged(MotionState state);
+    }
+
+    private final Listener mListener;
+    private final long[] mStateMillis = new long[MotionState.values().length];
+    private final float[] mDistance = new float[1];
+    private MotionState mState = MotionState.MOVING;
+    private long mStateSince = 0;
+    private MotionState mCandidate = null;
+    private long mCandidateSince = 0;
+    private double mVerticalSpeed = 0;
+    private double mHorizontalSpeed = 0;
+    private boolean mHasLastPoint = false;
+    private long mLastTime;
+    private double mLastAltitude;
+    private double mLastLatitude;
+    private double mLastLongitude;
+
+    SamplingController(@NonNull Listener listener) {
+        mListener = checkNotNull(listener);
+    }
+
+    MotionState getState() {
+        return mState;
+    }
+
+    /**
+     * @param location current location, null if not known yet
+     */
+    void onFusedPoint(long timeMillis, double altitude, Location location) {
+        if (mStateSince == 0) {
+            mStateSince = timeMillis;
+        }
+        if (location == null) {
+            return;
+        }
+        if (mHasLastPoint && timeMillis > mLastTime) {
+            double seconds = (timeMillis - mLastTime) / 1000d;
+            Location.distanceBetween(mLastLatitude, mLastLongitude,
+                    location.getLatitude(), location.getLongitude(), mDistance);
+            mVerticalSpeed = smooth(mVerticalSpeed, Math.abs(altitude - mLastAltitude) / seconds);
+            mHorizontalSpeed = smooth(mHorizontalSpeed, mDistance[0] / seconds);
+        }
+        mHasLastPoint = true;
+        mLastTime = timeMillis;
+        mLastAltitude = altitude;
+        mLastLatitude = location.getLatitude();
+        mLastLongitude = location.getLongitude();
+        evaluate(timeMillis);
+    }
+
+    /**
+     * Returns to the default state, logging time spent in the previous one.
+     */
+    void reset(long timeMillis) {
+        if (mState != MotionState.MOVING) {
+            switchState(MotionState.MOVING, timeMillis);
+        }
+        mCandidate = null;
+        mStateSince = 0;
+        mHasLastPoint = false;
+        mVerticalSpeed = 0;
+        mHorizontalSpeed = 0;
+    }
+
+    private void evaluate(long timeMillis) {
+        MotionState candidate = classify();
+        if (candidate == mState) {
+            mCandidate = null;
+        } else if (candidate != mCandidate) {
+            mCandidate = candidate;
+            mCandidateSince = timeMillis;
+        } else if (timeMillis - mCandidateSince >= DWELL_MILLIS) {
+            switchState(candidate, timeMillis);
+        }
+    }
+
+    private MotionState classify() {
+        double fastVertical = mState == MotionState.FAST_VERTICAL ? FAST_VERTICAL_EXIT : FAST_VERTICAL_ENTER;
+        if (mVerticalSpeed >= fastVertical) {
+            return MotionState.FAST_VERTICAL;
+        }
+        boolean isStationary = mState == MotionState.STATIONARY
+                ? mVerticalSpeed < STATIONARY_VERTICAL_EXIT && mHorizontalSpeed < STATIONARY_HORIZONTAL_EXIT
+                : mVerticalSpeed < STATIONARY_VERTICAL_ENTER && mHorizontalSpeed < STATIONARY_HORIZONTAL_ENTER;
+        return isStationary ? MotionState.STATIONARY : MotionState.MOVING;
+    }
+
+    private void switchState(MotionState state, long timeMillis) {
+        long spent = mStateSince == 0 ? 0 : Math.max(0, timeMillis - mStateSince);
+        mStateMillis[mState.ordinal()] += spent;
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%s -> %s after %d s; vertical %.2f m/s, horizontal %.2f m/s; total %s",
+                mState, state, spent / 1000, mVerticalSpeed, mHorizontalSpeed, getStateTotals()));
+        mState = state;
+        mStateSince = timeMillis;
+        mCandidate = null;
+        mListener.onMotionStateChanged(state);
+    }
+
+    private String getStateTotals() {
+        StringBuilder totals = new StringBuilder();
+        for (MotionState state : MotionState.values()) {
+            if (totals.length() > 0) {
+                totals.append(", ");
+            }
+            totals.append(state).append(' ').append(mStateMillis[state.ordinal()] / 1000).append(" s");
+        }
+        return totals.toString();
+    }
+
+    private static double smooth(double smoothed, double speed) {
+        return smoothed + SMOOTHING * (speed - smoothed);
+    }
+}
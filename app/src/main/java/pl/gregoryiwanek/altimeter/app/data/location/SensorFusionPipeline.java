@@ -0,0 +1,114 @@
+package pl.gregoryiwanek.altimeter.app.data.location;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import pl.gregoryiwanek.altimeter.app.data.location.managers.models.CombinedLocationModel;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Merges updates of GPS, network and barometer, as they arrive, into stream of fused points.
+ * Sources only notify that their location or altitude changed; the fused state is read from
+ * {@link CombinedLocationModel} when point is emitted.
+ * <p>
+ * Updates arriving faster than the output interval are collapsed to the latest one
+ * (backpressure is dropping, never buffering), first update after an idle period is emitted
+ * at once and no timer runs while sources are silent. Point is emitted only for new location
+ * or when fused altitude moved by {@link FusionConfig#getMinAltitudeChange()}.
+ * Points are emitted on the scheduler given at start; updates can be notified on any thread.
+ */
+class SensorFusionPipeline {
+
+    private static final int EVENT_LOCATION = 0;
+    private static final int EVENT_ALTITUDE = 1;
+
+    private final CombinedLocationModel mCombinedModel;
+    private final Subject<Integer, Integer> mEvents = PublishSubject.<Integer>create().toSerialized();
+    private final AtomicBoolean mHasNewLocation = new AtomicBoolean(false);
+    private FusionConfig mConfig = new FusionConfig.Builder().build();
+    private Subscription mSubscription;
+    // read and written on the scheduler's thread, reset on the main thread
+    private volatile double mLastFusedAltitude = Double.NaN;
+
+    SensorFusionPipeline(@NonNull CombinedLocationModel combinedModel) {
+        mCombinedModel = checkNotNull(combinedModel);
+    }
+
+    /**
+     * Applied when pipeline is started next time.
+     */
+    void setConfig(@NonNull FusionConfig config) {
+        mConfig = checkNotNull(config);
+    }
+
+    /**
+     * @param scheduler scheduler of the processing thread
+     * @param onFused called on the scheduler for every fused point
+     */
+    void start(@NonNull Scheduler scheduler, @NonNull Action0 onFused) {
+        if (mSubscription != null) {
+            return;
+        }
+        mSubscription = rateLimited(mEvents.onBackpressureLatest(), mConfig.getOutputIntervalMillis())
+                .observeOn(scheduler)
+                .filter(event -> isMeaningfulChange())
+                .subscribe(event -> onFused.call(), Throwable::printStackTrace);
+    }
+
+    void stop() {
+        if (mSubscription != null) {
+            mSubscription.unsubscribe();
+            mSubscription = null;
+        }
+    }
+
+    /**
+     * Forgets last fused point, so the next update is emitted whatever its altitude.
+     */
+    void reset() {
+        mHasNewLocation.set(false);
+        mLastFusedAltitude = Double.NaN;
+    }
+
+    void onLocationChanged() {
+        mHasNewLocation.set(true);
+        mEvents.onNext(EVENT_LOCATION);
+    }
+
+    void onAltitudeChanged() {
+        mEvents.onNext(EVENT_ALTITUDE);
+    }
+
+    /**
+     * Passes an update and holds the following ones for the interval; updates arriving meanwhile
+     * are collapsed by upstream backpressure to the latest one, emitted when interval elapses.
+     * Single concurrent inner stream requests one update at a time, so nothing is prefetched.
+     */
+    private static Observable<Integer> rateLimited(Observable<Integer> events, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            return events;
+        }
+        return events.flatMap(event -> Observable.just(event)
+                .concatWith(Observable.<Integer>empty().delay(intervalMillis, TimeUnit.MILLISECONDS)), 1);
+    }
+
+    private boolean isMeaningfulChange() {
+        boolean isNewLocation = mHasNewLocation.getAndSet(false);
+        double altitude = mCombinedModel.getCombinedAltitude();
+        if (!isNewLocation && !Double.isNaN(mLastFusedAltitude)
+                && Math.abs(altitude - mLastFusedAltitude) < mConfig.getMinAltitudeChange()) {
+            return false;
+        }
+        mLastFusedAltitude = altitude;
+        return true;
+    }
+}
@@ -5,10 +5,9 @@ import android.content.SharedPreferences;
 import android.location.Location;
 import android.preference.PreferenceManager;
 
-import java.util.ArrayList;
-
 import pl.gregoryiwanek.altimeter.app.R;
 import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackBuffer;
 import pl.gregoryiwanek.altimeter.app.data.location.managers.BarometerManager;
 import pl.gregoryiwanek.altimeter.app.data.location.managers.models.CombinedLocationModel;
 import pl.gregoryiwanek.altimeter.app.recordingsession.RecordingSessionFragment;
@@ -203,7 +202,7 @@ class SessionUpdateModel {
             editor.putString(statisticsNames[0], numSessionsStr);
 
             String numPointsStr = preferences.getString(statisticsNames[1], Constants.DEFAULT_TEXT);
-            double numPointsSession = session.getLocationList().size();
+            double numPointsSession = session.getTrack().getTotalCount();
             numPointsStr = sumCount(numPointsStr, numPointsSession);
             editor.putString(statisticsNames[1], numPointsStr);
 
@@ -243,7 +242,7 @@ class SessionUpdateModel {
     }
 
     private boolean isSessionInitiated(Session session) {
-        return session.getCurrentLocation() != null || session.getLocationList().size() != 0;
+        return session.getCurrentLocation() != null || !session.getTrack().isEmpty();
     }
 
     private boolean isStatisticValueBigger(String statValueStr, double sessionValue) {
@@ -266,9 +265,9 @@ class SessionUpdateModel {
     }
 
     private long getRecordingLength(Session session) {
-        if (session.getLocationList() != null && session.getLocationList().size() > 0) {
-            ArrayList<Location> locations = session.getLocationList();
-            return locations.get(locations.size()-1).getTime() - locations.get(0).getTime();
+        TrackBuffer track = session.getTrack();
+        if (!track.isEmpty()) {
+            return track.getTime(track.size() - 1) - track.getFirstTime();
         }
         return 0;
     }
@@ -0,0 +1,37 @@
+package pl.gregoryiwanek.altimeter.app.data.location.fusion;
+
+/**
+ * Estimates current altitude from samples of altitude sources. Updates are expected to be
+ * allocation-free, so engine can be updated at sensor rate. Not thread-safe.
+ */
+public interface AltitudeFusionEngine {
+
+    int MAX_SOURCES = 8;
+
+    /**
+     * @param source index of the source, lower than {@link #MAX_SOURCES}
+     * @param isRelative true if only changes of the source's altitude are reliable
+     * @param timeMillis time of the sample
+     * @param altitude altitude in meters
+     * @param accuracyMeters standard deviation of the altitude, NaN if unknown
+     */
+    void update(int source, boolean isRelative, long timeMillis, double altitude, double accuracyMeters);
+
+    boolean hasEstimate();
+
+    /**
+     * @return estimated altitude in meters, 0 if there is no estimate yet
+     */
+    double getAltitude();
+
+    /**
+     * Forgets the previous sample of relative source, so its next sample is taken as a new baseline
+     * instead of a change; called when reference of the relative source changes.
+     */
+    void resetRelative();
+
+    /**
+     * Forgets all samples.
+     */
+    void reset();
+}
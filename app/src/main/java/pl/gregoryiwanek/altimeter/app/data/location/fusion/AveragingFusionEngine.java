@@ -0,0 +1,51 @@
+package pl.gregoryiwanek.altimeter.app.data.location.fusion;
+
+import java.util.Arrays;
+
+/**
+ * Estimates altitude as average of the latest non-zero samples of all sources; accuracy is ignored.
+ */
+public class AveragingFusionEngine implements AltitudeFusionEngine {
+
+    private final double[] mAltitudes = new double[MAX_SOURCES];
+    private double mAltitude = 0;
+
+    @Override
+    public void update(int source, boolean isRelative, long timeMillis, double altitude, double accuracyMeters) {
+        if (Double.isNaN(altitude) || altitude == 0) {
+            return;
+        }
+        mAltitudes[source] = altitude;
+        double sum = 0;
+        int count = 0;
+        for (double sourceAltitude : mAltitudes) {
+            if (sourceAltitude != 0) {
+                sum += sourceAltitude;
+                count++;
+            }
+        }
+        mAltitude = sum / count;
+    }
+
+    @Override
+    public boolean hasEstimate() {
+        return mAltitude != 0;
+    }
+
+    @Override
+    public double getAltitude() {
+        return mAltitude;
+    }
+
+    /**
+     * Latest sample of relative source replaces the previous one, so nothing is kept.
+     */
+    @Override
+    public void resetRelative() {}
+
+    @Override
+    public void reset() {
+        Arrays.fill(mAltitudes, 0);
+        mAltitude = 0;
+    }
+}
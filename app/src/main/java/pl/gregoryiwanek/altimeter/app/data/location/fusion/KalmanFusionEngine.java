@@ -0,0 +1,127 @@
+package pl.gregoryiwanek.altimeter.app.data.location.fusion;
+
+/**
+ * One-dimensional Kalman filter of altitude. Relative source, barometer, drives short-term changes:
+ * the change of pressure altitude since the previous reading is added to the estimate, as its
+ * pressure bias cancels out between close readings; single relative source is expected, computing
+ * its altitude against reference pressure which doesn't change until {@link #resetRelative()}.
+ * Absolute sources, like GPS and network, correct the long-term drift, each weighted by its
+ * accuracy, so single noisy fix moves the estimate only slightly.
+ * Without barometer, estimate follows the fixes, trusting them more the longer it wasn't updated.
+ * <p>
+ * State is a few primitive fields; update allocates nothing.
+ */
+public class KalmanFusionEngine implements AltitudeFusionEngine {
+
+    // used for fixes reporting no accuracy
+    private static final double DEFAULT_ACCURACY_METERS = 30;
+    // pressure altitude is computed from reference pressure of the nearest airport, if known
+    private static final double BAROMETER_ACCURACY_METERS = 30;
+
+    private final double mAltitudeNoise;
+    private final double mBarometerNoise;
+    private final double mBarometerDrift;
+
+    private boolean mHasEstimate = false;
+    private double mAltitude = 0;
+    private double mVariance = 0;
+    private long mLastTime = 0;
+    private boolean mHasBarometer = false;
+    private double mLastBarometerAltitude = 0;
+
+    public KalmanFusionEngine() {
+        this(1, 0.1, 0.01);
+    }
+
+    /**
+     * @param altitudeNoise growth of variance without barometer, in m^2 per second
+     * @param barometerNoise variance added by every barometer change, in m^2
+     * @param barometerDrift growth of variance with barometer, in m^2 per second
+     */
+    public KalmanFusionEngine(double altitudeNoise, double barometerNoise, double barometerDrift) {
+        mAltitudeNoise = altitudeNoise;
+        mBarometerNoise = barometerNoise;
+        mBarometerDrift = barometerDrift;
+    }
+
+    @Override
+    public void update(int source, boolean isRelative, long timeMillis, double altitude, double accuracyMeters) {
+        if (Double.isNaN(altitude)) {
+            return;
+        }
+        if (isRelative) {
+            updateBarometer(timeMillis, altitude);
+        } else {
+            correct(timeMillis, altitude, accuracyMeters);
+        }
+    }
+
+    private void updateBarometer(long timeMillis, double altitude) {
+        if (!mHasEstimate) {
+            initiate(timeMillis, altitude, BAROMETER_ACCURACY_METERS);
+        } else {
+            predict(timeMillis);
+            if (mHasBarometer) {
+                mAltitude += altitude - mLastBarometerAltitude;
+                mVariance += mBarometerNoise;
+            }
+        }
+        mHasBarometer = true;
+        mLastBarometerAltitude = altitude;
+    }
+
+    private void correct(long timeMillis, double altitude, double accuracyMeters) {
+        if (!(accuracyMeters > 0)) {
+            accuracyMeters = DEFAULT_ACCURACY_METERS;
+        }
+        if (!mHasEstimate) {
+            initiate(timeMillis, altitude, accuracyMeters);
+            return;
+        }
+        predict(timeMillis);
+        double gain = mVariance / (mVariance + accuracyMeters * accuracyMeters);
+        mAltitude += gain * (altitude - mAltitude);
+        mVariance *= 1 - gain;
+    }
+
+    private void initiate(long timeMillis, double altitude, double accuracyMeters) {
+        mAltitude = altitude;
+        mVariance = accuracyMeters * accuracyMeters;
+        mLastTime = timeMillis;
+        mHasEstimate = true;
+    }
+
+    /**
+     * Grows variance by time elapsed since the previous update.
+     */
+    private void predict(long timeMillis) {
+        double seconds = Math.max(0, timeMillis - mLastTime) / 1000d;
+        mVariance += (mHasBarometer ? mBarometerDrift : mAltitudeNoise) * seconds;
+        mLastTime = Math.max(mLastTime, timeMillis);
+    }
+
+    @Override
+    public boolean hasEstimate() {
+        return mHasEstimate;
+    }
+
+    @Override
+    public double getAltitude() {
+        return mAltitude;
+    }
+
+    @Override
+    public void resetRelative() {
+        mHasBarometer = false;
+    }
+
+    @Override
+    public void reset() {
+        mHasEstimate = false;
+        mAltitude = 0;
+        mVariance = 0;
+        mLastTime = 0;
+        mHasBarometer = false;
+        mLastBarometerAltitude = 0;
+    }
+}
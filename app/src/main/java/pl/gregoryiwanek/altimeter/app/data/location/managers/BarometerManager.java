@@ -6,21 +6,12 @@ import pl.gregoryiwanek.altimeter.app.data.location.services.helpers.airporttask
 
 public class BarometerManager {
 
-    private boolean mBarometerEnabled;
     private long mAirportMeasureTime = 0;
     private double mUpdateLatitude = 0;
     private double mUpdateLongitude = 0;
     private double mClosestAirportPressure = 0;
     private List<XmlAirportValues> mAirportsList = null;
 
-    public boolean isBarometerEnabled() {
-        return mBarometerEnabled;
-    }
-
-    public void setBarometerEnabled(boolean barometerEnabled) {
-        mBarometerEnabled = barometerEnabled;
-    }
-
     public long getAirportMeasureTime() {
         return mAirportMeasureTime;
     }
@@ -46,7 +37,6 @@ public class BarometerManager {
     }
 
     public void resetData() {
-        mBarometerEnabled = false;
         mAirportMeasureTime = 0;
         mUpdateLatitude = 0;
         mUpdateLongitude = 0;
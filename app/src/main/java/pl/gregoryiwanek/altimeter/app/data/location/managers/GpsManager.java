@@ -2,17 +2,8 @@ package pl.gregoryiwanek.altimeter.app.data.location.managers;
 
 public class GpsManager {
 
-    private boolean mGpsEnabled;
     private long mMeasureTime = 0;
 
-    public void setGpsEnabled(boolean gpsEnabled) {
-        mGpsEnabled = gpsEnabled;
-    }
-
-    public boolean isGpsEnabled() {
-        return mGpsEnabled;
-    }
-
     public long getMeasureTime() {
         return mMeasureTime;
     }
@@ -22,7 +13,6 @@ public class GpsManager {
     }
 
     public void resetData() {
-        mGpsEnabled = false;
         mMeasureTime = 0;
     }
 }
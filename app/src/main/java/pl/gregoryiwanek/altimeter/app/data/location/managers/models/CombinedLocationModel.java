@@ -1,50 +1,50 @@
 package pl.gregoryiwanek.altimeter.app.data.location.managers.models;
 
+import pl.gregoryiwanek.altimeter.app.data.location.fusion.AltitudeFusionEngine;
+import pl.gregoryiwanek.altimeter.app.data.location.fusion.KalmanFusionEngine;
 import pl.gregoryiwanek.altimeter.app.utils.formatconventer.FormatAndValueConverter;
 
+/**
+ * Consists altitude combined from all enabled sources by {@link AltitudeFusionEngine}.
+ * Updated on the processing thread; combined altitude and update time can be read on any thread.
+ */
 public class CombinedLocationModel {
 
-    private double mCombinedAltitude = 0;
-    private long mUpdateTime = 0;
+    private volatile AltitudeFusionEngine mFusionEngine = new KalmanFusionEngine();
+    private volatile double mCombinedAltitude = 0;
+    private volatile long mUpdateTime = 0;
 
     /**
-     *
-     * @param stateOfProviders if provider is enabled; 0-gps, 1-network, 2-barometer
-     * @param modelsAltitude altitudes of providers; 0-gps, 1-network, 2-barometer
+     * Replaces engine, forgetting samples of the previous one. Applied by the next update.
      */
-    public void updateCombinedAltitude(boolean[] stateOfProviders, double[] modelsAltitude) {
-        double altitude = 0;
-        int count = 0;
-        // gps
-        if (stateOfProviders[0]) {
-            if (modelsAltitude[0] != 0) {
-                altitude += modelsAltitude[0];
-                count++;
-            }
-        }
-        // network
-        if (stateOfProviders[1]) {
-            if (modelsAltitude[1] != 0) {
-                altitude += modelsAltitude[1];
-                count++;
-            }
-        }
-        // barometer
-        if (stateOfProviders[2]) {
-            if (modelsAltitude[2] != 0) {
-                altitude += modelsAltitude[2];
-                count++;
-            }
-        }
-        if (count != 0) {
-            altitude /= count;
-            mCombinedAltitude = altitude;
+    public void setFusionEngine(AltitudeFusionEngine fusionEngine) {
+        mFusionEngine = fusionEngine;
+    }
+
+    /**
+     * @param source index of the source of the sample
+     * @param isRelative true if only changes of the source's altitude are reliable
+     * @param accuracyMeters standard deviation of the altitude, NaN if unknown
+     */
+    public void updateCombinedAltitude(int source, boolean isRelative, long timeMillis, double altitude,
+                                       double accuracyMeters) {
+        AltitudeFusionEngine fusionEngine = mFusionEngine;
+        fusionEngine.update(source, isRelative, timeMillis, altitude, accuracyMeters);
+        if (fusionEngine.hasEstimate()) {
+            mCombinedAltitude = FormatAndValueConverter.roundValue(fusionEngine.getAltitude());
             mUpdateTime = System.currentTimeMillis();
         }
     }
 
+    /**
+     * Takes the next sample of relative source as a new baseline; called on the processing thread.
+     */
+    public void resetRelativeSources() {
+        mFusionEngine.resetRelative();
+    }
+
     public double getCombinedAltitude() {
-        return FormatAndValueConverter.roundValue(mCombinedAltitude);
+        return mCombinedAltitude;
     }
 
     public void setUpdateTime(long updateTime) {
@@ -0,0 +1,126 @@
+package pl.gregoryiwanek.altimeter.app.data.location.processing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free queue of altitude events, written by many producer threads and read by
+ * a single consumer. Events are kept in preallocated primitive columns; every cell has a sequence
+ * number telling whether it is free for the producer of given position or published for
+ * the consumer, so neither offering nor polling allocates or blocks. Full queue rejects events.
+ */
+public final class AltitudeEventRing {
+
+    public interface Consumer {
+
+        /**
+         * @param attachment object passed with the event, null if none
+         * @param latencyNanos time the event spent in the queue
+         */
+        void onEvent(int kind, int slot, long timeMillis, double value, double accuracy, Object attachment,
+                     long latencyNanos);
+    }
+
+    private final int mMask;
+    private final AtomicLongArray mSequences;
+    private final int[] mKinds;
+    private final int[] mSlots;
+    private final long[] mTimes;
+    private final double[] mValues;
+    private final double[] mAccuracies;
+    private final long[] mOfferNanos;
+    private final Object[] mAttachments;
+    private final AtomicLong mTail = new AtomicLong(0);
+    // written only by the consumer
+    private volatile long mHead = 0;
+
+    /**
+     * @param capacity has to be power of two
+     */
+    public AltitudeEventRing(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity has to be power of two: " + capacity);
+        }
+        mMask = capacity - 1;
+        mSequences = new AtomicLongArray(capacity);
+        mKinds = new int[capacity];
+        mSlots = new int[capacity];
+        mTimes = new long[capacity];
+        mValues = new double[capacity];
+        mAccuracies = new double[capacity];
+        mOfferNanos = new long[capacity];
+        mAttachments = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Called on any thread.
+     * @return false if queue is full and event was rejected
+     */
+    public boolean offer(int kind, int slot, long timeMillis, double value, double accuracy, Object attachment) {
+        long position;
+        int index;
+        while (true) {
+            position = mTail.get();
+            index = (int) position & mMask;
+            long sequence = mSequences.get(index);
+            if (sequence == position) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // cell still holds event of the previous lap
+                return false;
+            }
+            // otherwise position was claimed by another producer meanwhile
+        }
+        mKinds[index] = kind;
+        mSlots[index] = slot;
+        mTimes[index] = timeMillis;
+        mValues[index] = value;
+        mAccuracies[index] = accuracy;
+        mAttachments[index] = attachment;
+        mOfferNanos[index] = System.nanoTime();
+        // publishes columns written above to the consumer
+        mSequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Passes the oldest event to the consumer and frees its cell. Called on the consumer's thread only.
+     * @return false if queue is empty
+     */
+    public boolean poll(Consumer consumer) {
+        long position = mHead;
+        int index = (int) position & mMask;
+        if (mSequences.get(index) != position + 1) {
+            return false;
+        }
+        int kind = mKinds[index];
+        int slot = mSlots[index];
+        long timeMillis = mTimes[index];
+        double value = mValues[index];
+        double accuracy = mAccuracies[index];
+        Object attachment = mAttachments[index];
+        long latencyNanos = System.nanoTime() - mOfferNanos[index];
+        mAttachments[index] = null;
+        mSequences.set(index, position + mMask + 1);
+        mHead = position + 1;
+        consumer.onEvent(kind, slot, timeMillis, value, accuracy, attachment, latencyNanos);
+        return true;
+    }
+
+    /**
+     * @return number of events offered and not polled yet; approximate while producers offer
+     */
+    public int size() {
+        long size = mTail.get() - mHead;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+}
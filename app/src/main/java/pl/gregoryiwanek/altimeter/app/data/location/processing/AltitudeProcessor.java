@@ -0,0 +1,200 @@
+package pl.gregoryiwanek.altimeter.app.data.location.processing;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dedicated thread processing events of altitude sources in order of publishing. Sources publish
+ * samples and locations from their own threads into preallocated {@link AltitudeEventRing}, without
+ * locking or allocating; the processing thread is woken by a single message per batch of events
+ * and passes them to {@link EventHandler}. Events published while the queue is full, or while
+ * the thread is not started, are dropped and counted.
+ * <p>
+ * Queue depth, drops and time spent by events in the queue are counted for profiling; totals are
+ * logged when the thread quits. Started and quit on the main thread.
+ */
+public class AltitudeProcessor {
+
+    private static final String LOG_TAG = AltitudeProcessor.class.getSimpleName();
+
+    // has to be power of two
+    private static final int CAPACITY = 256;
+    private static final int EVENT_SAMPLE = 0;
+    private static final int EVENT_LOCATION = 1;
+
+    public interface EventHandler {
+
+        /**
+         * Called on the processing thread.
+         * @param accuracyMeters standard deviation of the altitude, NaN if unknown
+         */
+        void onSample(int slot, long timeMillis, double altitude, double accuracyMeters);
+
+        /**
+         * Called on the processing thread.
+         */
+        void onLocation(int slot, long timeMillis, Location location);
+    }
+
+    private final AltitudeEventRing mRing = new AltitudeEventRing(CAPACITY);
+    private final AltitudeEventRing.Consumer mConsumer = this::dispatch;
+    private final Runnable mDrainRunnable = this::drain;
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean(false);
+    private final AtomicLong mDroppedCount = new AtomicLong(0);
+    private volatile Handler mHandler;
+    private volatile EventHandler mEventHandler;
+    private HandlerThread mThread;
+
+    // written only on the processing thread
+    private volatile long mProcessedCount = 0;
+    private volatile long mTotalLatencyNanos = 0;
+    private volatile long mMaxLatencyNanos = 0;
+    private volatile int mMaxQueueDepth = 0;
+
+    public void setEventHandler(EventHandler eventHandler) {
+        mEventHandler = eventHandler;
+    }
+
+    /**
+     * Starts the processing thread, unless it is running. Events left in the queue since the thread
+     * quit are processed first.
+     */
+    public void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new HandlerThread("AltitudeProcessing", Process.THREAD_PRIORITY_DEFAULT);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mDrainScheduled.set(true);
+        mHandler.post(mDrainRunnable);
+    }
+
+    /**
+     * @return looper of the processing thread, null if it is not started
+     */
+    public Looper getLooper() {
+        return mThread != null ? mThread.getLooper() : null;
+    }
+
+    public void quit() {
+        if (mThread == null) {
+            return;
+        }
+        Log.d(LOG_TAG, getStatsString());
+        mHandler = null;
+        mThread.quit();
+        mThread = null;
+    }
+
+    /**
+     * Called on any thread.
+     */
+    public void publishSample(int slot, long timeMillis, double altitude, double accuracyMeters) {
+        publish(EVENT_SAMPLE, slot, timeMillis, altitude, accuracyMeters, null);
+    }
+
+    /**
+     * Called on any thread.
+     */
+    public void publishLocation(int slot, long timeMillis, Location location) {
+        publish(EVENT_LOCATION, slot, timeMillis, Double.NaN, Double.NaN, location);
+    }
+
+    /**
+     * @return number of events waiting for the processing thread
+     */
+    public int getQueueDepth() {
+        return mRing.size();
+    }
+
+    /**
+     * @return largest number of events found waiting by the processing thread
+     */
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    public long getProcessedCount() {
+        return mProcessedCount;
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return mean time from publishing to processing of an event, 0 if none was processed
+     */
+    public long getMeanLatencyNanos() {
+        long processed = mProcessedCount;
+        return processed == 0 ? 0 : mTotalLatencyNanos / processed;
+    }
+
+    public long getMaxLatencyNanos() {
+        return mMaxLatencyNanos;
+    }
+
+    private void publish(int kind, int slot, long timeMillis, double value, double accuracy, Object attachment) {
+        Handler handler = mHandler;
+        if (handler == null || !mRing.offer(kind, slot, timeMillis, value, accuracy, attachment)) {
+            mDroppedCount.incrementAndGet();
+            return;
+        }
+        if (mDrainScheduled.compareAndSet(false, true) && !handler.post(mDrainRunnable)) {
+            // thread has quit meanwhile, event is processed when it starts again
+            mDrainScheduled.set(false);
+        }
+    }
+
+    /**
+     * Processes at most one queue of events, so other messages of the thread aren't held back.
+     */
+    private void drain() {
+        mDrainScheduled.set(false);
+        int depth = mRing.size();
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+        for (int i = 0; i < CAPACITY && mRing.poll(mConsumer); i++) {
+            // events are passed to dispatch
+        }
+        Handler handler = mHandler;
+        if (handler != null && mRing.size() > 0 && mDrainScheduled.compareAndSet(false, true)) {
+            handler.post(mDrainRunnable);
+        }
+    }
+
+    private void dispatch(int kind, int slot, long timeMillis, double value, double accuracy, Object attachment,
+                          long latencyNanos) {
+        mProcessedCount++;
+        mTotalLatencyNanos += latencyNanos;
+        if (latencyNanos > mMaxLatencyNanos) {
+            mMaxLatencyNanos = latencyNanos;
+        }
+        EventHandler eventHandler = mEventHandler;
+        if (eventHandler == null) {
+            return;
+        }
+        if (kind == EVENT_LOCATION) {
+            eventHandler.onLocation(slot, timeMillis, (Location) attachment);
+        } else {
+            eventHandler.onSample(slot, timeMillis, value, accuracy);
+        }
+    }
+
+    private String getStatsString() {
+        return String.format(Locale.US,
+                "processed %d, dropped %d, queue depth %d (max %d), latency mean %.2f ms, max %.2f ms",
+                getProcessedCount(), getDroppedCount(), getQueueDepth(), getMaxQueueDepth(),
+                getMeanLatencyNanos() / 1e6, getMaxLatencyNanos() / 1e6);
+    }
+}
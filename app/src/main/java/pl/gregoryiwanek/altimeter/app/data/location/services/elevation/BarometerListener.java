@@ -6,25 +6,59 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 
-import rx.subjects.PublishSubject;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Consist Pressure Sensor listener. Returns updates of pressure sensor every interval set.
- * Uses JavaRx to return updates of value.
+ * Consist Pressure Sensor listener. Stays registered while listening and returns pressure
+ * altitude aggregated over every window of {@link #WINDOW_MILLIS}.
+ * Samples are batched in sensor's hardware FIFO, where supported, and delivered at most
+ * once per window to the background thread passed on registration, which aggregates them;
+ * only aggregated readings are passed to {@link ReadingCallback}. Samples are kept and aggregated
+ * as primitives, so sensor events allocate nothing.
+ * <p>
+ * Pressure altitude is computed against reference pressure taken when listener is registered;
+ * reference changed while listening is applied by the next registration, so readings of one
+ * recording don't jump when nearest airport's pressure is refreshed.
  */
 public class BarometerListener implements SensorEventListener {
 
-    private final PublishSubject<Double> mAltitudePublishSubject;
+    private static final int DEFAULT_SAMPLING_PERIOD_US = 200000;
+    private static final long WINDOW_MILLIS = 10000;
+    // more samples than expected per window, some sensors report faster than requested
+    private static final int WINDOW_CAPACITY = 128;
+
     private final Context mContext;
+    private final PressureWindow mWindow = new PressureWindow(WINDOW_CAPACITY,
+            TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS), TimeUnit.MICROSECONDS.toNanos(DEFAULT_SAMPLING_PERIOD_US));
+    private final Runnable mCloseWindowRunnable = this::closeWindowIfComplete;
     private Sensor mSensor;
     private boolean isListenerRegistered = false;
     private SensorManager mSensorManager;
-    private double mClosestAirportPressure = 0;
+    private Looper mSensorLooper;
+    private volatile Handler mSensorHandler;
+    private volatile double mClosestAirportPressure = 0;
+    private volatile float mReferencePressure;
+    private volatile ReadingCallback mReadingCallback;
+    private int mSamplingPeriodUs = DEFAULT_SAMPLING_PERIOD_US;
+
+    public interface ReadingCallback {
+
+        /**
+         * Called on the sensor thread once per window. Altitudes are in meters,
+         * outliers excluded.
+         * @param timeMillis time when window was closed
+         * @param sampleCount number of samples aggregated
+         */
+        void onReading(long timeMillis, int sampleCount, float meanAltitude, float medianAltitude,
+                       float minAltitude, float maxAltitude);
+    }
 
     public BarometerListener(Context context) {
         mContext = context;
-        mAltitudePublishSubject = PublishSubject.create();
         setPressureSensor();
     }
 
@@ -33,24 +67,87 @@ public class BarometerListener implements SensorEventListener {
         mSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
     }
 
-    public PublishSubject<Double> getPressureAltitudePublishSubject() {
-        return mAltitudePublishSubject;
+    public void setReadingCallback(ReadingCallback callback) {
+        mReadingCallback = callback;
     }
 
+    /**
+     * Called on the sensor thread. Batch delivered from FIFO is dispatched within single message
+     * of the thread, so window is checked after the whole batch.
+     */
     @Override
     public void onSensorChanged(SensorEvent event) {
-        String altitude = String.valueOf(SensorManager.getAltitude(
-                getPressure(), event.values[0]));
-        mAltitudePublishSubject.onNext(Double.valueOf(altitude));
+        Handler handler = mSensorHandler;
+        if (handler == null) {
+            return;
+        }
+        mWindow.add(event.timestamp, event.values[0]);
+        handler.removeCallbacks(mCloseWindowRunnable);
+        handler.post(mCloseWindowRunnable);
+    }
+
+    private void closeWindowIfComplete() {
+        ReadingCallback callback = mReadingCallback;
+        if (callback != null && mWindow.isComplete()) {
+            mWindow.close(System.currentTimeMillis(), mReferencePressure, callback);
+        }
+    }
+
+    /**
+     * Sets period between samples; applied at once if registered, by registering again.
+     * Samples of the current window are kept, so its reading isn't delayed by the change.
+     */
+    public void setSamplingPeriod(int samplingPeriodUs) {
+        if (samplingPeriodUs == mSamplingPeriodUs) {
+            return;
+        }
+        mSamplingPeriodUs = samplingPeriodUs;
+        if (isListenerRegistered) {
+            Looper looper = mSensorLooper;
+            long samplingPeriodNanos = TimeUnit.MICROSECONDS.toNanos(samplingPeriodUs);
+            unregisterListener();
+            register(looper, () -> mWindow.setSamplingPeriod(samplingPeriodNanos));
+        }
     }
 
-    public void registerListener() {
-        mSensorManager.registerListener(this, mSensor, SensorManager.SENSOR_DELAY_NORMAL);
+    /**
+     * Registers listener with reference pressure of the nearest airport, kept until unregistered.
+     * @param looper looper of the thread receiving and aggregating samples
+     */
+    public void registerListener(Looper looper) {
+        if (isListenerRegistered) {
+            return;
+        }
+        mReferencePressure = getPressure();
+        long samplingPeriodNanos = TimeUnit.MICROSECONDS.toNanos(mSamplingPeriodUs);
+        register(looper, () -> mWindow.reset(samplingPeriodNanos));
+    }
+
+    /**
+     * @param windowUpdate run on the sensor thread ahead of samples of this registration
+     */
+    private void register(Looper looper, Runnable windowUpdate) {
+        mSensorLooper = looper;
+        mSensorHandler = new Handler(looper);
+        // window is only accessed on the sensor thread
+        mSensorHandler.post(windowUpdate);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mSensorManager.registerListener(this, mSensor, mSamplingPeriodUs,
+                    (int) TimeUnit.MILLISECONDS.toMicros(WINDOW_MILLIS), mSensorHandler);
+        } else {
+            mSensorManager.registerListener(this, mSensor, mSamplingPeriodUs, mSensorHandler);
+        }
         isListenerRegistered = true;
     }
 
     public void unregisterListener() {
+        if (!isListenerRegistered) {
+            return;
+        }
         mSensorManager.unregisterListener(this);
+        mSensorHandler.removeCallbacks(mCloseWindowRunnable);
+        mSensorHandler = null;
+        mSensorLooper = null;
         isListenerRegistered = false;
     }
 
@@ -69,9 +166,10 @@ public class BarometerListener implements SensorEventListener {
         }
     }
 
+    /**
+     * Applied by the next {@link #registerListener(Looper)}.
+     */
     public void setClosestAirportPressure(double airportPressure) {
         mClosestAirportPressure = airportPressure;
     }
 }
-
-
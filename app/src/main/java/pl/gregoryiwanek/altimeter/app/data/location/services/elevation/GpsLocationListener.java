@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.ActivityCompat;
@@ -37,7 +38,12 @@ public class GpsLocationListener implements GoogleApiClient.ConnectionCallbacks,
     private final Context mContext;
     private GoogleApiClient mGoogleApiClient;
     private final EarthGravitationalModel mGravitationModel;
-    private boolean isFastLocationRequest = false;
+    private volatile boolean isFastLocationRequest = false;
+    private boolean isListening = false;
+    private int mPriority = LocationRequest.PRIORITY_HIGH_ACCURACY;
+    private long mInterval = Constants.GPS_INTERVAL_VALUE;
+    private long mFastestInterval = Constants.GPS_FASTEST_INTERVAL_VALUE;
+    private Looper mLooper = null;
 
     public GpsLocationListener(Context context, LocationChangedCallback callback, GpsElevationCallback gpsCallback) {
         mContext = context;
@@ -110,9 +116,31 @@ public class GpsLocationListener implements GoogleApiClient.ConnectionCallbacks,
     }
 
 
+    /**
+     * Sets thread receiving the following locations, correcting their altitude and calling callbacks.
+     * @param looper looper of the thread, null for the main thread
+     */
+    public void setLooper(Looper looper) {
+        mLooper = looper;
+    }
+
+    /**
+     * Sets parameters of location updates; applied at once if listening.
+     * @param priority priority of {@link LocationRequest}
+     */
+    public void setRequestParameters(int priority, long interval, long fastestInterval) {
+        mPriority = priority;
+        mInterval = interval;
+        mFastestInterval = fastestInterval;
+        if (isListening && !isFastLocationRequest) {
+            startListenForLocations(null);
+        }
+    }
+
     @Override
     public void startListenForLocations(FullInfoCallback callback) {
         isFastLocationRequest = false;
+        isListening = true;
         LocationRequest locationRequest = new LocationRequest();
         locationRequest = setStandardLocationRequest(locationRequest);
         new LocationSettingsRequest.Builder().addLocationRequest(locationRequest);
@@ -135,6 +163,7 @@ public class GpsLocationListener implements GoogleApiClient.ConnectionCallbacks,
 
     @Override
     public void stopListenForLocations(boolean isLocked) {
+        isListening = false;
         disconnectListener();
         if (isLocked) {
             mGoogleApiClient.disconnect();
@@ -146,9 +175,9 @@ public class GpsLocationListener implements GoogleApiClient.ConnectionCallbacks,
     }
 
     private LocationRequest setStandardLocationRequest(LocationRequest request) {
-        request.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-        request.setInterval(Constants.GPS_INTERVAL_VALUE);
-        request.setFastestInterval(Constants.GPS_FASTEST_INTERVAL_VALUE);
+        request.setPriority(mPriority);
+        request.setInterval(mInterval);
+        request.setFastestInterval(mFastestInterval);
         return request;
     }
 
@@ -167,7 +196,8 @@ public class GpsLocationListener implements GoogleApiClient.ConnectionCallbacks,
         } else {
             // remove old location request and add new one
             LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, this);
-            LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient, locationRequest, this);
+            LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient, locationRequest, this,
+                    mLooper != null ? mLooper : Looper.getMainLooper());
         }
     }
 
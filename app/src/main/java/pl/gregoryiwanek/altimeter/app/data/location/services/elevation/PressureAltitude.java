@@ -0,0 +1,46 @@
+package pl.gregoryiwanek.altimeter.app.data.location.services.elevation;
+
+/**
+ * Converts pressure to altitude by the same formula as
+ * {@link android.hardware.SensorManager#getAltitude(float, float)}, without its pow() call:
+ * altitude is interpolated in a table precomputed for ratios of pressure to reference pressure
+ * between {@link #MIN_RATIO} and {@link #MAX_RATIO} (about 9500 m to -1800 m). Error is below
+ * 0.02 m across the table; ratios out of the table are computed exactly.
+ */
+final class PressureAltitude {
+
+    private static final float MIN_RATIO = 0.25f;
+    private static final float MAX_RATIO = 1.25f;
+    private static final int TABLE_SIZE = 1024;
+    private static final float STEPS_PER_RATIO = (TABLE_SIZE - 1) / (MAX_RATIO - MIN_RATIO);
+    private static final float[] ALTITUDES = new float[TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            ALTITUDES[i] = (float) exactAltitude(MIN_RATIO + i / (double) STEPS_PER_RATIO);
+        }
+    }
+
+    private PressureAltitude() {}
+
+    /**
+     * @param referencePressure pressure at sea level, in hPa
+     * @param pressure measured pressure, in hPa
+     * @return altitude in meters
+     */
+    static float getAltitude(float referencePressure, float pressure) {
+        float ratio = pressure / referencePressure;
+        float position = (ratio - MIN_RATIO) * STEPS_PER_RATIO;
+        // negated, so NaN is computed exactly as well
+        if (!(position >= 0 && position < TABLE_SIZE - 1)) {
+            return (float) exactAltitude(ratio);
+        }
+        int index = (int) position;
+        float fraction = position - index;
+        return ALTITUDES[index] + (ALTITUDES[index + 1] - ALTITUDES[index]) * fraction;
+    }
+
+    private static double exactAltitude(double ratio) {
+        return 44330 * (1 - Math.pow(ratio, 1 / 5.255));
+    }
+}
@@ -0,0 +1,173 @@
+package pl.gregoryiwanek.altimeter.app.data.location.services.elevation;
+
+/**
+ * Collects pressure samples of one time window in preallocated ring buffer and aggregates them.
+ * Window is complete when samples cover its length, with tolerance of one sampling period;
+ * if more samples arrive than the buffer holds, the oldest ones are overwritten.
+ * <p>
+ * Aggregation rejects outliers, samples further from median than {@link #OUTLIER_DEVIATIONS}
+ * robust standard deviations (estimated from median absolute deviation). Median and deviation
+ * are selected in place, in scratch arrays allocated with the window, so neither adding samples
+ * nor aggregating them allocates. Not thread-safe.
+ */
+class PressureWindow {
+
+    private static final float OUTLIER_DEVIATIONS = 3;
+    // standard deviation of normal distribution per its median absolute deviation
+    private static final float DEVIATIONS_PER_MAD = 1.4826f;
+    // pressure sensors resolve about 0.01 hPa; smaller deviation rejects valid samples
+    private static final float MIN_OUTLIER_DISTANCE = 0.03f;
+
+    private final float[] mRing;
+    private final float[] mSamples;
+    private final float[] mDistances;
+    private final long mWindowNanos;
+    private long mToleranceNanos;
+    private int mHead = 0;
+    private int mCount = 0;
+    private long mStartNanos = -1;
+    private long mLastNanos = 0;
+
+    /**
+     * @param capacity number of held samples; has to be power of two
+     */
+    PressureWindow(int capacity, long windowNanos, long samplingPeriodNanos) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be power of two: " + capacity);
+        }
+        mRing = new float[capacity];
+        mSamples = new float[capacity];
+        mDistances = new float[capacity];
+        mWindowNanos = windowNanos;
+        mToleranceNanos = samplingPeriodNanos;
+    }
+
+    void add(long timestampNanos, float pressure) {
+        if (mStartNanos < 0) {
+            mStartNanos = timestampNanos - mToleranceNanos;
+        }
+        mRing[mHead] = pressure;
+        mHead = (mHead + 1) & (mRing.length - 1);
+        if (mCount < mRing.length) {
+            mCount++;
+        }
+        mLastNanos = timestampNanos;
+    }
+
+    boolean isComplete() {
+        return mCount > 0 && mLastNanos - mStartNanos >= mWindowNanos - mToleranceNanos;
+    }
+
+    /**
+     * Aggregates collected samples, passes them to the callback and starts the next window
+     * where this one ended. Does nothing if window has no samples.
+     * @param referencePressure pressure at sea level, in hPa
+     */
+    void close(long timeMillis, float referencePressure, BarometerListener.ReadingCallback callback) {
+        if (mCount == 0) {
+            return;
+        }
+        int count = mCount;
+        for (int i = 0; i < count; i++) {
+            mSamples[i] = mRing[(mHead - count + i) & (mRing.length - 1)];
+        }
+        float median = median(mSamples, count);
+        for (int i = 0; i < count; i++) {
+            mDistances[i] = Math.abs(mSamples[i] - median);
+        }
+        float maxDistance = Math.max(MIN_OUTLIER_DISTANCE,
+                OUTLIER_DEVIATIONS * DEVIATIONS_PER_MAD * median(mDistances, count));
+
+        double sum = 0;
+        int kept = 0;
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            float pressure = mSamples[i];
+            if (Math.abs(pressure - median) <= maxDistance) {
+                sum += pressure;
+                kept++;
+                min = Math.min(min, pressure);
+                max = Math.max(max, pressure);
+            }
+        }
+        mCount = 0;
+        mStartNanos = mLastNanos;
+        // median is always kept; lower pressure is higher altitude
+        callback.onReading(timeMillis, kept,
+                PressureAltitude.getAltitude(referencePressure, (float) (sum / kept)),
+                PressureAltitude.getAltitude(referencePressure, median),
+                PressureAltitude.getAltitude(referencePressure, max),
+                PressureAltitude.getAltitude(referencePressure, min));
+    }
+
+    /**
+     * Keeps collected samples; tolerance of completion follows the new period.
+     */
+    void setSamplingPeriod(long samplingPeriodNanos) {
+        mToleranceNanos = samplingPeriodNanos;
+    }
+
+    /**
+     * Drops collected samples.
+     * @param samplingPeriodNanos period of the following samples
+     */
+    void reset(long samplingPeriodNanos) {
+        mToleranceNanos = samplingPeriodNanos;
+        mHead = 0;
+        mCount = 0;
+        mStartNanos = -1;
+    }
+
+    /**
+     * Reorders first count values of the array.
+     */
+    static float median(float[] values, int count) {
+        int middle = count / 2;
+        float upper = select(values, count, middle);
+        if (count % 2 == 1) {
+            return upper;
+        }
+        // values before the middle are not greater than it, the lower middle is the greatest of them
+        float lower = values[0];
+        for (int i = 1; i < middle; i++) {
+            lower = Math.max(lower, values[i]);
+        }
+        return (lower + upper) / 2;
+    }
+
+    /**
+     * Quickselect: moves k-th smallest of first count values to position k, smaller values before
+     * and greater after it.
+     */
+    private static float select(float[] values, int count, int k) {
+        int left = 0;
+        int right = count - 1;
+        while (left < right) {
+            float pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    float swap = values[i];
+                    values[i++] = values[j];
+                    values[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+}
@@ -0,0 +1,58 @@
+package pl.gregoryiwanek.altimeter.app.data.location.sources;
+
+import android.location.Location;
+import android.os.Looper;
+
+import pl.gregoryiwanek.altimeter.app.data.location.MotionState;
+
+/**
+ * Plugin providing altitude samples, registered in {@link AltitudeSourceRegistry}. Every started
+ * source works on its own thread, whose looper is passed to {@link #start(Looper, int, SampleCallback)},
+ * and reports samples as primitives, so reporting allocates nothing.
+ */
+public interface AltitudeSource {
+
+    interface SampleCallback {
+
+        /**
+         * Called on the source's thread.
+         * @param slot slot of the source, passed to start
+         * @param altitude altitude in meters
+         * @param accuracyMeters standard deviation of the altitude, NaN if unknown
+         */
+        void onSample(int slot, long timeMillis, double altitude, double accuracyMeters);
+
+        /**
+         * Passes location of the source's fix, in order with its samples, for sources which
+         * provide locations. Called on the source's thread.
+         */
+        void onLocation(int slot, long timeMillis, Location location);
+    }
+
+    /**
+     * @return unique name of the source
+     */
+    String getName();
+
+    /**
+     * @return true if only changes of reported altitude are reliable, like of pressure altitude
+     */
+    boolean isRelative();
+
+    /**
+     * Starts reporting samples. Called on the main thread.
+     * @param looper looper of the thread dedicated to the source
+     */
+    void start(Looper looper, int slot, SampleCallback callback);
+
+    /**
+     * Stops reporting samples. Called on the main thread.
+     */
+    void stop();
+
+    /**
+     * Adjusts sampling rate to the user's motion; applied at once if started.
+     * Called on the main thread.
+     */
+    void setMotionState(MotionState state);
+}
@@ -0,0 +1,193 @@
+package pl.gregoryiwanek.altimeter.app.data.location.sources;
+
+import android.location.Location;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import pl.gregoryiwanek.altimeter.app.data.location.MotionState;
+import pl.gregoryiwanek.altimeter.app.data.location.fusion.AltitudeFusionEngine;
+import pl.gregoryiwanek.altimeter.app.data.location.processing.AltitudeProcessor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Holds altitude sources in fixed slots, starts enabled ones, each on its own thread, and publishes
+ * their samples to {@link AltitudeProcessor}, which passes them to {@link SampleListener} on its
+ * thread, in order of publishing. Samples of sources stopped meanwhile are skipped. Neither
+ * reporting nor passing a sample allocates.
+ * <p>
+ * Sources are registered, enabled and started on the main thread.
+ */
+public class AltitudeSourceRegistry implements AltitudeSource.SampleCallback {
+
+    public static final int MAX_SOURCES = AltitudeFusionEngine.MAX_SOURCES;
+
+    public interface SampleListener {
+
+        /**
+         * Called on the processing thread.
+         */
+        void onSample(int slot, AltitudeSource source, long timeMillis, double altitude, double accuracyMeters);
+
+        /**
+         * Called on the processing thread, after samples reported before the location.
+         */
+        void onLocation(int slot, AltitudeSource source, Location location);
+    }
+
+    private final AltitudeSource[] mSources = new AltitudeSource[MAX_SOURCES];
+    private final HandlerThread[] mThreads = new HandlerThread[MAX_SOURCES];
+    private final boolean[] mEnabled = new boolean[MAX_SOURCES];
+    private final boolean[] mStarted = new boolean[MAX_SOURCES];
+    private int mCount = 0;
+    // bit of every started slot, read on the processing thread
+    private volatile int mStartedMask = 0;
+    private final AltitudeProcessor mProcessor;
+    private volatile SampleListener mListener;
+
+    public AltitudeSourceRegistry(@NonNull AltitudeProcessor processor) {
+        mProcessor = checkNotNull(processor);
+        mProcessor.setEventHandler(new AltitudeProcessor.EventHandler() {
+            @Override
+            public void onSample(int slot, long timeMillis, double altitude, double accuracyMeters) {
+                SampleListener listener = mListener;
+                if (isStarted(slot) && listener != null) {
+                    listener.onSample(slot, mSources[slot], timeMillis, altitude, accuracyMeters);
+                }
+            }
+
+            @Override
+            public void onLocation(int slot, long timeMillis, Location location) {
+                SampleListener listener = mListener;
+                if (isStarted(slot) && listener != null) {
+                    listener.onLocation(slot, mSources[slot], location);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return slot of the source
+     */
+    public int register(@NonNull AltitudeSource source) {
+        checkNotNull(source);
+        if (mCount == MAX_SOURCES) {
+            throw new IllegalStateException("Too many altitude sources, maximum is " + MAX_SOURCES);
+        }
+        for (int i = 0; i < mCount; i++) {
+            if (mSources[i].getName().equals(source.getName())) {
+                throw new IllegalArgumentException("Source already registered: " + source.getName());
+            }
+        }
+        mSources[mCount] = source;
+        return mCount++;
+    }
+
+    public void setSampleListener(SampleListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return source registered with the name, null if there is none
+     */
+    public AltitudeSource getSource(@NonNull String name) {
+        for (int i = 0; i < mCount; i++) {
+            if (mSources[i].getName().equals(name)) {
+                return mSources[i];
+            }
+        }
+        return null;
+    }
+
+    public int getSlot(@NonNull AltitudeSource source) {
+        for (int i = 0; i < mCount; i++) {
+            if (mSources[i] == source) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Source not registered: " + source.getName());
+    }
+
+    /**
+     * Applied by the next {@link #start()}.
+     */
+    public void setEnabled(@NonNull AltitudeSource source, boolean isEnabled) {
+        mEnabled[getSlot(source)] = isEnabled;
+    }
+
+    public boolean isEnabled(@NonNull AltitudeSource source) {
+        return mEnabled[getSlot(source)];
+    }
+
+    public void disableAll() {
+        for (int i = 0; i < mCount; i++) {
+            mEnabled[i] = false;
+        }
+    }
+
+    /**
+     * Starts enabled sources which are not started yet.
+     */
+    public void start() {
+        for (int i = 0; i < mCount; i++) {
+            if (mEnabled[i] && !mStarted[i]) {
+                if (mThreads[i] == null) {
+                    mThreads[i] = new HandlerThread("AltitudeSource-" + mSources[i].getName(),
+                            Process.THREAD_PRIORITY_BACKGROUND);
+                    mThreads[i].start();
+                }
+                mStarted[i] = true;
+                mStartedMask |= 1 << i;
+                mSources[i].start(mThreads[i].getLooper(), i, this);
+            }
+        }
+    }
+
+    public void stop() {
+        for (int i = 0; i < mCount; i++) {
+            stop(i);
+        }
+    }
+
+    public void setMotionState(MotionState state) {
+        for (int i = 0; i < mCount; i++) {
+            mSources[i].setMotionState(state);
+        }
+    }
+
+    /**
+     * Stops all sources and their threads; sources can still be started again.
+     */
+    public void release() {
+        stop();
+        for (int i = 0; i < mCount; i++) {
+            if (mThreads[i] != null) {
+                mThreads[i].quit();
+                mThreads[i] = null;
+            }
+        }
+    }
+
+    private void stop(int slot) {
+        if (mStarted[slot]) {
+            mStartedMask &= ~(1 << slot);
+            mSources[slot].stop();
+            mStarted[slot] = false;
+        }
+    }
+
+    private boolean isStarted(int slot) {
+        return (mStartedMask & (1 << slot)) != 0;
+    }
+
+    @Override
+    public void onSample(int slot, long timeMillis, double altitude, double accuracyMeters) {
+        mProcessor.publishSample(slot, timeMillis, altitude, accuracyMeters);
+    }
+
+    @Override
+    public void onLocation(int slot, long timeMillis, Location location) {
+        mProcessor.publishLocation(slot, timeMillis, location);
+    }
+}
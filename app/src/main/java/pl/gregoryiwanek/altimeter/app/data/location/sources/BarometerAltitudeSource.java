@@ -0,0 +1,51 @@
+package pl.gregoryiwanek.altimeter.app.data.location.sources;
+
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import pl.gregoryiwanek.altimeter.app.data.location.MotionState;
+import pl.gregoryiwanek.altimeter.app.data.location.services.elevation.BarometerListener;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Pressure altitude of {@link BarometerListener}: median of every aggregated window.
+ */
+public class BarometerAltitudeSource implements AltitudeSource {
+
+    public static final String NAME = "barometer";
+
+    private final BarometerListener mListener;
+
+    public BarometerAltitudeSource(@NonNull BarometerListener listener) {
+        mListener = checkNotNull(listener);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isRelative() {
+        return true;
+    }
+
+    @Override
+    public void start(Looper looper, int slot, SampleCallback callback) {
+        mListener.setReadingCallback((time, count, mean, median, min, max) ->
+                callback.onSample(slot, time, median, Double.NaN));
+        mListener.registerListener(looper);
+    }
+
+    @Override
+    public void stop() {
+        mListener.unregisterListener();
+        mListener.setReadingCallback(null);
+    }
+
+    @Override
+    public void setMotionState(MotionState state) {
+        mListener.setSamplingPeriod(state.getBarometerPeriodUs());
+    }
+}
@@ -0,0 +1,99 @@
+package pl.gregoryiwanek.altimeter.app.data.location.sources;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import pl.gregoryiwanek.altimeter.app.data.location.LocationResponse;
+import pl.gregoryiwanek.altimeter.app.data.location.MotionState;
+import pl.gregoryiwanek.altimeter.app.data.location.services.elevation.GpsLocationListener;
+
+/**
+ * Altitude of GPS fixes, received and corrected by geoid model on the source's thread.
+ * While the source is started, fixes themselves are reported after their altitude, to be recorded
+ * in order with samples; fixes received while it is not started, when location is identified,
+ * are passed to the location callback on the main thread.
+ */
+public class GpsAltitudeSource implements AltitudeSource {
+
+    public static final String NAME = "gps";
+
+    // vertical error of GPS fix is about one and half of its horizontal accuracy
+    private static final float VERTICAL_ACCURACY_FACTOR = 1.5f;
+
+    private final GpsLocationListener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LocationResponse.GpsElevationCallback mLocationCallback;
+    private volatile SampleCallback mCallback;
+    private volatile int mSlot;
+
+    public GpsAltitudeSource(@NonNull Context context,
+                             @NonNull LocationResponse.LocationChangedCallback initialLocationCallback,
+                             @NonNull LocationResponse.GpsElevationCallback locationCallback) {
+        mLocationCallback = locationCallback;
+        mListener = new GpsLocationListener(context,
+                location -> mMainHandler.post(() -> initialLocationCallback.onInitialLocationIdentified(location)),
+                this::onLocationFound);
+    }
+
+    public void identifyCurrentLocation() {
+        mListener.identifyCurrentLocation();
+    }
+
+    /**
+     * Disconnects from location services, once session is locked.
+     */
+    public void disconnect() {
+        mListener.stopListenForLocations(true);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isRelative() {
+        return false;
+    }
+
+    @Override
+    public void start(Looper looper, int slot, SampleCallback callback) {
+        mSlot = slot;
+        mCallback = callback;
+        mListener.setLooper(looper);
+        mListener.startListenForLocations(null);
+    }
+
+    @Override
+    public void stop() {
+        mCallback = null;
+        mListener.stopListenForLocations(false);
+    }
+
+    @Override
+    public void setMotionState(MotionState state) {
+        mListener.setRequestParameters(state.getGpsPriority(), state.getGpsIntervalMillis(),
+                state.getGpsFastestIntervalMillis());
+    }
+
+    /**
+     * Called on the source's thread.
+     */
+    private void onLocationFound(Location location) {
+        SampleCallback callback = mCallback;
+        if (callback == null) {
+            mMainHandler.post(() -> mLocationCallback.onGpsLocationFound(location));
+            return;
+        }
+        long time = System.currentTimeMillis();
+        if (location.getAltitude() != 0) {
+            double accuracy = location.hasAccuracy()
+                    ? location.getAccuracy() * VERTICAL_ACCURACY_FACTOR : Double.NaN;
+            callback.onSample(mSlot, time, location.getAltitude(), accuracy);
+        }
+        callback.onLocation(mSlot, time, location);
+    }
+}
@@ -0,0 +1,84 @@
+package pl.gregoryiwanek.altimeter.app.data.location.sources;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import pl.gregoryiwanek.altimeter.app.data.location.MotionState;
+import pl.gregoryiwanek.altimeter.app.data.location.services.elevation.NetworkTaskRx;
+import pl.gregoryiwanek.altimeter.app.utils.Constants;
+
+/**
+ * Elevation of the current location from Google Maps Elevation API, looked up periodically
+ * on the source's thread. Location is updated by the owner, from any thread.
+ */
+public class NetworkAltitudeSource implements AltitudeSource {
+
+    public static final String NAME = "network";
+
+    // elevation of the ground at location, while user can be above it
+    private static final double ELEVATION_ACCURACY = 10;
+
+    private final Runnable mLookupRunnable = this::lookupElevation;
+    private volatile Location mLocation;
+    private volatile long mInterval = Constants.NETWORK_INTERVAL_VALUE;
+    private volatile Handler mHandler;
+    private SampleCallback mCallback;
+    private int mSlot;
+
+    public void setLocation(Location location) {
+        mLocation = location;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isRelative() {
+        return false;
+    }
+
+    @Override
+    public void start(Looper looper, int slot, SampleCallback callback) {
+        mSlot = slot;
+        mCallback = callback;
+        mHandler = new Handler(looper);
+        mHandler.post(mLookupRunnable);
+    }
+
+    @Override
+    public void stop() {
+        Handler handler = mHandler;
+        mHandler = null;
+        if (handler != null) {
+            handler.removeCallbacks(mLookupRunnable);
+        }
+    }
+
+    @Override
+    public void setMotionState(MotionState state) {
+        mInterval = state.getNetworkIntervalMillis();
+    }
+
+    private void lookupElevation() {
+        Location location = mLocation;
+        if (location != null) {
+            try {
+                double elevation = new NetworkTaskRx(location).getElevationObservable().toBlocking().single();
+                // zero is returned when elevation wasn't found
+                if (elevation != 0 && mHandler != null) {
+                    mCallback.onSample(mSlot, System.currentTimeMillis(), Math.round(elevation),
+                            ELEVATION_ACCURACY);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        Handler handler = mHandler;
+        if (handler != null) {
+            handler.postDelayed(mLookupRunnable, mInterval);
+        }
+    }
+}
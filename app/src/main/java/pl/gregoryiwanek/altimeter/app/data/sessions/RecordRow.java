@@ -0,0 +1,62 @@
+package pl.gregoryiwanek.altimeter.app.data.sessions;
+
+/**
+ * Single saved record of the session, decoded into primitive values. Instances returned by
+ * lazy record lists are reused: values are valid only until the next row is read, so they
+ * have to be copied if kept.
+ */
+public class RecordRow {
+
+    private long mId;
+    private double mLatitude;
+    private double mLongitude;
+    private double mAltitude;
+    private long mDate;
+    private String mAddress;
+    private double mDistance;
+
+    public void set(long id, double latitude, double longitude, double altitude, long date,
+                    String address, double distance) {
+        mId = id;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mAltitude = altitude;
+        mDate = date;
+        mAddress = address;
+        mDistance = distance;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return altitude in meters, NaN if unknown
+     */
+    public double getAltitude() {
+        return mAltitude;
+    }
+
+    /**
+     * @return time of the record in milliseconds, 0 if unknown
+     */
+    public long getDate() {
+        return mDate;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public double getDistance() {
+        return mDistance;
+    }
+}
@@ -4,8 +4,6 @@ import android.location.Location;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 /**
@@ -32,15 +30,11 @@ public class Session {
     private Double mMaxHeight = (double) -10000;
     private Location mLastLocation = null;
     private Location mCurrLocation = null;
-    private ArrayList<Location> mLocationList = null;
-    private ArrayList<GraphPoint> mGraphList = null;
-    private ArrayList<RecordPoint> mRecordPointList = null;
-
-    // temporary variables
-    // TODO: 05.07.2017 variables to remove
-    private String mDistanceStringTemporary = "0";
-    private String mDateTemporary = "";
-    private String mCurrElevationTemporary = "";
+    // altitude stored with appended location point, NaN until elevation is known
+    private double mPointAltitude = Double.NaN;
+    private final TrackBuffer mTrack = new TrackBuffer();
+    private final TrackBuffer mGraph = new TrackBuffer();
+    private SessionSummary mSummary = new SessionSummary();
 
     /**
      * Use this constructor to create new recording session. Unique ID generated automatically.
@@ -61,45 +55,44 @@ public class Session {
         mTitle = title;
         mDescription = description;
         mId = id;
-        mLocationList = new ArrayList<>();
-        mGraphList = new ArrayList<>();
-        mRecordPointList = new ArrayList<>();
     }
 
+    /**
+     * Appends recorded point of the location, with current elevation, distance and address.
+     */
     public void appendLocationPoint(Location location) {
-        mLocationList.add(location);
-        // TODO: 05.07.2017 remove append record point
-        appendRecordPoint(location);
+        mTrack.append(location.getTime(), location.getLatitude(), location.getLongitude(),
+                mPointAltitude, mDistance, mAddress);
     }
 
-    public ArrayList<Location> getLocationList() {
-        return mLocationList;
+    /**
+     * @return recorded points of the session; positions of the map and saved records
+     */
+    public TrackBuffer getTrack() {
+        return mTrack;
     }
 
     public void appendGraphPoint(long xValue, double yValue) {
-        GraphPoint point = new GraphPoint(xValue, yValue);
-        mGraphList.add(point);
+        mGraph.append(xValue, Double.NaN, Double.NaN, yValue, Double.NaN, null);
+        // graph points are not saved; evicted part of the graph is read from saved records
+        mGraph.markSpilled(mGraph.getEndIndex());
     }
 
-    // TODO: 07.07.2017 remove for loop; added just to increase number of points
-    public void appendRecordPoint(Location location) {
-        // TODO: 11.07.2017 to remove if else, merge that
-        mRecordPointList.add(
-                new RecordPoint.Builder(String.valueOf(location.getLatitude()), String.valueOf(location.getLongitude()))
-                        .setAltitude(mCurrElevationTemporary)
-                        .setDate(mDateTemporary)
-                        .setAddress(mAddress)
-                        .setDistance(mDistanceStringTemporary)
-                        .build()
-        );
-    }
-
-    public ArrayList<RecordPoint> getRecordList() {
-        return mRecordPointList;
+    /**
+     * Bounds points kept in memory during recording; older points are read from saved records.
+     * @param maxPoints number of the newest points to keep, 0 if unbounded
+     * @param maxAgeMillis time span of kept points, 0 if unbounded
+     */
+    public void setRecordingWindow(int maxPoints, long maxAgeMillis) {
+        mTrack.setWindow(maxPoints, maxAgeMillis);
+        mGraph.setWindow(maxPoints, maxAgeMillis);
     }
 
-    public ArrayList<GraphPoint> getGraphList() {
-        return mGraphList;
+    /**
+     * @return points of the altitude graph: time and altitude, without position
+     */
+    public TrackBuffer getGraph() {
+        return mGraph;
     }
 
     public String getId() {
@@ -160,12 +153,16 @@ public class Session {
 
     public void setCurrentElevation(Double elevation) {
         mCurrElevation = elevation;
-        // TODO: 05.07.2017 to remove temporary variable
-        mCurrElevationTemporary = String.valueOf(elevation);
+        mPointAltitude = elevation;
     }
 
-    public void setElevationOnList(Double elevation) {
-        mLocationList.get(mLocationList.size()-1).setAltitude(elevation);
+    /**
+     * Sets elevation of the last recorded point.
+     */
+    public void setElevationOnList(double elevation) {
+        if (!mTrack.isEmpty()) {
+            mTrack.setAltitude(mTrack.size() - 1, elevation);
+        }
     }
 
     public Location getLastLocation() {
@@ -206,8 +203,6 @@ public class Session {
 
     public void setDistance(Double distance) {
         mDistance = distance;
-        // TODO: 05.07.2017 remove this distance temporary
-        mDistanceStringTemporary = String.valueOf(distance);
     }
 
     public Double getMinHeight() {
@@ -232,8 +227,17 @@ public class Session {
 
     public void setCurrLocation(Location currLocation) {
         mCurrLocation = currLocation;
-        // TODO: 05.07.2017 remove date temporary
-        mDateTemporary = String.valueOf(mCurrLocation.getTime());
+    }
+
+    /**
+     * @return summary of the session's saved records, as loaded from database
+     */
+    public SessionSummary getSummary() {
+        return mSummary;
+    }
+
+    public void setSummary(SessionSummary summary) {
+        mSummary = summary;
     }
 
     public boolean isCompleted() {
@@ -270,7 +274,8 @@ public class Session {
         mMaxHeight = (double) -10000;
         mLastLocation = null;
         mCurrLocation = null;
-        mLocationList.clear();
-        mGraphList.clear();
+        mPointAltitude = Double.NaN;
+        mTrack.clear();
+        mGraph.clear();
     }
 }
@@ -0,0 +1,126 @@
+package pl.gregoryiwanek.altimeter.app.data.sessions;
+
+/**
+ * Summary of the session's records: number of points, time range, bounding box and total
+ * ascent and descent. Updated incrementally with every saved point, so it never requires
+ * scan of the records.
+ */
+public class SessionSummary {
+
+    private int mPointCount = 0;
+    private long mStartTime = 0;
+    private long mEndTime = 0;
+    private boolean mHasBounds = false;
+    private double mMinLatitude = 0;
+    private double mMaxLatitude = 0;
+    private double mMinLongitude = 0;
+    private double mMaxLongitude = 0;
+    private double mAscent = 0;
+    private double mDescent = 0;
+    private double mLastAltitude = Double.NaN;
+
+    public SessionSummary() {}
+
+    public SessionSummary(int pointCount, long startTime, long endTime, double ascent, double descent,
+                          double lastAltitude) {
+        mPointCount = pointCount;
+        mStartTime = startTime;
+        mEndTime = endTime;
+        mAscent = ascent;
+        mDescent = descent;
+        mLastAltitude = lastAltitude;
+    }
+
+    /**
+     * Adds next point of the session. Points have to be added in order of their time.
+     * @param latitude point's latitude, NaN if unknown
+     * @param longitude point's longitude, NaN if unknown
+     * @param altitude point's altitude, NaN if unknown
+     * @param time point's time in milliseconds, 0 if unknown
+     */
+    public void addPoint(double latitude, double longitude, double altitude, long time) {
+        if (time != 0) {
+            if (mStartTime == 0) {
+                mStartTime = time;
+            }
+            mEndTime = time;
+        }
+        if (!Double.isNaN(latitude) && !Double.isNaN(longitude)) {
+            setBounds(latitude, latitude, longitude, longitude);
+        }
+        if (!Double.isNaN(altitude)) {
+            if (!Double.isNaN(mLastAltitude)) {
+                double change = altitude - mLastAltitude;
+                if (change > 0) {
+                    mAscent += change;
+                } else {
+                    mDescent -= change;
+                }
+            }
+            mLastAltitude = altitude;
+        }
+        mPointCount++;
+    }
+
+    /**
+     * Extends bounding box of the session to contain given one.
+     */
+    public void setBounds(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        if (mHasBounds) {
+            mMinLatitude = Math.min(mMinLatitude, minLatitude);
+            mMaxLatitude = Math.max(mMaxLatitude, maxLatitude);
+            mMinLongitude = Math.min(mMinLongitude, minLongitude);
+            mMaxLongitude = Math.max(mMaxLongitude, maxLongitude);
+        } else {
+            mMinLatitude = minLatitude;
+            mMaxLatitude = maxLatitude;
+            mMinLongitude = minLongitude;
+            mMaxLongitude = maxLongitude;
+            mHasBounds = true;
+        }
+    }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    public long getEndTime() {
+        return mEndTime;
+    }
+
+    public boolean hasBounds() {
+        return mHasBounds;
+    }
+
+    public double getMinLatitude() {
+        return mMinLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return mMaxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return mMinLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return mMaxLongitude;
+    }
+
+    public double getAscent() {
+        return mAscent;
+    }
+
+    public double getDescent() {
+        return mDescent;
+    }
+
+    public double getLastAltitude() {
+        return mLastAltitude;
+    }
+}
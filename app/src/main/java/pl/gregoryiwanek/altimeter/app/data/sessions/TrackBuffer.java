@@ -0,0 +1,257 @@
+package pl.gregoryiwanek.altimeter.app.data.sessions;
+
+import java.util.Arrays;
+
+/**
+ * Columnar buffer of recorded samples: time, latitude, longitude, altitude, distance and address,
+ * each kept in its own primitive array. Columns are split into chunks of {@link #CHUNK_SIZE}
+ * samples, so growing the buffer never copies samples; appending allocates nothing but a new chunk
+ * once per {@link #CHUNK_SIZE} samples. Graph, map and persistence read samples by position,
+ * straight from the columns.
+ * <p>
+ * Every appended sample gets an index, counted from creation of the buffer. Clearing the buffer
+ * removes its samples but doesn't reset the counting, so indexes of samples already passed
+ * to persistence stay valid. Buffer is not thread-safe.
+ * <p>
+ * Buffer can be bounded by recording window ({@link #setWindow(int, long)}): chunks of the oldest
+ * samples outside the window are evicted and their arrays reused, as a ring, so memory use stays
+ * constant over the length of recording. Only samples marked as spilled to storage
+ * ({@link #markSpilled(int)}) are evicted; older samples are read back from storage.
+ */
+public final class TrackBuffer {
+
+    public static final int CHUNK_SIZE = 512;
+    private static final int CHUNK_SHIFT = 9;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // has to be power of two
+    private static final int INITIAL_CHUNKS = 4;
+
+    private long[][] mTimes = new long[INITIAL_CHUNKS][];
+    private double[][] mLatitudes = new double[INITIAL_CHUNKS][];
+    private double[][] mLongitudes = new double[INITIAL_CHUNKS][];
+    private double[][] mAltitudes = new double[INITIAL_CHUNKS][];
+    private double[][] mDistances = new double[INITIAL_CHUNKS][];
+    // consecutive samples share the same address instance
+    private String[][] mAddresses = new String[INITIAL_CHUNKS][];
+    // slot of chunk tables holding the first chunk
+    private int mFirstChunk = 0;
+    private int mSize = 0;
+    private int mStartIndex = 0;
+
+    private int mMaxPoints = 0;
+    private long mMaxAgeMillis = 0;
+    private int mSpilledIndex = 0;
+    private int mEvictedCount = 0;
+    private long mFirstTime = 0;
+
+    /**
+     * Bounds number of held samples. Window is applied to the following appends.
+     * @param maxPoints number of the newest samples to hold, 0 if unbounded
+     * @param maxAgeMillis age of the oldest held sample relative to the newest one, 0 if unbounded
+     */
+    public void setWindow(int maxPoints, long maxAgeMillis) {
+        mMaxPoints = maxPoints;
+        mMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Marks samples with lower index as written to storage, so they can be evicted.
+     */
+    public void markSpilled(int index) {
+        mSpilledIndex = Math.max(mSpilledIndex, index);
+    }
+
+    /**
+     * @param altitude altitude in meters, NaN if unknown
+     * @param address address of the sample, null if unknown
+     */
+    public void append(long time, double latitude, double longitude, double altitude, double distance,
+                       String address) {
+        evictOutsideWindow(time);
+        int chunk = mSize >>> CHUNK_SHIFT;
+        if (chunk == mTimes.length) {
+            growChunkTables();
+        }
+        int slot = slot(chunk);
+        if (mTimes[slot] == null) {
+            allocateChunk(slot);
+        }
+        if (getTotalCount() == 0) {
+            mFirstTime = time;
+        }
+        int i = mSize & CHUNK_MASK;
+        mTimes[slot][i] = time;
+        mLatitudes[slot][i] = latitude;
+        mLongitudes[slot][i] = longitude;
+        mAltitudes[slot][i] = altitude;
+        mDistances[slot][i] = distance;
+        mAddresses[slot][i] = address;
+        mSize++;
+    }
+
+    /**
+     * @return number of samples held by the buffer
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return number of samples appended since the buffer was cleared, including evicted ones
+     */
+    public int getTotalCount() {
+        return mEvictedCount + mSize;
+    }
+
+    /**
+     * @return number of samples evicted since the buffer was cleared
+     */
+    public int getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    /**
+     * @return time of the first sample appended since the buffer was cleared, even if evicted
+     */
+    public long getFirstTime() {
+        return mFirstTime;
+    }
+
+    /**
+     * @return index of the first held sample
+     */
+    public int getStartIndex() {
+        return mStartIndex;
+    }
+
+    /**
+     * @return index of the next appended sample
+     */
+    public int getEndIndex() {
+        return mStartIndex + mSize;
+    }
+
+    public long getTime(int position) {
+        checkPosition(position);
+        return mTimes[slotOf(position)][position & CHUNK_MASK];
+    }
+
+    public double getLatitude(int position) {
+        checkPosition(position);
+        return mLatitudes[slotOf(position)][position & CHUNK_MASK];
+    }
+
+    public double getLongitude(int position) {
+        checkPosition(position);
+        return mLongitudes[slotOf(position)][position & CHUNK_MASK];
+    }
+
+    /**
+     * @return altitude in meters, NaN if unknown
+     */
+    public double getAltitude(int position) {
+        checkPosition(position);
+        return mAltitudes[slotOf(position)][position & CHUNK_MASK];
+    }
+
+    public void setAltitude(int position, double altitude) {
+        checkPosition(position);
+        mAltitudes[slotOf(position)][position & CHUNK_MASK] = altitude;
+    }
+
+    public double getDistance(int position) {
+        checkPosition(position);
+        return mDistances[slotOf(position)][position & CHUNK_MASK];
+    }
+
+    public String getAddress(int position) {
+        checkPosition(position);
+        return mAddresses[slotOf(position)][position & CHUNK_MASK];
+    }
+
+    /**
+     * Removes all samples; allocated chunks are kept for following samples.
+     */
+    public void clear() {
+        for (String[] addresses : mAddresses) {
+            if (addresses != null) {
+                Arrays.fill(addresses, null);
+            }
+        }
+        mStartIndex += mSize;
+        mSize = 0;
+        mEvictedCount = 0;
+        mFirstTime = 0;
+    }
+
+    /**
+     * Evicts the oldest chunks, as long as they are full, spilled and outside the window.
+     * @param newestTime time of the appended sample
+     */
+    private void evictOutsideWindow(long newestTime) {
+        while (mSize > CHUNK_SIZE && mStartIndex + CHUNK_SIZE <= mSpilledIndex
+                && (isOverMaxPoints() || isOverMaxAge(newestTime))) {
+            Arrays.fill(mAddresses[mFirstChunk], null);
+            mFirstChunk = (mFirstChunk + 1) & (mTimes.length - 1);
+            mSize -= CHUNK_SIZE;
+            mStartIndex += CHUNK_SIZE;
+            mEvictedCount += CHUNK_SIZE;
+        }
+    }
+
+    private boolean isOverMaxPoints() {
+        return mMaxPoints > 0 && mSize - CHUNK_SIZE >= mMaxPoints;
+    }
+
+    private boolean isOverMaxAge(long newestTime) {
+        return mMaxAgeMillis > 0 && mTimes[mFirstChunk][CHUNK_MASK] < newestTime - mMaxAgeMillis;
+    }
+
+    private int slotOf(int position) {
+        return slot(position >>> CHUNK_SHIFT);
+    }
+
+    private int slot(int chunk) {
+        return (mFirstChunk + chunk) & (mTimes.length - 1);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + mSize);
+        }
+    }
+
+    private void allocateChunk(int slot) {
+        mTimes[slot] = new long[CHUNK_SIZE];
+        mLatitudes[slot] = new double[CHUNK_SIZE];
+        mLongitudes[slot] = new double[CHUNK_SIZE];
+        mAltitudes[slot] = new double[CHUNK_SIZE];
+        mDistances[slot] = new double[CHUNK_SIZE];
+        mAddresses[slot] = new String[CHUNK_SIZE];
+    }
+
+    /**
+     * Doubles tables of chunks, unrolling the ring so the first chunk is in the first slot;
+     * only references to chunks are copied.
+     */
+    private void growChunkTables() {
+        mTimes = unroll(mTimes, new long[mTimes.length * 2][]);
+        mLatitudes = unroll(mLatitudes, new double[mLatitudes.length * 2][]);
+        mLongitudes = unroll(mLongitudes, new double[mLongitudes.length * 2][]);
+        mAltitudes = unroll(mAltitudes, new double[mAltitudes.length * 2][]);
+        mDistances = unroll(mDistances, new double[mDistances.length * 2][]);
+        mAddresses = unroll(mAddresses, new String[mAddresses.length * 2][]);
+        mFirstChunk = 0;
+    }
+
+    private <T> T[] unroll(T[] chunks, T[] grown) {
+        int tail = chunks.length - mFirstChunk;
+        System.arraycopy(chunks, mFirstChunk, grown, 0, tail);
+        System.arraycopy(chunks, 0, grown, tail, mFirstChunk);
+        return grown;
+    }
+}
@@ -0,0 +1,63 @@
+package pl.gregoryiwanek.altimeter.app.data.sessions;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Positions of the session's records, in order of date, kept in primitive arrays. Longer tracks
+ * are decimated to at most {@link #MAX_POINTS} positions, every n-th one and the last one, which
+ * is more than a map path can show. Immutable, so it can be cached and shared between threads.
+ */
+public final class TrackPositions {
+
+    public static final int MAX_POINTS = 2000;
+
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+
+    private TrackPositions(double[] latitudes, double[] longitudes) {
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+    }
+
+    /**
+     * Copies positions of the records, decimated to at most {@link #MAX_POINTS}. Reads the whole
+     * list, so for lazy lists it has to be called in background.
+     */
+    public static TrackPositions from(@NonNull List<RecordRow> records) {
+        int size = records.size();
+        // last position is kept besides every step-th one
+        int step = size <= MAX_POINTS ? 1 : (size - 1 + MAX_POINTS - 2) / (MAX_POINTS - 1);
+        int count = size <= MAX_POINTS ? size : (size - 2) / step + 2;
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        int index = 0;
+        int i = 0;
+        for (RecordRow row : records) {
+            if (i % step == 0 || i == size - 1) {
+                latitudes[index] = row.getLatitude();
+                longitudes[index] = row.getLongitude();
+                index++;
+            }
+            i++;
+        }
+        return new TrackPositions(latitudes, longitudes);
+    }
+
+    public int size() {
+        return mLatitudes.length;
+    }
+
+    public boolean isEmpty() {
+        return mLatitudes.length == 0;
+    }
+
+    public double getLatitude(int index) {
+        return mLatitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return mLongitudes[index];
+    }
+}
@@ -4,12 +4,12 @@ import android.content.Context;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 
-import java.util.List;
 import java.util.Map;
 
 import pl.gregoryiwanek.altimeter.app.data.database.SessionDataSource;
 import pl.gregoryiwanek.altimeter.app.data.database.SessionRepository;
 import pl.gregoryiwanek.altimeter.app.utils.databaseexporter.DatabaseExporter;
+import rx.android.schedulers.AndroidSchedulers;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -49,15 +49,6 @@ class DetailsPresenter implements DetailsContract.Presenter {
             public void onChangesSaved() {
                 mDetailsView.showChangesSaved();
             }
-
-            @Override
-            public void onExportDataLoaded(List<String[]> args) {
-                for (String[] arrayArg : args) {
-                    for (String str : arrayArg) {
-                        System.out.println("array string is: " + str);
-                    }
-                }
-            }
         };
     }
 
@@ -79,10 +70,11 @@ class DetailsPresenter implements DetailsContract.Presenter {
 
     @Override
     public void exportSessionDataAsFile() {
-        Context context = mDetailsView.getContext();
         DatabaseExporter exporter = DatabaseExporter.getInstance();
-        exporter.exportSessionDataAsFile(
-                mSessionRepository.getDataToExportAsFile(sessionId, callbackDetails, context)
-        );
+        // records are read and written to file on the reader thread
+        mSessionRepository.getRxDataSource().getRecords(sessionId)
+                .doOnNext(exporter::exportSessionRecordsAsFile)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(records -> {}, Throwable::printStackTrace);
     }
 }
@@ -33,6 +33,12 @@ interface SessionContract {
         void showAllSessionsDeleted();
 
         void onSessionsDeleted();
+
+        void showMigrationProgress(int migratedUnits, int allUnits);
+
+        void hideMigrationProgress();
+
+        void showFilteringLabel(String filtering);
     }
 
     interface Presenter extends BasePresenter {
@@ -48,6 +54,8 @@ interface SessionContract {
         void deleteAllSessions(ArrayList<String> sessionsId);
 
         void setSessionCompleted(String sessionId, boolean isCompleted);
+
+        void setFiltering(String filtering);
     }
 }
 
@@ -3,12 +3,15 @@ package pl.gregoryiwanek.altimeter.app.mainview;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v7.widget.SearchView;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -41,12 +44,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class SessionFragment extends BasicFragment implements SessionContract.View{
 
+    private static final long SEARCH_DELAY_MILLIS = 300;
+
     @BindView(R.id.graphs_list) ListView mListView;
     @BindView(R.id.graphsLL) LinearLayout mSessionView;
     @BindView(R.id.no_graphs) LinearLayout mNoSessionsView;
 
     private SessionAdapter mListAdapter;
     private SessionContract.Presenter mPresenter;
+    private Snackbar mMigrationSnackbar;
+    private final Handler mSearchHandler = new Handler();
+    private String mPendingFiltering;
+    private final Runnable mSearchRunnable = () -> filterSessions(mPendingFiltering);
 
     public static SessionFragment newInstance() {
         return new SessionFragment();
@@ -75,6 +84,12 @@ public class SessionFragment extends BasicFragment implements SessionContract.Vi
         mPresenter.start();
     }
 
+    @Override
+    public void onStop() {
+        super.onStop();
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_graph_altitude, container, false);
@@ -158,6 +173,29 @@ public class SessionFragment extends BasicFragment implements SessionContract.Vi
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         inflater.inflate(R.menu.fragment_menu_main, menu);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(menu.findItem(R.id.menu_search));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                filterSessions(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // searches once typing pauses, not on every keystroke
+                mPendingFiltering = newText;
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MILLIS);
+                return true;
+            }
+        });
+    }
+
+    private void filterSessions(String filtering) {
+        mPresenter.setFiltering(filtering);
+        mPresenter.loadSessions(false);
     }
 
     SessionItemListener mSessionItemListener = new SessionItemListener() {
@@ -261,6 +299,36 @@ public class SessionFragment extends BasicFragment implements SessionContract.Vi
         mListAdapter.clearInfoChecked();
     }
 
+    @Override
+    public void showMigrationProgress(int migratedUnits, int allUnits) {
+        String message = String.format(
+                Constants.TEXT.MESSAGE_MIGRATION_PROGRESS.getValue(getContext()), migratedUnits, allUnits);
+        if (mMigrationSnackbar == null) {
+            mMigrationSnackbar = Snackbar.make(getView(), message, Snackbar.LENGTH_INDEFINITE);
+            mMigrationSnackbar.show();
+        } else {
+            mMigrationSnackbar.setText(message);
+        }
+    }
+
+    @Override
+    public void showFilteringLabel(String filtering) {
+        if (getActivity() == null) {
+            return;
+        }
+        String label = filtering.isEmpty() ? null
+                : String.format(Constants.TEXT.MESSAGE_FILTERING.getValue(getContext()), filtering);
+        getActivity().setTitle(label != null ? label : getString(R.string.app_name));
+    }
+
+    @Override
+    public void hideMigrationProgress() {
+        if (mMigrationSnackbar != null) {
+            mMigrationSnackbar.dismiss();
+            mMigrationSnackbar = null;
+        }
+    }
+
     /**
      * Private, inner adapter class. Used to populate and perform
      * operations on a List with {@link Session} objects.
@@ -17,10 +17,14 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 class SessionPresenter implements SessionContract.Presenter {
 
+    private static final int SEARCH_PAGE_SIZE = 100;
+
     private final SessionRepository mSessionRepository;
     private final SessionContract.View mSessionView;
     private boolean mFirstLoad = true;
+    private String mCurrentFiltering = "";
     private SessionDataSource.DeleteSessionCallback callbackDelete;
+    private SessionDataSource.MigrationCallback callbackMigration;
 
     SessionPresenter(@NonNull SessionRepository sessionRepository, @NonNull SessionContract.View sessionView) {
         mSessionRepository = checkNotNull(sessionRepository, "sessionRepository cannot be null");
@@ -32,6 +36,7 @@ class SessionPresenter implements SessionContract.Presenter {
     @Override
     public void start() {
         loadSessions(false);
+        mSessionRepository.runPendingMigrations(callbackMigration);
     }
 
     private void createTask(String title, String description) {
@@ -53,6 +58,23 @@ class SessionPresenter implements SessionContract.Presenter {
                 mSessionView.onSessionsDeleted();
             }
         };
+
+        callbackMigration = new SessionDataSource.MigrationCallback() {
+            @Override
+            public void onMigrationProgress(int migratedUnits, int allUnits) {
+                if (mSessionView.isActive()) {
+                    mSessionView.showMigrationProgress(migratedUnits, allUnits);
+                }
+            }
+
+            @Override
+            public void onMigrationCompleted() {
+                if (mSessionView.isActive()) {
+                    mSessionView.hideMigrationProgress();
+                    loadSessions(false);
+                }
+            }
+        };
     }
 
     /**
@@ -67,11 +89,12 @@ class SessionPresenter implements SessionContract.Presenter {
             mSessionRepository.refreshSessions();
         }
 
-        //getting sessions from database repository
-        mSessionRepository.getSessions(new SessionDataSource.LoadSessionsCallback() {
+        // searches run concurrently, results of the previous filtering may arrive after the current one
+        final String filtering = mCurrentFiltering;
+        SessionDataSource.LoadSessionsCallback callback = new SessionDataSource.LoadSessionsCallback() {
             @Override
             public void onSessionLoaded(List<Session> sessions) {
-                if (!mSessionView.isActive()) {
+                if (!mSessionView.isActive() || !filtering.equals(mCurrentFiltering)) {
                     return;
                 }
 
@@ -85,18 +108,26 @@ class SessionPresenter implements SessionContract.Presenter {
             @Override
             public void onDataNotAvailable() {
                 // The view may not be able to handle UI updates anymore
-                if (!mSessionView.isActive()) {
+                if (!mSessionView.isActive() || !filtering.equals(mCurrentFiltering)) {
                     return;
                 }
                 mSessionView.showLoadingSessionError();
             }
-        });
+        };
+
+        //getting sessions from database repository, filtered by its full-text index
+        if (filtering.isEmpty()) {
+            mSessionRepository.getSessions(callback);
+        } else {
+            mSessionRepository.searchSessions(filtering, 0, SEARCH_PAGE_SIZE, callback);
+        }
     }
 
     private void processSessions(List<Session> sessions) {
         if (sessions.isEmpty()) {
             // Show a message indicating there are no tasks for that filter type.
             mSessionView.showEmptySessions(sessions);
+            showFilterLabel();
         } else {
             // Show the list of tasks
             mSessionView.showSessions(sessions);
@@ -105,9 +136,13 @@ class SessionPresenter implements SessionContract.Presenter {
         }
     }
 
-    //TODO-> mCurrentFiltering
     private void showFilterLabel() {
+        mSessionView.showFilteringLabel(mCurrentFiltering);
+    }
 
+    @Override
+    public void setFiltering(String filtering) {
+        mCurrentFiltering = filtering == null ? "" : filtering.trim();
     }
 
     @Override
@@ -7,12 +7,13 @@ import android.view.Window;
 
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.model.LatLng;
-
+import java.util.ArrayList;
 import java.util.List;
 
-import pl.gregoryiwanek.altimeter.app.data.database.SessionDataSource;
 import pl.gregoryiwanek.altimeter.app.data.database.SessionRepository;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackPositions;
 import pl.gregoryiwanek.altimeter.app.utils.screenshotcatcher.ScreenShotCatcher;
+import rx.android.schedulers.AndroidSchedulers;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -42,12 +43,10 @@ class MapPresenter implements MapContract.Presenter {
 
     @Override
     public void loadMapData() {
-        mSessionRepository.getMapData(mId, new SessionDataSource.LoadMapDataCallback() {
-            @Override
-            public void onMapDataLoaded(List<LatLng> positions) {
-                checkMapData(positions);
-            }
-        });
+        mSessionRepository.getMapPositions(mId)
+                .map(this::toPositions)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::checkMapData, Throwable::printStackTrace);
     }
 
     @Override
@@ -57,6 +56,14 @@ class MapPresenter implements MapContract.Presenter {
         mMapView.showShareMenu(screenshotIntent);
     }
 
+    private List<LatLng> toPositions(TrackPositions track) {
+        List<LatLng> positions = new ArrayList<>(track.size());
+        for (int i = 0; i < track.size(); i++) {
+            positions.add(new LatLng(track.getLatitude(i), track.getLongitude(i)));
+        }
+        return positions;
+    }
+
     private void checkMapData(List<LatLng> positions) {
         if (isMapDataEmpty(positions)) {
             mMapView.showMapEmpty();
@@ -9,20 +9,24 @@ import com.jjoe64.graphview.GraphView;
 import com.jjoe64.graphview.series.DataPoint;
 import com.jjoe64.graphview.series.LineGraphSeries;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import pl.gregoryiwanek.altimeter.app.R;
-import pl.gregoryiwanek.altimeter.app.data.sessions.GraphPoint;
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackBuffer;
 import pl.gregoryiwanek.altimeter.app.utils.stylecontroller.StyleController;
 
 /**
  *  Consist extension of external library class GraphView (http://www.android-graphview.org/) and required customized methods;
  *  Takes list with locations as a parameter to draw or update altitude graph inside a widget.
+ *  Points evicted from the recording window are drawn as separate, downsampled history series.
  */
 public class GraphViewWidget extends GraphView {
 
     private LineGraphSeries<DataPoint> mDiagramSeries = new LineGraphSeries<>();
-    private int mCurSeriesCount = 0;
+    private LineGraphSeries<DataPoint> mHistorySeries = null;
+    // index of the next graph point to draw
+    private int mNextIndex = 0;
     private Long mRecordingStartTime;
     private StyleController themePicker;
 
@@ -174,10 +178,10 @@ public class GraphViewWidget extends GraphView {
         setGraphBoundsValues();
     }
 
-    public void deliverGraph(ArrayList<GraphPoint> graphPointList) {
+    public void deliverGraph(TrackBuffer graphPoints) {
         checkIsSeriesNull();
-        setRecordingStartTime(graphPointList.get(0).getXValue());
-        drawGraph(graphPointList);
+        setRecordingStartTime(graphPoints.getFirstTime());
+        drawGraph(graphPoints);
         refreshGraphLook();
     }
 
@@ -194,15 +198,18 @@ public class GraphViewWidget extends GraphView {
         }
     }
 
-    private void drawGraph(ArrayList<GraphPoint> graphPointList) {
-        int listSize = graphPointList.size();
-        for (int i=mCurSeriesCount; i<graphPointList.size(); i++) {
-            Long recordingTime = getRecordingTime(graphPointList.get(i).getXValue());
+    private void drawGraph(TrackBuffer graphPoints) {
+        // series holds no more points than the recording window
+        int listSize = graphPoints.size();
+        int start = graphPoints.getStartIndex();
+        for (int i = Math.max(mNextIndex, start); i < graphPoints.getEndIndex(); i++) {
+            long recordingTime = getRecordingTime(graphPoints.getTime(i - start));
             if (recordingTime > mDiagramSeries.getHighestValueX() || recordingTime == 0) {
-                double yValue = graphPointList.get(i).getYValue();
+                double yValue = graphPoints.getAltitude(i - start);
                 appendPointToSeries(listSize, yValue, recordingTime);
             }
         }
+        mNextIndex = graphPoints.getEndIndex();
 
         if (this.getSeries().isEmpty()) {
             addSeriesToGraph();
@@ -212,10 +219,32 @@ public class GraphViewWidget extends GraphView {
     private void appendPointToSeries(int listSize, double yValue, long recordingTimeAsX) {
         DataPoint graphPoint = new DataPoint(recordingTimeAsX, yValue);
         mDiagramSeries.appendData(graphPoint, false, listSize);
-        mCurSeriesCount++;
     }
 
-    private Long getRecordingTime(Long recordTime) {
+    /**
+     * Draws saved records preceding points held in memory; replaces previous history.
+     * @param records downsampled records, ordered by date
+     */
+    public void deliverHistory(List<RecordRow> records) {
+        if (mRecordingStartTime == null || records.isEmpty()) {
+            return;
+        }
+        DataPoint[] points = new DataPoint[records.size()];
+        for (int i = 0; i < points.length; i++) {
+            RecordRow row = records.get(i);
+            points[i] = new DataPoint(getRecordingTime(row.getDate()), row.getAltitude());
+        }
+        if (mHistorySeries == null) {
+            mHistorySeries = new LineGraphSeries<>(points);
+            mHistorySeries.setColor(themePicker.getAttrColor(R.attr.colorGraphLine));
+            mHistorySeries.setThickness(2);
+            addSeries(mHistorySeries);
+        } else {
+            mHistorySeries.resetData(points);
+        }
+    }
+
+    private long getRecordingTime(long recordTime) {
         return (recordTime - mRecordingStartTime)/1000;
     }
 
@@ -267,7 +296,11 @@ public class GraphViewWidget extends GraphView {
     public void clearData() {
         removeSeries(mDiagramSeries);
         mDiagramSeries = null;
-        mCurSeriesCount = 0;
+        if (mHistorySeries != null) {
+            removeSeries(mHistorySeries);
+            mHistorySeries = null;
+        }
+        mNextIndex = 0;
         mRecordingStartTime = null;
         onDataChanged(false, false);
     }
@@ -5,11 +5,12 @@ import android.content.Intent;
 import android.support.annotation.NonNull;
 import android.view.Window;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import pl.gregoryiwanek.altimeter.app.BasePresenter;
 import pl.gregoryiwanek.altimeter.app.BaseView;
-import pl.gregoryiwanek.altimeter.app.data.sessions.GraphPoint;
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackBuffer;
 
 @SuppressWarnings("unused")
 interface RecordingSessionContract {
@@ -54,7 +55,9 @@ interface RecordingSessionContract {
 
         void setBarometerTextView(String barometerAlt);
 
-        void drawGraph(ArrayList<GraphPoint> graphPoints);
+        void drawGraph(TrackBuffer graphPoints);
+
+        void drawGraphHistory(List<RecordRow> records);
 
         void resetGraph();
 
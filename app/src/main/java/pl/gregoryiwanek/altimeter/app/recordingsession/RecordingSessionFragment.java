@@ -18,14 +18,15 @@ import android.widget.ImageButton;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
 import pl.gregoryiwanek.altimeter.app.BasicFragment;
 import pl.gregoryiwanek.altimeter.app.R;
-import pl.gregoryiwanek.altimeter.app.data.sessions.GraphPoint;
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackBuffer;
 import pl.gregoryiwanek.altimeter.app.map.MapActivity;
 import pl.gregoryiwanek.altimeter.app.recordingsession.RecordingSessionContract.ParentActivityCallback;
 import pl.gregoryiwanek.altimeter.app.utils.Constants;
@@ -133,10 +134,15 @@ public class RecordingSessionFragment extends BasicFragment implements Recording
     }
 
     @Override
-    public void drawGraph(ArrayList<GraphPoint> graphPoints) {
+    public void drawGraph(TrackBuffer graphPoints) {
         mGraphViewWidget.deliverGraph(graphPoints);
     }
 
+    @Override
+    public void drawGraphHistory(List<RecordRow> records) {
+        mGraphViewWidget.deliverHistory(records);
+    }
+
     @Override
     public void resetGraph() {
         mGraphViewWidget.clearData();
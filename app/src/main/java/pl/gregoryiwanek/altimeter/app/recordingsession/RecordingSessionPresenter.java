@@ -7,13 +7,15 @@ import android.view.Window;
 
 import pl.gregoryiwanek.altimeter.app.R;
 import pl.gregoryiwanek.altimeter.app.data.database.SessionDataSource;
+import pl.gregoryiwanek.altimeter.app.data.database.source.RecordsSampling;
 import pl.gregoryiwanek.altimeter.app.data.sessions.Session;
+import pl.gregoryiwanek.altimeter.app.data.sessions.TrackBuffer;
 import pl.gregoryiwanek.altimeter.app.data.database.SessionRepository;
 import pl.gregoryiwanek.altimeter.app.data.location.LocationResponse;
 import pl.gregoryiwanek.altimeter.app.data.location.LocationUpdateManager;
-import pl.gregoryiwanek.altimeter.app.data.location.managers.BarometerManager;
-import pl.gregoryiwanek.altimeter.app.data.location.managers.GpsManager;
-import pl.gregoryiwanek.altimeter.app.data.location.managers.NetworkManager;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.BarometerAltitudeSource;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.GpsAltitudeSource;
+import pl.gregoryiwanek.altimeter.app.data.location.sources.NetworkAltitudeSource;
 import pl.gregoryiwanek.altimeter.app.utils.screenshotcatcher.ScreenShotCatcher;
 import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
@@ -28,11 +30,16 @@ import static pl.gregoryiwanek.altimeter.app.recordingsession.RecordingSessionCo
 // TODO: 02.04.2017 kick out mSession object -> wrong layer of responsibility
 class RecordingSessionPresenter implements Presenter {
 
+    // maximum number of points of the graph history, read from saved records
+    private static final int GRAPH_HISTORY_POINTS = 300;
+    private static final long MIN_HISTORY_BUCKET_MILLIS = 1000;
+
     private final SessionRepository mSessionRepository;
     private final View mRecordingSessionView;
     private final LocationUpdateManager mLocationUpdateManager;
     private LocationResponse.FullInfoCallback callbackFullInfo;
     private Session mSession;
+    private int mGraphHistoryEvicted = 0;
 
     RecordingSessionPresenter(@NonNull SessionRepository sessionSource,
                               @NonNull LocationUpdateManager locationUpdateManager,
@@ -57,6 +64,7 @@ class RecordingSessionPresenter implements Presenter {
                 if (session.getCurrentLocation() != null) {
                     updateView(session);
                     updateSessionObject(session);
+                    mSessionRepository.updateSessionData(session);
                 } else {
                     updateViewAfterClearedSession();
                     mSession.clearData();
@@ -115,7 +123,29 @@ class RecordingSessionPresenter implements Presenter {
         mRecordingSessionView.setMaxHeightTextView(session.getMaxHeightStr());
         mRecordingSessionView.setLatTextView(session.getLatitudeStr());
         mRecordingSessionView.setLongTextView(session.getLongitudeStr());
-        mRecordingSessionView.drawGraph(session.getGraphList());
+        mRecordingSessionView.drawGraph(session.getGraph());
+        updateGraphHistory(session);
+    }
+
+    /**
+     * Reads part of the graph evicted from memory, from saved records, whenever the recording
+     * window moves. History is downsampled to a fixed number of points.
+     */
+    private void updateGraphHistory(Session session) {
+        TrackBuffer graph = session.getGraph();
+        int evicted = graph.getEvictedCount();
+        if (evicted == mGraphHistoryEvicted) {
+            return;
+        }
+        mGraphHistoryEvicted = evicted;
+        if (evicted == 0 || graph.isEmpty()) {
+            return;
+        }
+        long fromDate = graph.getFirstTime();
+        long toDate = graph.getTime(0) - 1;
+        long bucketMillis = Math.max(MIN_HISTORY_BUCKET_MILLIS, (toDate - fromDate) / GRAPH_HISTORY_POINTS);
+        mSessionRepository.getRecordsInRange(session.getId(), fromDate, toDate,
+                RecordsSampling.perBucket(bucketMillis), mRecordingSessionView::drawGraphHistory);
     }
 
     private void updateViewAfterClearedSession() {
@@ -134,52 +164,54 @@ class RecordingSessionPresenter implements Presenter {
         updateButtonState(tag);
         mRecordingSessionView.showRecordingPaused();
         mLocationUpdateManager.stopListenForLocations(false);
+        mSessionRepository.updateSessionData(mSession);
+        mSessionRepository.flushSessionData();
     }
 
     @Override
     public void enableGps() {
-        updateManagerState(GpsManager.class, true);
+        updateSourceState(GpsAltitudeSource.NAME, true);
         int tag = R.drawable.ic_gps_open_24dp;
         updateButtonState(tag);
     }
 
     @Override
     public void disableGps() {
-        updateManagerState(GpsManager.class, false);
+        updateSourceState(GpsAltitudeSource.NAME, false);
         int tag = R.drawable.ic_gps_lock_24dp;
         updateButtonState(tag);
     }
 
     @Override
     public void enableNetwork() {
-        updateManagerState(NetworkManager.class, true);
+        updateSourceState(NetworkAltitudeSource.NAME, true);
         int tag = R.drawable.ic_network_open_24dp;
         updateButtonState(tag);
     }
 
     @Override
     public void disableNetwork() {
-        updateManagerState(NetworkManager.class, false);
+        updateSourceState(NetworkAltitudeSource.NAME, false);
         int tag = R.drawable.ic_network_lock_24dp;
         updateButtonState(tag);
     }
 
     @Override
     public void enableBarometer() {
-        updateManagerState(BarometerManager.class, true);
+        updateSourceState(BarometerAltitudeSource.NAME, true);
         int tag = R.drawable.ic_barometer_open_24dp;
         updateButtonState(tag);
     }
 
     @Override
     public void disableBarometer() {
-        updateManagerState(BarometerManager.class, false);
+        updateSourceState(BarometerAltitudeSource.NAME, false);
         int tag = R.drawable.ic_barometer_lock_24dp;
         updateButtonState(tag);
     }
 
-    private void updateManagerState(Class<?> manager, boolean isEnabled) {
-        mLocationUpdateManager.setManagerState(manager, isEnabled);
+    private void updateSourceState(String sourceName, boolean isEnabled) {
+        mLocationUpdateManager.setSourceEnabled(sourceName, isEnabled);
     }
 
     @Override
@@ -224,6 +224,18 @@ public final class Constants {
             public String getValue(Context context) {
                 return context.getResources().getString(R.string.message_reset_statistics);
             }
+        },
+        MESSAGE_MIGRATION_PROGRESS {
+            @Override
+            public String getValue(Context context) {
+                return context.getResources().getString(R.string.message_migration_progress);
+            }
+        },
+        MESSAGE_FILTERING {
+            @Override
+            public String getValue(Context context) {
+                return context.getResources().getString(R.string.message_filtering);
+            }
         };
 
         public abstract String getValue(Context context);
@@ -2,11 +2,14 @@ package pl.gregoryiwanek.altimeter.app.utils.databaseexporter;
 
 import android.os.Environment;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
+import pl.gregoryiwanek.altimeter.app.data.sessions.RecordRow;
 import pl.gregoryiwanek.altimeter.app.utils.databaseexporter.tablerecords.SQLRecordRow;
 
 public class DatabaseExporter {
@@ -20,44 +23,69 @@ public class DatabaseExporter {
     }
 
     public void exportSessionDataAsFile(SQLSessionContent sessionContent) {
-        File file = new File(Environment.getExternalStorageDirectory() + File.separator + "myfiletessst.txt");
-        FileOutputStream stream = null;
-
+        BufferedWriter writer = null;
         try {
-            System.out.println("trying");
-            StringBuilder builder = new StringBuilder();
-            builder.append("THIS IS TEST STRING" + "\n");
-
+            writer = openExportFile();
             for (SQLRecordRow row : sessionContent.getRecords().getRecordRows()) {
-                builder.append("id: ").append(row.getId()).append(";")
-                        .append("latitude: ").append(row.getLatitude()).append(";")
-                        .append("longitude: ").append(row.getLongitude()).append(";")
-                        .append("altitude: ").append(row.getAltitude()).append(";")
-                        .append("date: ").append(row.getDate()).append(";")
-                        .append("address: ").append(row.getAddress()).append(";")
-                        .append("distance: ").append(row.getDistance()).append(";")
-                        .append("\n");
+                writeRow(writer, row.getId(), row.getLatitude(), row.getLongitude(), row.getAltitude(),
+                        row.getDate(), row.getAddress(), row.getDistance());
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeExportFile(writer);
+        }
+    }
 
-            System.out.println("trying2");
+    /**
+     * Exports records of the session row by row, as they are read from the list. Nothing but
+     * the current row is kept in memory, so records can be read lazily from database.
+     * @param records session's records, in order of export
+     */
+    public void exportSessionRecordsAsFile(Iterable<RecordRow> records) {
+        BufferedWriter writer = null;
+        try {
+            writer = openExportFile();
+            for (RecordRow row : records) {
+                writeRow(writer, String.valueOf(row.getId()), String.valueOf(row.getLatitude()),
+                        String.valueOf(row.getLongitude()), String.valueOf(row.getAltitude()),
+                        String.valueOf(row.getDate()), row.getAddress(), String.valueOf(row.getDistance()));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeExportFile(writer);
+        }
+    }
 
-            String testString = builder.toString();
-            file.createNewFile();
-            stream = new FileOutputStream(file);
-            stream.write(testString.getBytes());
+    private BufferedWriter openExportFile() throws IOException {
+        File file = new File(Environment.getExternalStorageDirectory() + File.separator + "myfiletessst.txt");
+        file.createNewFile();
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+        writer.write("THIS IS TEST STRING" + "\n");
+        return writer;
+    }
 
-            System.out.println("trying3");
+    private void writeRow(Writer writer, String id, String latitude, String longitude, String altitude,
+                          String date, String address, String distance) throws IOException {
+        writer.append("id: ").append(id).append(";")
+                .append("latitude: ").append(latitude).append(";")
+                .append("longitude: ").append(longitude).append(";")
+                .append("altitude: ").append(altitude).append(";")
+                .append("date: ").append(date).append(";")
+                .append("address: ").append(address).append(";")
+                .append("distance: ").append(distance).append(";")
+                .append("\n");
+    }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    private void closeExportFile(Writer writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            try {
-                stream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
     }
 }
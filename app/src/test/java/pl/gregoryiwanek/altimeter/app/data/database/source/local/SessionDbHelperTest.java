@@ -0,0 +1,108 @@
+package pl.gregoryiwanek.altimeter.app.data.database.source.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static pl.gregoryiwanek.altimeter.app.data.database.source.local.SessionDbContract.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class SessionDbHelperTest {
+
+    private static final String DATABASE_NAME = "Graphs.db";
+    private static final String SESSION_ID = "5d0e5e1c-legacy";
+
+    private Context mContext;
+    private SessionDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (mHelper != null) {
+            mHelper.close();
+        }
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradesBaselineSchema() {
+        createBaselineDatabase();
+
+        mHelper = new SessionDbHelper(mContext, new DbConnectionConfig.Builder().build());
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+
+        assertTrue(SessionDbHelper.isTableExisting(db, SessionEntry.TABLE_NAME));
+        assertTrue(SessionDbHelper.isTableExisting(db, SessionSearchEntry.TABLE_NAME));
+        assertNotNull(SessionDbHelper.getColumnType(db, SessionEntry.TABLE_NAME,
+                SessionEntry.COLUMN_NAME_MIN_LATITUDE));
+        assertEquals("REAL", SessionDbHelper.getColumnType(db, RecordsEntry.TABLE_NAME,
+                RecordsEntry.COLUMN_NAME_LATITUDE));
+        // legacy records table of the session is kept for LegacyRecordsMigration
+        assertTrue(SessionDbHelper.isTableExisting(db, SESSION_ID));
+
+        Cursor c = db.query(SessionEntry.TABLE_NAME, new String[] {SessionEntry.COLUMN_NAME_TITLE},
+                SessionEntry.COLUMN_NAME_ENTRY_ID + "=?", new String[] {SESSION_ID}, null, null, null);
+        assertTrue(c.moveToFirst());
+        assertEquals("Legacy walk", c.getString(0));
+        c.close();
+    }
+
+    @Test
+    public void upgradeIsRepeatable() {
+        createBaselineDatabase();
+
+        mHelper = new SessionDbHelper(mContext, new DbConnectionConfig.Builder().build());
+        mHelper.getWritableDatabase();
+        mHelper.close();
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+
+        assertTrue(SessionDbHelper.isTableExisting(db, SessionEntry.TABLE_NAME));
+        if (SessionSpatialIndex.isAvailable(db)) {
+            Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + SessionBoundsEntry.TABLE_NAME, null);
+            c.moveToFirst();
+            // legacy session is not summarized yet
+            assertEquals(0, c.getInt(0));
+            c.close();
+        }
+    }
+
+    /**
+     * Creates database as the baseline build did: sessions in table named "records", version
+     * bumped with every session, and one table of records per session.
+     */
+    private void createBaselineDatabase() {
+        File path = mContext.getDatabasePath(DATABASE_NAME);
+        path.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(path, null);
+        db.execSQL("CREATE TABLE records (_id TEXT PRIMARY KEY,entryid TEXT UNIQUE,title TEXT," +
+                "description TEXT,currentaltitude REAL,maxheight REAL,minheight REAL," +
+                "currentaddress TEXT,currentdistance REAL )");
+        db.execSQL("CREATE TABLE IF NOT EXISTS\"" + SESSION_ID + "\" (entryid INTEGER PRIMARY KEY " +
+                "AUTOINCREMENT NOT NULL,latitude TEXT,longitude TEXT,altitude REAL,date TEXT," +
+                "address TEXT,distance REAL )");
+        db.execSQL("INSERT INTO records (entryid,title) VALUES (?,?)", new Object[] {SESSION_ID, "Legacy walk"});
+        db.execSQL("INSERT INTO \"" + SESSION_ID + "\" (latitude,longitude,altitude,date,address,distance)" +
+                " VALUES ('50.06','19.94',220.5,'1488000000000','Krakow',0)");
+        db.setVersion(9);
+        db.close();
+    }
+}
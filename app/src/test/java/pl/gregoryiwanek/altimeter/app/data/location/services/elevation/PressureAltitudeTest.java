@@ -0,0 +1,51 @@
+package pl.gregoryiwanek.altimeter.app.data.location.services.elevation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PressureAltitudeTest {
+
+    // documented error of the table, plus rounding of float arithmetic
+    private static final double MAX_ERROR = 0.02 + 0.01;
+    private static final float[] REFERENCE_PRESSURES = {950f, 1013.25f, 1050f};
+
+    /**
+     * Formula of {@link android.hardware.SensorManager#getAltitude(float, float)}, which is not
+     * implemented in the stubbed android.jar of local tests.
+     */
+    private static float sensorManagerAltitude(float p0, float p) {
+        final float coef = 1.0f / 5.255f;
+        return 44330.0f * (1.0f - (float) Math.pow(p / p0, coef));
+    }
+
+    @Test
+    public void errorAcrossTableIsBounded() {
+        for (float reference : REFERENCE_PRESSURES) {
+            double maxError = 0;
+            // ratios 0.25 up to 1.25, with steps not aligned with the table
+            for (float pressure = reference * 0.25f; pressure < reference * 1.25f; pressure += 0.037f) {
+                double error = Math.abs(PressureAltitude.getAltitude(reference, pressure) -
+                        sensorManagerAltitude(reference, pressure));
+                maxError = Math.max(maxError, error);
+            }
+            assertTrue("Max error " + maxError + " m for reference " + reference, maxError < MAX_ERROR);
+        }
+    }
+
+    @Test
+    public void ratiosOutOfTableAreComputedExactly() {
+        float reference = 1013.25f;
+        float[] pressures = {100f, reference * 0.2f, reference * 1.25f, reference * 1.5f};
+        for (float pressure : pressures) {
+            assertEquals(sensorManagerAltitude(reference, pressure),
+                    PressureAltitude.getAltitude(reference, pressure), 0.01);
+        }
+    }
+
+    @Test
+    public void nanPressureGivesNaN() {
+        assertTrue(Float.isNaN(PressureAltitude.getAltitude(1013.25f, Float.NaN)));
+    }
+}
@@ -0,0 +1,134 @@
+package pl.gregoryiwanek.altimeter.app.data.location.services.elevation;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PressureWindowTest {
+
+    private static final long SAMPLING_PERIOD_NANOS = 40_000_000;
+    private static final long WINDOW_NANOS = 1_000_000_000;
+    private static final float REFERENCE_PRESSURE = 1013.25f;
+    // sensor timestamps count from boot
+    private static final long START_NANOS = 60_000_000_000L;
+
+    private final ReadingCounter mCounter = new ReadingCounter();
+    private long mTime = START_NANOS;
+
+    @Test
+    public void windowIsCompleteWhenSamplesCoverItsLength() {
+        PressureWindow window = new PressureWindow(64, WINDOW_NANOS, SAMPLING_PERIOD_NANOS);
+        long time = START_NANOS;
+        // window starts one sampling period before the first sample
+        for (int i = 0; i < 23; i++) {
+            window.add(time, 1000f);
+            time += SAMPLING_PERIOD_NANOS;
+        }
+        assertFalse(window.isComplete());
+        window.add(time, 1000f);
+        assertTrue(window.isComplete());
+    }
+
+    @Test
+    public void samplesAreKeptWhenSamplingPeriodChanges() {
+        PressureWindow window = new PressureWindow(64, WINDOW_NANOS, SAMPLING_PERIOD_NANOS);
+        long time = START_NANOS;
+        for (int i = 0; i < 12; i++) {
+            window.add(time, 1000f);
+            time += SAMPLING_PERIOD_NANOS;
+        }
+        window.setSamplingPeriod(2 * SAMPLING_PERIOD_NANOS);
+        time += SAMPLING_PERIOD_NANOS;
+        for (int i = 0; i < 5; i++) {
+            window.add(time, 1000f);
+            time += 2 * SAMPLING_PERIOD_NANOS;
+        }
+        assertFalse(window.isComplete());
+        window.add(time, 1000f);
+        assertTrue(window.isComplete());
+        window.close(0, REFERENCE_PRESSURE, mCounter);
+
+        assertEquals(18, mCounter.mLastSampleCount);
+    }
+
+    @Test
+    public void outliersAreRejected() {
+        PressureWindow window = new PressureWindow(64, WINDOW_NANOS, SAMPLING_PERIOD_NANOS);
+        for (int i = 0; i < 24; i++) {
+            window.add(START_NANOS + i * SAMPLING_PERIOD_NANOS, i % 2 == 0 ? 1000f : 1000.01f);
+        }
+        window.add(START_NANOS + 24 * SAMPLING_PERIOD_NANOS, 990f);
+        window.close(0, REFERENCE_PRESSURE, mCounter);
+
+        assertEquals(1, mCounter.mReadings);
+        assertEquals(24, mCounter.mLastSampleCount);
+        assertEquals(PressureAltitude.getAltitude(REFERENCE_PRESSURE, 1000f), mCounter.mLastMaxAltitude, 0.001);
+    }
+
+    @Test
+    public void medianOfEvenCountIsMeanOfMiddleValues() {
+        float[] values = {4f, 1f, 3f, 2f};
+        assertEquals(2.5f, PressureWindow.median(values, 4), 0);
+    }
+
+    @Test
+    public void addingAndClosingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        PressureWindow window = new PressureWindow(64, WINDOW_NANOS, SAMPLING_PERIOD_NANOS);
+        // warm-up, so class loading and compilation are not measured
+        runWindows(window, 20_000);
+        long overhead = measureOverhead(threadBean, threadId);
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        runWindows(window, 20_000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertTrue("Allocated " + allocated + " bytes", allocated <= 0);
+        assertEquals(40_000, mCounter.mReadings);
+    }
+
+    private void runWindows(PressureWindow window, int windows) {
+        for (int i = 0; i < windows; i++) {
+            while (!window.isComplete()) {
+                window.add(mTime, 1000f + (mTime / SAMPLING_PERIOD_NANOS % 7) * 0.001f);
+                mTime += SAMPLING_PERIOD_NANOS;
+            }
+            window.close(mTime / 1_000_000, REFERENCE_PRESSURE, mCounter);
+        }
+    }
+
+    private static long measureOverhead(com.sun.management.ThreadMXBean threadBean, long threadId) {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            overhead = Math.min(overhead, threadBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        return overhead;
+    }
+
+    private static class ReadingCounter implements BarometerListener.ReadingCallback {
+
+        private int mReadings = 0;
+        private int mLastSampleCount = 0;
+        private float mLastMaxAltitude = 0;
+
+        @Override
+        public void onReading(long timeMillis, int sampleCount, float meanAltitude, float medianAltitude,
+                              float minAltitude, float maxAltitude) {
+            mReadings++;
+            mLastSampleCount = sampleCount;
+            mLastMaxAltitude = maxAltitude;
+        }
+    }
+}